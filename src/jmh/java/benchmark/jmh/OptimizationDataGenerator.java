@@ -0,0 +1,133 @@
+package benchmark.jmh;
+
+import core.optimizer.OptimizationData;
+import core.optimizer.SessionPlacement;
+import core.optimizer.SessionProperties;
+import core.optimizer.StorageProperties;
+import core.storage.AbstractSessionStorage;
+import core.storage.SessionData;
+import core.storage.StoredSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic OptimizationData objects for benchmarking the optimizers.
+ * Storage costs and MTTF follow the defaults in storage.conf.
+ */
+public class OptimizationDataGenerator {
+
+    /**
+     * Distribution of the local session sizes.
+     * The remote size is half the local size, as with a compressing serializer.
+     */
+    public enum SizeDistribution {
+        /** Uniform between 1 kB and 64 kB. */
+        UNIFORM,
+        /** Log-normal with a median of 8 kB, most sessions small and a few large. */
+        LOGNORMAL
+    }
+
+    /**
+     * Distribution of the session values.
+     */
+    public enum ValueDistribution {
+        /** Uniform between 0.5 and 1.5. */
+        UNIFORM,
+        /** Pareto with a minimum of 0.1 and shape 1.5, a few sessions carry most of the value. */
+        PARETO
+    }
+
+    public int sessions = 10000;
+    public SizeDistribution sizeDistribution = SizeDistribution.UNIFORM;
+    public ValueDistribution valueDistribution = ValueDistribution.UNIFORM;
+    /** Capacity of each storage, as a fraction of the total size of all sessions. */
+    public double tightness = 0.5;
+    public long seed = 42;
+
+    public OptimizationData generate() {
+        Random random = new Random(seed);
+        OptimizationData data = new OptimizationData();
+
+        long localTotal = 0;
+        long remoteTotal = 0;
+        for (int i = 0; i < sessions; i++) {
+            SessionProperties properties = new SessionProperties();
+            properties.localSize = nextSize(random);
+            properties.remoteSize = Math.max(1, properties.localSize / 2);
+            properties.value = nextValue(random);
+            properties.accesses = random.nextInt(10);
+            properties.oldPlacement = SessionPlacement.fromOrdinal(random.nextInt(SessionPlacement.values().length));
+            data.putSessionProperties("session" + i, properties);
+
+            localTotal += properties.localSize;
+            remoteTotal += properties.remoteSize;
+        }
+
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.capacity = (long) (tightness * remoteTotal);
+        storageProperties.MTTF = 0;
+        storageProperties.readCost = 4E-4;
+        storageProperties.writeCost = 5E-3;
+        storageProperties.storageCost = 3E-8;
+        data.putStorageProperties(new SyntheticStorage(), storageProperties);
+
+        data.localCapacity = (long) (tightness * localTotal);
+        data.localMTTF = 600;
+        data.optimizerPeriod = 30;
+
+        return data;
+    }
+
+    private long nextSize(Random random) {
+        switch (sizeDistribution) {
+            case LOGNORMAL:
+                return Math.max(64, (long) (8192 * Math.exp(random.nextGaussian())));
+            case UNIFORM:
+            default:
+                return 1024 + random.nextInt(63 * 1024);
+        }
+    }
+
+    private double nextValue(Random random) {
+        switch (valueDistribution) {
+            case PARETO:
+                return 0.1 / Math.pow(1 - random.nextDouble(), 1 / 1.5);
+            case UNIFORM:
+            default:
+                return 0.5 + random.nextDouble();
+        }
+    }
+
+    /**
+     * Storage that only identifies the remote storage in the OptimizationData.
+     */
+    private static class SyntheticStorage extends AbstractSessionStorage {
+
+        @Override
+        public boolean store(SessionData session) {
+            return true;
+        }
+
+        @Override
+        public void remove(String id) {
+        }
+
+        @Override
+        public SessionData load(String id) {
+            return null;
+        }
+
+        @Override
+        public List<StoredSession> stored() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public long capacity() {
+            return 0;
+        }
+    }
+
+}
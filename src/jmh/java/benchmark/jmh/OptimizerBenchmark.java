@@ -0,0 +1,98 @@
+package benchmark.jmh;
+
+import core.optimizer.*;
+import core.optimizer.alg.LocalOptimizer;
+import core.optimizer.alg.UtilityBasedOptimizer;
+import core.storage.SessionStorage;
+import core.util.ClassLoadingFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and allocation of SessionOptimizer.optimize() on synthetic data,
+ * and prints the utility of the solution relative to an upper bound at the end of each trial.
+ * The upper bound places every session in its best placement, ignoring the capacities.
+ * <p>
+ * The LP and CHP optimizers are slow at the larger session counts,
+ * restrict the parameters with e.g. -p sessions=10000 when comparing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OptimizerBenchmark {
+
+    @Param({"GreedyOptimizer", "PackedGreedyOptimizer", "GreedyAdjustedOptimizer", "GreedyToyodaOptimizer",
+            "LPOptimizer", "CHPOptimizer", "LocalOptimizer", "RemoteOptimizer", "BothOptimizer",
+            "RandomAllowDropOptimizer", "RandomNoDropOptimizer"})
+    public String optimizer;
+
+    @Param({"10000", "100000", "1000000"})
+    public int sessions;
+
+    @Param({"UNIFORM", "LOGNORMAL"})
+    public OptimizationDataGenerator.SizeDistribution sizes;
+
+    @Param({"UNIFORM", "PARETO"})
+    public OptimizationDataGenerator.ValueDistribution values;
+
+    @Param({"0.5"})
+    public double tightness;
+
+    private SessionOptimizer sessionOptimizer;
+    private OptimizationData data;
+    private SessionOptimizerSolution solution;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sessionOptimizer = ClassLoadingFactory.loadClass("core.optimizer.alg." + optimizer, SessionOptimizer.class);
+
+        OptimizationDataGenerator generator = new OptimizationDataGenerator();
+        generator.sessions = sessions;
+        generator.sizeDistribution = sizes;
+        generator.valueDistribution = values;
+        generator.tightness = tightness;
+        data = generator.generate();
+    }
+
+    @Benchmark
+    public SessionOptimizerSolution optimize() {
+        solution = sessionOptimizer.optimize(data);
+        return solution;
+    }
+
+    @TearDown(Level.Trial)
+    public void printQuality() {
+        double bound = upperBound();
+        System.out.println();
+        if (solution == null) {
+            System.out.println("No solution found.");
+        } else {
+            System.out.println(String.format("Utility: %.4f, upper bound: %.4f, ratio: %.4f",
+                    solution.getValue(), bound, solution.getValue() / bound));
+        }
+    }
+
+    /**
+     * Sums the best utility of every session over all placements, ignoring capacities.
+     */
+    private double upperBound() {
+        UtilityBasedOptimizer evaluator = new LocalOptimizer();
+        SessionStorage storage = data.getStorages().iterator().next();
+        double bound = 0;
+
+        for (String session : data.getSessions()) {
+            double best = Double.NEGATIVE_INFINITY;
+            for (SessionPlacement placement : SessionPlacement.values()) {
+                best = Math.max(best, evaluator.evaluateUtility(session, placement, storage, data));
+            }
+            bound += best;
+        }
+
+        return bound;
+    }
+
+}
@@ -0,0 +1,92 @@
+package benchmark.jmh;
+
+import benchmark.Payload;
+import core.storage.SessionData;
+import core.storage.compressor.StreamCompressor;
+import core.storage.serializer.SessionSerializer;
+import core.util.ClassLoadingFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every SessionSerializer combined with every StreamCompressor,
+ * over all benchmark Payloads.
+ * Throughput and sampled latency percentiles are reported for serialization
+ * and deserialization, and the serialized size of the payload is printed
+ * at the end of each trial.
+ * Run with the gc profiler (the default of the jmh profile) for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"JavaSerializer", "KryoSerializer", "KryoUnsafeSerializer", "FastSerializer"})
+    public String serializer;
+
+    @Param({"NoCompressor", "SnappyCompressor"})
+    public String compressor;
+
+    @Param({"ByteKiloPayload", "ByteMegaPayload", "ObjectHierarchyPayload", "RandomWordsPayload",
+            "WordsKiloPayload", "WordsMegaPayload", "ZeroKiloPayload", "ZeroMegaPayload"})
+    public String payload;
+
+    private SessionSerializer sessionSerializer;
+    private StreamCompressor streamCompressor;
+    private SessionData data;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sessionSerializer = ClassLoadingFactory.loadClass("core.storage.serializer." + serializer, SessionSerializer.class);
+        streamCompressor = ClassLoadingFactory.loadClass("core.storage.compressor." + compressor, StreamCompressor.class);
+        Payload sessionPayload = ClassLoadingFactory.loadClass("benchmark." + payload, Payload.class);
+
+        data = new SessionData();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("data", sessionPayload.getPayload());
+        data.setAttributes(attributes);
+        data.setClusterId("abc");
+        data.setCreated(System.currentTimeMillis());
+
+        serialized = write(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void printSize() {
+        System.out.println();
+        System.out.println("Serialized size: " + serialized.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return write(data);
+    }
+
+    @Benchmark
+    public SessionData deserialize() throws IOException {
+        try (InputStream in = streamCompressor.decompress(new ByteArrayInputStream(serialized))) {
+            return sessionSerializer.readSessionData(in);
+        }
+    }
+
+    private byte[] write(SessionData session) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * 1024);
+        try (OutputStream out = streamCompressor.compress(bytes)) {
+            sessionSerializer.writeSessionData(session, out);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -10,6 +10,7 @@ import java.io.ObjectOutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Session class used by the BasicSessionManager.
@@ -19,6 +20,8 @@ import java.util.Set;
 public class BasicSession extends AbstractSession {
 
     private Set<SessionListener> listeners = new HashSet<>();
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong modifications = new AtomicLong();
 
     protected BasicSession(BasicSessionManager utilitySessionManager, HttpServletRequest request) {
         super(utilitySessionManager, request);
@@ -70,6 +73,28 @@ public class BasicSession extends AbstractSession {
         return data;
     }
 
+    /**
+     * Gets the version of this session, which is incremented
+     * every time the session is accessed or modified.
+     * Read the version before creating a SessionData object to detect
+     * changes made after the object was created.
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Gets the number of times the attributes of this session have been changed.
+     * Unlike the version, this is not incremented by accesses.
+     *
+     * @return The current modification count.
+     */
+    public long getModificationCount() {
+        return modifications.get();
+    }
+
     /**
      * Adds a listener to this object, that will receive notifications when the session is accessed.
      *
@@ -98,6 +123,7 @@ public class BasicSession extends AbstractSession {
     public boolean access(long time) {
         boolean success = super.access(time);
         if (success) {
+            version.incrementAndGet();
             for (SessionListener listener : listeners) {
                 listener.sessionAccessed(this);
             }
@@ -106,4 +132,35 @@ public class BasicSession extends AbstractSession {
         return success;
     }
 
+    /**
+     * Adds a listener notification mechanic to the default setAttribute method.
+     *
+     * @param name  The name of the attribute.
+     * @param value The new value of the attribute.
+     */
+    @Override
+    public void setAttribute(String name, Object value) {
+        super.setAttribute(name, value);
+        modifications.incrementAndGet();
+        version.incrementAndGet();
+        for (SessionListener listener : listeners) {
+            listener.sessionModified(this);
+        }
+    }
+
+    /**
+     * Adds a listener notification mechanic to the default removeAttribute method.
+     *
+     * @param name The name of the attribute.
+     */
+    @Override
+    public void removeAttribute(String name) {
+        super.removeAttribute(name);
+        modifications.incrementAndGet();
+        version.incrementAndGet();
+        for (SessionListener listener : listeners) {
+            listener.sessionModified(this);
+        }
+    }
+
 }
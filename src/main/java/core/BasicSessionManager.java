@@ -180,6 +180,16 @@ public class BasicSessionManager extends AbstractSessionManager implements Crash
             return session;
     }
 
+    /**
+     * Gets a session from local memory only, without consulting any other storage.
+     *
+     * @param id The id of the session.
+     * @return The session if it is held in memory, otherwise null.
+     */
+    protected BasicSession getLocalSession(String id) {
+        return sessions.get(id);
+    }
+
     @Override
     protected AbstractSession newSession(HttpServletRequest request) {
         BasicSession session = new BasicSession(this, request);
@@ -4,13 +4,22 @@ import core.optimizer.*;
 import core.optimizer.alg.LPOptimizer;
 import core.predictor.IntegratingPredictor;
 import core.predictor.Predictor;
+import core.storage.AsyncSessionStorage;
+import core.storage.JournalingSessionStorage;
+import core.storage.SessionData;
 import core.storage.SessionStorage;
 import core.storage.StoredSession;
+import core.storage.StoredSessionChanges;
 import core.transform.RandomValueChange;
 import core.transform.Transform;
 import core.util.ClassLoadingFactory;
 import core.util.CrashGenerator;
+import core.util.LockTable;
+import core.util.MemoryPressureListener;
+import core.util.MemoryPressureMonitor;
 import core.util.PropertyParser;
+import core.util.SessionLockTable;
+import core.util.StripedLockTable;
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
@@ -21,6 +30,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -30,10 +40,13 @@ import java.util.concurrent.locks.ReentrantLock;
  * and remote storage according to a SessionOptimizerSolution.
  * The solution is obtained from an implementation of the
  * SessionOptimizer interface, such as the LPOptimizer.
+ * <p>
+ * With several session storages, sessions are placed in any combination
+ * of local memory and storages, following the placement masks of the solution.
  *
  * @author Sebastian Lindholm
  */
-public class OptimizingSessionManager extends PersistentSessionManager implements SessionListener {
+public class OptimizingSessionManager extends PersistentSessionManager implements SessionListener, MemoryPressureListener {
 
     private static final Logger logger = LoggerFactory.getLogger(OptimizingSessionManager.class);
     private static final Logger perf4jLogger = LoggerFactory.getLogger("org.perf4j.TimingLogger");
@@ -52,52 +65,149 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
     private static final String DEFAULT_TRANSFORM = RandomValueChange.class.getName();
     private static final String INITIAL_VALUE_PARAM = "session-initial-value";
     private static final double DEFAULT_INITIAL_VALUE = 1.0D;
+    private static final String FULL_SCAN_PERIOD_PARAM = "session-full-scan-period";
+    private static final int DEFAULT_FULL_SCAN_PERIOD = 10;
+    private static final String LOCK_MODE_PARAM = "session-lock-mode";
+    private static final String LOCK_MODE_SESSION = "session";
+    private static final String LOCK_MODE_STRIPED = "striped";
+    private static final String LOCK_STRIPES_PARAM = "session-lock-stripes";
+    private static final int DEFAULT_LOCK_STRIPES = 1024;
+    private static final String RELOCATION_MODE_PARAM = "session-relocation-mode";
+    private static final String RELOCATION_MODE_SYNC = "sync";
+    private static final String RELOCATION_MODE_ASYNC = "async";
+    private static final String RELOCATION_THREADS_PARAM = "session-relocation-threads";
+    private static final int DEFAULT_RELOCATION_THREADS = 4;
+    private static final String RELOCATION_QUEUE_PARAM = "session-relocation-queue-size";
+    private static final int DEFAULT_RELOCATION_QUEUE = 256;
+    private static final String RELOCATION_DEADLINE_PARAM = "session-relocation-deadline";
+    private static final int DEFAULT_RELOCATION_DEADLINE = 0;
+    private static final String SIZE_EVALUATOR_PARAM = "session-size-evaluator";
+    private static final String DEFAULT_SIZE_EVALUATOR = StreamingSizeEvaluator.class.getName();
+    private static final String SIZE_SAMPLE_FRACTION_PARAM = "session-size-sample-fraction";
+    private static final String RELOCATION_BATCH_PARAM = "session-relocation-batch-size";
+    private static final int DEFAULT_RELOCATION_BATCH = 1;
+    private static final String LOCAL_CAPACITY_PARAM = "session-local-capacity-provider";
+    private static final String DEFAULT_LOCAL_CAPACITY = FixedLocalCapacityProvider.class.getName();
+    private static final String LOCAL_CAPACITY_RATIO_PARAM = "session-local-capacity-ratio";
+    private static final String GC_TARGET_OCCUPANCY_PARAM = "session-gc-target-occupancy";
+    private static final String GC_MAX_TIME_RATIO_PARAM = "session-gc-max-time-ratio";
+    private static final String MEMORY_THRESHOLD_PARAM = "session-memory-threshold";
+    private static final double DEFAULT_MEMORY_THRESHOLD = 0;
+    private static final String MEMORY_TARGET_PARAM = "session-memory-target";
+    private static final double DEFAULT_MEMORY_TARGET = 0.75;
+    private static final String MEMORY_COOLDOWN_PARAM = "session-memory-cooldown";
+    private static final int DEFAULT_MEMORY_COOLDOWN = 5;
 
     private final OptimizationData data = new OptimizationData();
     private final ConcurrentMap<String, AtomicInteger> accessBuffer = new ConcurrentHashMap<>();
-    private final SizeEvaluator sizeEvaluator = new SerializingSizeEvaluator();
+    private final RemoteImageCache imageCache = new RemoteImageCache();
+    private SizeEvaluator sizeEvaluator = new CachingSizeEvaluator(new StreamingSizeEvaluator());
+    private LocalCapacityProvider localCapacityProvider = new FixedLocalCapacityProvider();
     private final Predictor predictor = new IntegratingPredictor();
+    private final SessionJournal journal = new SessionJournal();
+    private Set<String> lastJournaled = new HashSet<>();
+    private int fullScanPeriod = DEFAULT_FULL_SCAN_PERIOD;
+    private int cyclesSinceFullScan = 0;
     private long lastRun = 0;
     private double lastUtility = 0;
     private SessionOptimizer optimizer;
     private Set<Transform> transforms = new LinkedHashSet<>();
-    private Set<String> rubbishBin = new HashSet<>();
-    private ConcurrentMap<String, Lock> locks = new ConcurrentHashMap<>();
+    private Set<String> rubbishBin = ConcurrentHashMap.newKeySet();
+    private RelocationExecutor relocationExecutor;
+    private int relocationDeadline = DEFAULT_RELOCATION_DEADLINE;
+    private int relocationBatchSize = DEFAULT_RELOCATION_BATCH;
+    private final List<PendingStore> storeBatch = new ArrayList<>();
+    private final Map<SessionStorage, List<String>> removeBatch = new LinkedHashMap<>();
+    // Version of each session when it was last stored in the first storage
+    private final ConcurrentMap<String, Long> remoteVersions = new ConcurrentHashMap<>();
+    // Number of removals from remote storage, to detect sessions removed while being loaded
+    private final AtomicLong remoteRemovals = new AtomicLong();
+    private LockTable locks = new SessionLockTable();
     private CrashGenerator crashGenerator;
+    private MemoryPressureMonitor memoryMonitor;
+    private final ReentrantLock cycleLock = new ReentrantLock();
 
 
     @Override
     public void addSession(BasicSession session) {
         if (session != null) {
-            locks.putIfAbsent(session.getClusterId(), new ReentrantLock(true));
+            locks.getLock(session.getClusterId());
             super.addSession(session);
+            journal.mark(session.getClusterId());
         } else {
             logger.warn("Trying to add null session to the manager. Ignoring.");
         }
     }
 
+    /**
+     * Get a session from the manager.
+     * <p>
+     * The lock of the session is only held to look the session up and to install it once loaded,
+     * and not during the remote load itself, so that a slow load does not block sessions sharing the lock.
+     * Must not be called while holding the lock of the session, see getHeldSession.
+     */
     @Override
     public BasicSession getSession(String id) {
-        Lock lock = locks.get(id);
+        Lock lock = locks.getLock(id);
         BasicSession session = null;
-        if (lock == null) {
-            locks.putIfAbsent(id, new ReentrantLock(true));
-            lock = locks.get(id);
-        }
 
         lock.lock();
         try {
-            session = super.getSession(id);
+            session = getLocalSession(id);
         } finally {
             lock.unlock();
         }
 
-        return session;
+        if (session == null)
+            return super.getSession(id);
+
+        return session.isValid() ? session : null;
+    }
+
+    /**
+     * Gets a session while holding its lock, loading it from remote storage on the calling thread
+     * instead of through the shared load, which needs the lock to install the session.
+     *
+     * @param id The id of the session.
+     * @return The session, or null if it could not be found.
+     */
+    private BasicSession getHeldSession(String id) {
+        BasicSession session = getLocalSession(id);
+        if (session == null && getSessionStorage() != null)
+            session = loadRemoteSession(id);
+
+        return session != null && session.isValid() ? session : null;
+    }
+
+    @Override
+    protected BasicSession loadRemoteSession(String id) {
+        BasicSession session = getLocalSession(id);
+        if (session != null)
+            return session;
+
+        long removals = remoteRemovals.get();
+        SessionData in = readRemoteSession(id);
+
+        Lock lock = locks.getLock(id);
+        lock.lock();
+        try {
+            session = getLocalSession(id);
+            if (session != null)
+                return session;
+
+            // The session may have been dropped while it was read, so it is read again under the lock
+            if (remoteRemovals.get() != removals)
+                in = readRemoteSession(id);
+
+            return in != null ? loadSession(in) : null;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public boolean removeSession(String id) {
-        Lock lock = locks.get(id);
+        Lock lock = locks.findLock(id);
         boolean success;
         if (lock != null) {
             lock.lock();
@@ -110,6 +220,8 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
             success = super.removeSession(id);
         }
 
+        journal.mark(id);
+
         return success;
     }
 
@@ -124,14 +236,17 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
             long max = (long) getMaxInactiveInterval() * 1000L;
             if (now - properties.lastAccess > max) {
-                Lock lock = locks.get(sessionId);
+                Lock lock = locks.findLock(sessionId);
                 if (lock != null) {
                     lock.lock();
                     try {
-                        BasicSession session = getSession(sessionId);
+                        BasicSession session = getHeldSession(sessionId);
                         if (session != null) {
                             session.timeoutSession();
-                            getSessionStorage().remove(sessionId);
+                            remoteRemovals.incrementAndGet();
+                            for (SessionStorage storage : getSessionStorages()) {
+                                storage.remove(sessionId);
+                            }
                             removeSession(sessionId);
                             scavengeCount++;
                         }
@@ -148,11 +263,27 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
     @Override
     protected void persist() {
         logger.info("Running persist.");
+        cycleLock.lock();
+        try {
+            doPersist();
+        } finally {
+            cycleLock.unlock();
+        }
+        logger.info("Persist completed.");
+    }
+
+    private void doPersist() {
         if (getSessionStorage() != null) {
             StopWatch optim = new StopWatch();
             StopWatch load = new Slf4JStopWatch("LOAD", perf4jLogger);
-            readStoredSessions();
-            load.stop();
+            if (journal.takeFullScanRequest() || ++cyclesSinceFullScan >= fullScanPeriod) {
+                readStoredSessions();
+                cyclesSinceFullScan = 0;
+                load.stop("LOAD_FULL");
+            } else {
+                readJournaledSessions();
+                load.stop("LOAD_JOURNAL");
+            }
             doTransformChain();
             executeOptimization();
             optim.stop();
@@ -163,7 +294,6 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         } else {
             logger.warn("No session storage defined.");
         }
-        logger.info("Persist completed.");
     }
 
     @Override
@@ -179,12 +309,87 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         super.doStart();
         logger.info("Starting {}.", OptimizingSessionManager.class.getName());
 
+        // Record stores and removals in the journal
+        List<SessionStorage> storages = new ArrayList<>();
+        for (SessionStorage storage : getSessionStorages()) {
+            storages.add(new JournalingSessionStorage(storage, journal));
+        }
+        setSessionStorages(storages);
+        journal.requestFullScan();
+
+        fullScanPeriod = parseIntParameter(FULL_SCAN_PERIOD_PARAM, DEFAULT_FULL_SCAN_PERIOD);
+
+        // Choose between one lock per session and a fixed set of lock stripes
+        String lockMode = this.getContext().getInitParameter(LOCK_MODE_PARAM);
+        if (LOCK_MODE_STRIPED.equalsIgnoreCase(lockMode)) {
+            int stripes = parseIntParameter(LOCK_STRIPES_PARAM, DEFAULT_LOCK_STRIPES);
+            if (stripes < 1) {
+                logger.warn("Invalid number of lock stripes: {}. Defaulting to {}.", stripes, DEFAULT_LOCK_STRIPES);
+                stripes = DEFAULT_LOCK_STRIPES;
+            }
+            StripedLockTable striped = new StripedLockTable(stripes);
+            locks = striped;
+            logger.info("Using {} striped session locks.", striped.getStripes());
+        } else {
+            if (lockMode != null && !LOCK_MODE_SESSION.equalsIgnoreCase(lockMode))
+                logger.warn("Unknown {}: {}. Defaulting to {}.", LOCK_MODE_PARAM, lockMode, LOCK_MODE_SESSION);
+            locks = new SessionLockTable();
+        }
+
+        // Choose whether remote I/O during relocation is done while holding the session lock
+        String relocationMode = this.getContext().getInitParameter(RELOCATION_MODE_PARAM);
+        if (RELOCATION_MODE_ASYNC.equalsIgnoreCase(relocationMode)) {
+            int threads = Math.max(1, parseIntParameter(RELOCATION_THREADS_PARAM, DEFAULT_RELOCATION_THREADS));
+            int queueSize = Math.max(1, parseIntParameter(RELOCATION_QUEUE_PARAM, DEFAULT_RELOCATION_QUEUE));
+            relocationDeadline = parseIntParameter(RELOCATION_DEADLINE_PARAM, DEFAULT_RELOCATION_DEADLINE);
+            relocationExecutor = new RelocationExecutor(threads, queueSize);
+            logger.info("Relocating sessions asynchronously: {} THREADS, {} QUEUE.", threads, queueSize);
+        } else if (relocationMode != null && !RELOCATION_MODE_SYNC.equalsIgnoreCase(relocationMode)) {
+            logger.warn("Unknown {}: {}. Defaulting to {}.", RELOCATION_MODE_PARAM, relocationMode, RELOCATION_MODE_SYNC);
+        }
+
+        relocationBatchSize = Math.max(1, parseIntParameter(RELOCATION_BATCH_PARAM, DEFAULT_RELOCATION_BATCH));
+
         parseConfig();
 
         // Try to load an appropriate SessionOptimizer
         String optimizerValue = this.getContext().getInitParameter(OPTIMIZER_PARAM);
         optimizer = ClassLoadingFactory.tryLoadClass(optimizerValue, DEFAULT_OPTIMIZER, SessionOptimizer.class);
 
+        // Try to load a SizeEvaluator, whose results are cached between cycles unless it samples the sessions itself.
+        // Sessions serialized to measure them are kept for the stores of the cycle.
+        String sizeEvaluatorValue = this.getContext().getInitParameter(SIZE_EVALUATOR_PARAM);
+        SizeEvaluator evaluator = ClassLoadingFactory.tryLoadClass(sizeEvaluatorValue, DEFAULT_SIZE_EVALUATOR, SizeEvaluator.class);
+        if (evaluator instanceof SamplingSizeEvaluator) {
+            String fractionValue = this.getContext().getInitParameter(SIZE_SAMPLE_FRACTION_PARAM);
+            if (fractionValue != null) {
+                try {
+                    ((SamplingSizeEvaluator) evaluator).setFraction(Double.parseDouble(fractionValue));
+                } catch (NumberFormatException e) {
+                    logger.warn("Unable to parse {}: {}. Defaulting to {}.", SIZE_SAMPLE_FRACTION_PARAM, fractionValue, SamplingSizeEvaluator.DEFAULT_FRACTION);
+                }
+            }
+        }
+        if (evaluator instanceof SamplingSizeEvaluator)
+            sizeEvaluator = evaluator;
+        else if (evaluator != null)
+            sizeEvaluator = new CachingSizeEvaluator(evaluator);
+
+        // Try to load a LocalCapacityProvider
+        String capacityValue = this.getContext().getInitParameter(LOCAL_CAPACITY_PARAM);
+        LocalCapacityProvider capacityProvider = ClassLoadingFactory.tryLoadClass(capacityValue, DEFAULT_LOCAL_CAPACITY, LocalCapacityProvider.class);
+        if (capacityProvider instanceof FixedLocalCapacityProvider) {
+            FixedLocalCapacityProvider fixed = (FixedLocalCapacityProvider) capacityProvider;
+            fixed.setRatio(parseDoubleParameter(LOCAL_CAPACITY_RATIO_PARAM, FixedLocalCapacityProvider.DEFAULT_RATIO));
+        }
+        if (capacityProvider instanceof GcAwareLocalCapacityProvider) {
+            GcAwareLocalCapacityProvider gcAware = (GcAwareLocalCapacityProvider) capacityProvider;
+            gcAware.setTargetOccupancy(parseDoubleParameter(GC_TARGET_OCCUPANCY_PARAM, GcAwareLocalCapacityProvider.DEFAULT_TARGET_OCCUPANCY));
+            gcAware.setMaxGcRatio(parseDoubleParameter(GC_MAX_TIME_RATIO_PARAM, GcAwareLocalCapacityProvider.DEFAULT_MAX_GC_RATIO));
+        }
+        if (capacityProvider != null)
+            localCapacityProvider = capacityProvider;
+
         // Try loading a Transform
         String transformValue = this.getContext().getInitParameter(TRANSFORM_PARAM);
         Transform transform = ClassLoadingFactory.tryLoadClass(transformValue, DEFAULT_TRANSFORM, Transform.class);
@@ -214,10 +419,70 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
             crashGenerator = new CrashGenerator(this, data.localMTTF);
             crashGenerator.start();
         }
+
+        // Offload sessions between cycles when the heap fills up
+        double memoryThreshold = parseDoubleParameter(MEMORY_THRESHOLD_PARAM, DEFAULT_MEMORY_THRESHOLD);
+        if (memoryThreshold > 0 && memoryThreshold < 1) {
+            double memoryTarget = parseDoubleParameter(MEMORY_TARGET_PARAM, DEFAULT_MEMORY_TARGET);
+            int cooldown = Math.max(0, parseIntParameter(MEMORY_COOLDOWN_PARAM, DEFAULT_MEMORY_COOLDOWN));
+            memoryMonitor = new MemoryPressureMonitor(this, memoryThreshold, memoryTarget, cooldown * 1000L);
+            if (!memoryMonitor.start())
+                memoryMonitor = null;
+        }
+    }
+
+    /**
+     * Parses an integer init parameter, falling back to a default value.
+     *
+     * @param name         Name of the init parameter.
+     * @param defaultValue Value used if the parameter is missing or invalid.
+     * @return The parsed value.
+     */
+    private int parseIntParameter(String name, int defaultValue) {
+        String value = this.getContext().getInitParameter(name);
+        int parsed = defaultValue;
+        if (value != null) {
+            try {
+                parsed = Integer.parseInt(value);
+                logger.debug("Found parameter {} with value {}.", name, parsed);
+            } catch (NumberFormatException e) {
+                logger.warn("Unable to parse {}: {}. Defaulting to {}.", name, value, defaultValue);
+            }
+        } else {
+            logger.debug("No {} defined, defaulting to {}.", name, defaultValue);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Parses a floating point init parameter, falling back to a default value.
+     *
+     * @param name         Name of the init parameter.
+     * @param defaultValue Value used if the parameter is missing or invalid.
+     * @return The parsed value.
+     */
+    private double parseDoubleParameter(String name, double defaultValue) {
+        String value = this.getContext().getInitParameter(name);
+        double parsed = defaultValue;
+        if (value != null) {
+            try {
+                parsed = Double.parseDouble(value);
+                logger.debug("Found parameter {} with value {}.", name, parsed);
+            } catch (NumberFormatException e) {
+                logger.warn("Unable to parse {}: {}. Defaulting to {}.", name, value, defaultValue);
+            }
+        } else {
+            logger.debug("No {} defined, defaulting to {}.", name, defaultValue);
+        }
+
+        return parsed;
     }
 
     /**
      * Reads the storage configuration file, placing relevant data in the OptimizationData object.
+     * With several storages, the settings of each storage can be overridden by a configuration file
+     * named after the class of the storage, e.g. OffHeapSessionStorage.conf.
      */
     private void parseConfig() {
         Map<String, Double> settings = new HashMap<>();
@@ -229,39 +494,60 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         settings.put(STORAGE_COST_PARAM, 0D);
 
         // Try to parse the STORAGE_CONFIG
+        readConfig(STORAGE_CONFIG, settings);
+
+        // Save them in the OptimizationData object.
+
+        data.optimizerPeriod = getPersistPeriod();
+        data.localMTTF = settings.get(LOCAL_MTTF_PARAM);
+
+        List<SessionStorage> storages = getSessionStorages();
+        for (SessionStorage storage : storages) {
+            Map<String, Double> storageSettings = new HashMap<>(settings);
+            if (storages.size() > 1) {
+                SessionStorage delegate = storage instanceof JournalingSessionStorage ? ((JournalingSessionStorage) storage).getDelegate() : storage;
+                String config = delegate.getClass().getSimpleName() + ".conf";
+                if (Paths.get("WebContent", "UTIL-CONF", config).toFile().exists())
+                    readConfig(config, storageSettings);
+            }
+
+            StorageProperties properties = new StorageProperties();
+            properties.MTTF = storageSettings.get(REMOTE_MTTF_PARAM);
+            properties.readCost = storageSettings.get(READ_COST_PARAM);
+            properties.writeCost = storageSettings.get(WRITE_COST_PARAM);
+            properties.storageCost = storageSettings.get(STORAGE_COST_PARAM);
+
+            data.putStorageProperties(storage, properties);
+        }
+    }
+
+    /**
+     * Reads a configuration file in UTIL-CONF, overwriting the settings found in it.
+     *
+     * @param config   Name of the configuration file.
+     * @param settings The settings to read, with their current values.
+     */
+    private void readConfig(String config, Map<String, Double> settings) {
         try (
-                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", STORAGE_CONFIG))
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", config))
         ) {
-            Map<String, String> config = parser.parse();
+            Map<String, String> values = parser.parse();
 
             for (String key : settings.keySet()) {
                 String value = null;
                 try {
-                    if (config.containsKey(key)) {
-                        value = config.get(key);
+                    if (values.containsKey(key)) {
+                        value = values.get(key);
                         settings.put(key, Double.parseDouble(value));
-                        logger.info("Found {} entry: {} = {}.", STORAGE_CONFIG, key, value);
+                        logger.info("Found {} entry: {} = {}.", config, key, value);
                     }
                 } catch (NumberFormatException ex) {
-                    logger.warn("Could not parse {} entry: {} = {}.", STORAGE_CONFIG, key, value);
+                    logger.warn("Could not parse {} entry: {} = {}.", config, key, value);
                 }
             }
         } catch (Exception e) {
-            logger.warn("Error while parsing storage configuration file.", e);
+            logger.warn("Error while parsing storage configuration file {}.", config, e);
         }
-
-        // Save them in the OptimizationData object.
-
-        data.optimizerPeriod = getPersistPeriod();
-        data.localMTTF = settings.get(LOCAL_MTTF_PARAM);
-
-        StorageProperties properties = new StorageProperties();
-        properties.MTTF = settings.get(REMOTE_MTTF_PARAM);
-        properties.readCost = settings.get(READ_COST_PARAM);
-        properties.writeCost = settings.get(WRITE_COST_PARAM);
-        properties.storageCost = settings.get(STORAGE_COST_PARAM);
-
-        data.putStorageProperties(getSessionStorage(), properties);
     }
 
     @Override
@@ -271,6 +557,16 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         if (crashGenerator != null)
             crashGenerator.shutdown();
 
+        if (memoryMonitor != null) {
+            memoryMonitor.shutdown();
+            memoryMonitor = null;
+        }
+
+        if (relocationExecutor != null) {
+            relocationExecutor.shutdown();
+            relocationExecutor = null;
+        }
+
         synchronized (data) {
             data.clearSessions();
         }
@@ -294,57 +590,79 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
     private void readStoredSessions() {
         logger.info("Reading stored sessions..");
 
+        // Everything is revisited, so the journal can be discarded
+        lastJournaled = journal.drain();
+
         Set<BasicSession> local = getSessionSet();
-        List<StoredSession> remote = getSessionStorage().stored();
+        List<SessionStorage> storages = getSessionStorages();
 
         // Mark all sessions for deletion
         for (String sessionId : data.getSessions()) {
-            data.getSessionProperties(sessionId).oldPlacement = SessionPlacement.DROP;
+            SessionProperties properties = data.getSessionProperties(sessionId);
+            properties.oldPlacement = SessionPlacement.DROP;
+            properties.storedTiers = 0;
         }
 
         double value = 0;
         double costs = 0;
         int sessions = 0;
+        int remoteCount = 0;
 
-        // Sessions found on remote storage
-        for (StoredSession session : remote) {
-            SessionProperties properties;
+        // Sessions found on remote storage, in every storage
+        for (int tier = 0; tier < storages.size(); tier++) {
+            for (StoredSession session : storages.get(tier).stored()) {
+                SessionProperties properties;
 
-            if (!data.containsSession(session.getSessionId())) {
-                properties = new SessionProperties();
-                data.putSessionProperties(session.getSessionId(), properties);
-            } else {
-                properties = data.getSessionProperties(session.getSessionId());
-            }
+                if (!data.containsSession(session.getSessionId())) {
+                    properties = new SessionProperties();
+                    data.putSessionProperties(session.getSessionId(), properties);
+                } else {
+                    properties = data.getSessionProperties(session.getSessionId());
+                }
 
-            if (accessBuffer.containsKey(session.getSessionId())) {
-                properties.accesses = accessBuffer.get(session.getSessionId()).getAndSet(0);
-            } else {
-                properties.accesses = 0;
-            }
+                // Sessions held by several storages are only counted once
+                boolean seen = properties.storedTiers != 0;
+                properties.storedTiers |= 1 << tier;
+                if (!seen)
+                    properties.remoteSize = session.getRemoteSize();
+                if (storages.size() > 1) {
+                    if (properties.storageSizes == null || properties.storageSizes.length != storages.size())
+                        properties.storageSizes = new long[storages.size()];
+                    properties.storageSizes[tier] = session.getRemoteSize();
+                }
 
-            properties.oldPlacement = SessionPlacement.REMOTE;
+                remoteCount++;
+                costs += evaluateCosts(session.getSessionId(), storages.get(tier), lastRun / 1000L);
+                if (seen)
+                    continue;
 
-            properties.remoteSize = session.getRemoteSize();
-            if(properties.localSize == null){
-                BasicSession concreteSession = getSession(session.getSessionId());
-                if(concreteSession!=null) {
-                    properties.localSize = sizeEvaluator.evaluateLocal(concreteSession);
+                if (accessBuffer.containsKey(session.getSessionId())) {
+                    properties.accesses = accessBuffer.get(session.getSessionId()).getAndSet(0);
+                } else {
+                    properties.accesses = 0;
                 }
-                else {
-                    logger.warn("Session {} marked as stored, but could not be found. Marking for drop.");
-                    properties.oldPlacement = SessionPlacement.DROP;
+
+                properties.oldPlacement = SessionPlacement.REMOTE;
+
+                if(properties.localSize == null){
+                    BasicSession concreteSession = getSession(session.getSessionId());
+                    if(concreteSession!=null) {
+                        properties.localSize = sizeEvaluator.evaluateLocal(concreteSession);
+                    }
+                    else {
+                        logger.warn("Session {} marked as stored, but could not be found. Marking for drop.");
+                        properties.oldPlacement = SessionPlacement.DROP;
+                    }
                 }
-            }
 
-            value += properties.value;
-            costs += evaluateCosts(session.getSessionId(), getSessionStorage(), lastRun / 1000L);
-            sessions++;
+                value += properties.value;
+                sessions++;
+            }
         }
 
         // Sessions found in local storage
         for (BasicSession session : local) {
-            Lock lock = locks.get(session.getClusterId());
+            Lock lock = locks.findLock(session.getClusterId());
             if (lock != null) {
                 lock.lock();
                 try {
@@ -358,10 +676,8 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
                             properties = data.getSessionProperties(session.getId());
                         }
 
-                        Long oldSize = properties.localSize;
                         properties.localSize = sizeEvaluator.evaluateLocal(session);
-                        if(oldSize==null || oldSize.equals(properties.localSize) || properties.remoteSize==null)
-                            properties.remoteSize = sizeEvaluator.evaluateRemote(session, getSessionStorage());
+                        evaluateRemoteSizes(session, properties);
 
                         switch (properties.oldPlacement) {
 
@@ -390,23 +706,244 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
             }
         }
 
+        finishReading(sessions, local.size(), remoteCount, value, costs);
+    }
+
+    /**
+     * Updates the OptimizationData object with the sessions recorded in the journal since the last cycle,
+     * leaving the properties of all other sessions untouched.
+     */
+    private void readJournaledSessions() {
+        Set<String> journaled = journal.drain();
+        journaled.addAll(readListedChanges());
+        logger.info("Reading {} journaled sessions..", journaled.size());
+
+        // Sessions accessed during the previous cycle, but not during this one
+        for (String sessionId : lastJournaled) {
+            if (!journaled.contains(sessionId)) {
+                SessionProperties properties = data.getSessionProperties(sessionId);
+                if (properties != null)
+                    properties.accesses = 0;
+            }
+        }
+
+        for (String sessionId : journaled) {
+            readJournaledSession(sessionId);
+        }
+
+        lastJournaled = journaled;
+
+        double value = 0;
+        double costs = 0;
+        int sessions = 0;
+        int localCount = 0;
+        int remoteCount = 0;
+
+        for (String sessionId : data.getSessions()) {
+            SessionProperties properties = data.getSessionProperties(sessionId);
+            switch (properties.oldPlacement) {
+
+                case LOCAL:
+                    localCount++;
+                    break;
+
+                case REMOTE:
+                    remoteCount++;
+                    costs += evaluateTierCosts(sessionId, properties, lastRun / 1000L);
+                    break;
+
+                case BOTH:
+                    localCount++;
+                    remoteCount++;
+                    costs += evaluateTierCosts(sessionId, properties, lastRun / 1000L);
+                    break;
+
+                default:
+                    continue;
+
+            }
+
+            value += properties.value;
+            sessions++;
+        }
+
+        finishReading(sessions, localCount, remoteCount, value, costs);
+    }
+
+    /**
+     * Logs the statistics of the sessions read for a cycle, and updates the capacities.
+     *
+     * @param sessions    Number of unique sessions.
+     * @param localCount  Number of sessions in local memory.
+     * @param remoteCount Number of sessions in remote storage, counted once per storage on a full scan.
+     * @param value       Total value of the sessions.
+     * @param costs       Total costs of the sessions in remote storage.
+     */
+    private void finishReading(int sessions, int localCount, int remoteCount, double value, double costs) {
         double valueWithCosts = value - costs;
 
         stats.info(", {}, {}, {}, {}", sessions, lastUtility, value, valueWithCosts);
 
         accessBuffer.clear();
 
-        logger.info("Stored sessions: {} LOCAL, {} REMOTE ({} UNIQUE).", local.size(), remote.size(), sessions);
+        logger.info("Stored sessions: {} LOCAL, {} REMOTE ({} UNIQUE).", localCount, remoteCount, sessions);
 
         logger.info("Session values: {} TOTAL, {} WITH_COSTS.", value, valueWithCosts);
 
-        // Update capacities
-        long localMemory = (long) (0.25 * Runtime.getRuntime().totalMemory());
+        updateCapacities();
+    }
+
+    /**
+     * Lists the changes to the storages that support incremental listing,
+     * so that sessions stored or removed by other nodes are revisited without a full scan.
+     * The remote sizes of known sessions are updated from the listing.
+     *
+     * @return The ids of the sessions changed in any storage.
+     */
+    private Set<String> readListedChanges() {
+        List<SessionStorage> storages = getSessionStorages();
+        Set<String> changed = new HashSet<>();
+
+        for (int tier = 0; tier < storages.size(); tier++) {
+            JournalingSessionStorage storage = (JournalingSessionStorage) storages.get(tier);
+            if (!storage.isIncremental())
+                continue;
+
+            StoredSessionChanges changes = storage.changes();
+            changed.addAll(changes.getRemoved());
+            for (StoredSession session : changes.getStored()) {
+                changed.add(session.getSessionId());
+                SessionProperties properties = data.getSessionProperties(session.getSessionId());
+                if (properties == null)
+                    continue;
+
+                // The remote size is the size in the first storage holding the session
+                if ((storedTiers(session.getSessionId()) & ((1 << tier) - 1)) == 0)
+                    properties.remoteSize = session.getRemoteSize();
+                if (properties.storageSizes != null && properties.storageSizes.length == storages.size())
+                    properties.storageSizes[tier] = session.getRemoteSize();
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Brings the properties of a single journaled session up to date.
+     *
+     * @param sessionId Id of the session.
+     */
+    private void readJournaledSession(String sessionId) {
+        SessionProperties properties = data.getSessionProperties(sessionId);
+        int storedTiers = storedTiers(sessionId);
+        boolean storedRemotely = storedTiers != 0;
+        Lock lock = locks.findLock(sessionId);
+        BasicSession session = null;
+
+        if (lock != null) {
+            lock.lock();
+            try {
+                session = getLocalSession(sessionId);
+                if (session != null && session.isValid()) {
+                    if (properties == null) {
+                        properties = new SessionProperties();
+                        data.putSessionProperties(sessionId, properties);
+                    }
+
+                    properties.localSize = sizeEvaluator.evaluateLocal(session);
+                    evaluateRemoteSizes(session, properties);
+
+                    properties.oldPlacement = storedRemotely ? SessionPlacement.BOTH : SessionPlacement.LOCAL;
+                    properties.storedTiers = storedTiers;
+                } else {
+                    session = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        if (session == null) {
+            if (!storedRemotely) {
+                if (properties != null) {
+                    properties.oldPlacement = SessionPlacement.DROP;
+                    properties.storedTiers = 0;
+                }
+                return;
+            } else if (properties == null || properties.localSize == null || properties.remoteSize == null) {
+                // Stored by someone else, sizes are only known after a full scan
+                logger.debug("No sizes known for session {}, requesting a full scan.", sessionId);
+                journal.requestFullScan();
+                return;
+            } else {
+                properties.oldPlacement = SessionPlacement.REMOTE;
+                properties.storedTiers = storedTiers;
+            }
+        }
+
+        AtomicInteger accesses = accessBuffer.get(sessionId);
+        properties.accesses = accesses != null ? accesses.getAndSet(0) : 0;
+    }
+
+    /**
+     * Finds the storages holding a session, as far as known by their journals.
+     *
+     * @param sessionId Id of the session.
+     * @return A mask with bit k set if the session is held by storage k.
+     */
+    private int storedTiers(String sessionId) {
+        List<SessionStorage> storages = getSessionStorages();
+        int tiers = 0;
+        for (int tier = 0; tier < storages.size(); tier++) {
+            if (((JournalingSessionStorage) storages.get(tier)).isStored(sessionId))
+                tiers |= 1 << tier;
+        }
+        return tiers;
+    }
+
+    /**
+     * Evaluates the remote size of a session, in every storage if there are several.
+     * Must be called while holding the lock of the session.
+     *
+     * @param session    The session.
+     * @param properties The properties of the session.
+     */
+    private void evaluateRemoteSizes(BasicSession session, SessionProperties properties) {
+        List<SessionStorage> storages = getSessionStorages();
+        properties.remoteSize = sizeEvaluator.evaluateRemote(session, storages.get(0));
+
+        if (storages.size() > 1) {
+            if (properties.storageSizes == null || properties.storageSizes.length != storages.size())
+                properties.storageSizes = new long[storages.size()];
+            properties.storageSizes[0] = properties.remoteSize;
+            for (int tier = 1; tier < storages.size(); tier++) {
+                properties.storageSizes[tier] = sizeEvaluator.evaluateRemote(session, storages.get(tier));
+            }
+        }
+    }
+
+    /**
+     * Updates the local and remote capacities in the OptimizationData object.
+     */
+    private void updateCapacities() {
+        long localUsage = 0;
+        for (String sessionId : data.getSessions()) {
+            SessionProperties properties = data.getSessionProperties(sessionId);
+            if (properties.localSize != null
+                    && (properties.oldPlacement == SessionPlacement.LOCAL || properties.oldPlacement == SessionPlacement.BOTH))
+                localUsage += properties.localSize;
+        }
+
+        long localMemory = localCapacityProvider.getLocalCapacity(localUsage);
         //long localMemory = 100 * 1048576; // 100 MB
-        long remoteMemory = getSessionStorage().capacity();
+        long remoteMemory = 0;
+        for (SessionStorage storage : getSessionStorages()) {
+            long capacity = storage.capacity();
+            data.getStorageProperties(storage).capacity = capacity;
+            remoteMemory = remoteMemory + capacity < 0 ? Long.MAX_VALUE : remoteMemory + capacity;
+        }
 
         data.localCapacity = localMemory;
-        data.getStorageProperties(getSessionStorage()).capacity = remoteMemory;
 
         logger.info("Usable memory: {} LOCAL, {} REMOTE ({} TOTAL).", localMemory, remoteMemory, localMemory + remoteMemory);
 
@@ -432,6 +969,7 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         if (solution == null) {
             logger.warn("No solution found.");
             opt.stop("OPTIMIZATION_FAIL");
+            imageCache.clear();
             return;
         } else {
             opt.stop("OPTIMIZATION_OK");
@@ -448,9 +986,47 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
         logger.info("Relocating sessions..");
 
+        long deadline = relocationDeadline();
+        int skipCount = 0;
+
         for (String sessionId : sessions) {
 
-            switch (solution.getNewPlacement(sessionId)) {
+            if (relocationExecutor != null) {
+                // Leave sessions with unfinished relocations from an earlier cycle alone
+                if (relocationExecutor.isPending(sessionId)) {
+                    skipCount++;
+                    continue;
+                }
+
+                try {
+                    if (!relocationExecutor.awaitCapacity(deadline)) {
+                        logger.warn("Relocation deadline passed, leaving the remaining sessions in place.");
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (getSessionStorages().size() > 1) {
+                int mask = solution.getNewPlacementMask(sessionId);
+                switch (SessionPlacement.fromMask(mask)) {
+                    case DROP:
+                        dropCount++;
+                        break;
+                    case LOCAL:
+                        localCount++;
+                        break;
+                    case BOTH:
+                        bothCount++;
+                        break;
+                    case REMOTE:
+                        remoteCount++;
+                        break;
+                }
+                executeTiers(sessionId, Math.max(mask, 0));
+            } else switch (solution.getNewPlacement(sessionId)) {
 
                 case DROP: {
                     executeDrop(sessionId);
@@ -483,16 +1059,105 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
             }
 
+            if (storeBatch.size() >= relocationBatchSize)
+                flushStores();
+            if (batchedRemoves() >= relocationBatchSize)
+                flushRemoves();
         }
 
+        flushStores();
+        flushRemoves();
+
+        if (relocationExecutor != null) {
+            int unfinished = relocationExecutor.awaitCycle(deadline);
+            if (unfinished > 0)
+                logger.warn("{} relocations did not finish before the deadline.", unfinished);
+        }
+        syncStorages();
         emptyRubbishBin();
+        imageCache.clear();
 
-        logger.info("Optimization finished: {} DROP, {} LOCAL, {} REMOTE, {} BOTH.",
-                dropCount, localCount, remoteCount, bothCount);
+        logger.info("Optimization finished: {} DROP, {} LOCAL, {} REMOTE, {} BOTH, {} SKIPPED.",
+                dropCount, localCount, remoteCount, bothCount, skipCount);
 
         rel.stop();
     }
 
+    /**
+     * Places a session in local storage and any combination of storages,
+     * writing it to the storages that should hold it and removing it from the others.
+     * Sessions that stay in a storage are only written again if their local copy may have changed.
+     *
+     * @param sessionId Id of the session to be moved.
+     * @param mask      The new placement mask of the session.
+     */
+    private void executeTiers(String sessionId, int mask) {
+        if (mask == 0) {
+            executeDrop(sessionId);
+            return;
+        }
+
+        List<SessionStorage> storages = getSessionStorages();
+        Lock lock = locks.findLock(sessionId);
+
+        if (lock != null) {
+            lock.lock();
+            try {
+                boolean storedLocally = stored(sessionId);
+                boolean keepLocal = (mask & SessionPlacement.LOCAL_BIT) != 0;
+                int oldTiers = storedTiers(sessionId);
+                int newTiers = mask >>> 1;
+
+                if (!storedLocally && oldTiers == 0) {
+                    rubbishBin.add(sessionId);
+                    return;
+                }
+
+                int writes = storedLocally ? newTiers : newTiers & ~oldTiers;
+                int removes = oldTiers & ~newTiers;
+                BasicSession session = null;
+
+                // Sessions that are not stored locally are loaded from the storages
+                if (storedLocally || keepLocal || writes != 0) {
+                    session = getHeldSession(sessionId);
+                    if (session == null || !session.isValid()) {
+                        executeDrop(sessionId);
+                        return;
+                    }
+                }
+
+                // Sessions written to several storages are serialized once, for all storages with the same encoding,
+                // unless stores are batched or the session does not fit in the memory budget of the images
+                if (Integer.bitCount(writes) > 1 && relocationBatchSize == 1) {
+                    SessionStorage first = storages.get(Integer.numberOfTrailingZeros(writes));
+                    imageCache.serialize(session, first, sizeEvaluator.evaluateRemote(session, first));
+                }
+
+                // The local copy is only released once every storage holds the session
+                LocalRelease release = keepLocal ? null : new LocalRelease(Integer.bitCount(writes));
+                for (int tier = 0; tier < storages.size(); tier++) {
+                    if ((writes & (1 << tier)) != 0)
+                        storeRemote(session, storages.get(tier), release);
+                }
+                for (int tier = 0; tier < storages.size(); tier++) {
+                    if ((removes & (1 << tier)) != 0)
+                        removeRemote(sessionId, storages.get(tier));
+                }
+
+                if (session != null) {
+                    if (!keepLocal && writes == 0)
+                        removeSession(sessionId);
+                    else if (keepLocal && !storedLocally)
+                        addSession(session);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            rubbishBin.add(sessionId);
+        }
+    }
+
     /**
      * Places a session in local storage.
      *
@@ -500,9 +1165,8 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
      */
     private void executeLocal(String sessionId) {
         BasicSession session;
-        SessionStorage storage = getSessionStorage();
         SessionPlacement placement = data.getSessionProperties(sessionId).oldPlacement;
-        Lock lock = locks.get(sessionId);
+        Lock lock = locks.findLock(sessionId);
 
         if (lock != null) {
             lock.lock();
@@ -512,7 +1176,7 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case BOTH:
                         if (!storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
                                 if (session.isValid())
                                     addSession(session);
@@ -522,14 +1186,14 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
                                 rubbishBin.add(sessionId);
                         }
 
-                        storage.remove(sessionId);
+                        removeRemote(sessionId);
                         break;
 
                     case LOCAL:
                         if (!storedLocally)
                             rubbishBin.add(sessionId);
                         else {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (!session.isValid())
                                 executeDrop(sessionId);
                         }
@@ -537,17 +1201,17 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case REMOTE:
                         if (!storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
                                 if (session.isValid()) {
                                     addSession(session);
-                                    storage.remove(sessionId);
+                                    removeRemote(sessionId);
                                 } else
                                     executeDrop(sessionId);
                             } else
                                 rubbishBin.add(sessionId);
                         } else {
-                            storage.remove(sessionId);
+                            removeRemote(sessionId);
                         }
 
 
@@ -579,9 +1243,8 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
      */
     private void executeRemote(String sessionId) {
         BasicSession session;
-        SessionStorage storage = getSessionStorage();
         SessionPlacement placement = data.getSessionProperties(sessionId).oldPlacement;
-        Lock lock = locks.get(sessionId);
+        Lock lock = locks.findLock(sessionId);
 
         if (lock != null) {
             lock.lock();
@@ -591,10 +1254,9 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case BOTH:
                         if (storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
-                                storage.store(session.getSessionData());
-                                removeSession(sessionId);
+                                storeRemote(session, true);
                             } else {
                                 executeDrop(sessionId);
                             }
@@ -603,10 +1265,9 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case LOCAL:
                         if (storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
-                                storage.store(session.getSessionData());
-                                removeSession(sessionId);
+                                storeRemote(session, true);
                             } else {
                                 executeDrop(sessionId);
                             }
@@ -617,10 +1278,9 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case REMOTE:
                         if (storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
-                                storage.store(session.getSessionData());
-                                removeSession(sessionId);
+                                storeRemote(session, true);
                             } else {
                                 executeDrop(sessionId);
                             }
@@ -653,9 +1313,8 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
      */
     private void executeBoth(String sessionId) {
         BasicSession session;
-        SessionStorage storage = getSessionStorage();
         SessionPlacement placement = data.getSessionProperties(sessionId).oldPlacement;
-        Lock lock = locks.get(sessionId);
+        Lock lock = locks.findLock(sessionId);
 
         if (lock != null) {
             lock.lock();
@@ -664,10 +1323,10 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
                 switch (placement) {
 
                     case BOTH:
-                        session = getSession(sessionId);
+                        session = getHeldSession(sessionId);
                         if (session != null) {
                             if (storedLocally) {
-                                storage.store(session.getSessionData());
+                                storeRemote(session, false);
                             } else {
                                 addSession(session);
                             }
@@ -678,9 +1337,9 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
                     case LOCAL:
                         if (storedLocally) {
-                            session = getSession(sessionId);
+                            session = getHeldSession(sessionId);
                             if (session != null) {
-                                storage.store(session.getSessionData());
+                                storeRemote(session, false);
                             } else
                                 executeDrop(sessionId);
                         } else {
@@ -689,10 +1348,10 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
                         break;
 
                     case REMOTE:
-                        session = getSession(sessionId);
+                        session = getHeldSession(sessionId);
                         if (session != null) {
                             if (storedLocally) {
-                                storage.store(session.getSessionData());
+                                storeRemote(session, false);
                             } else {
                                 addSession(session);
                             }
@@ -720,18 +1379,290 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
 
     }
 
+    /**
+     * Stores a session in remote storage, optionally removing it from local storage.
+     * Must be called while holding the lock of the session.
+     * The session is only removed from local storage if the store succeeds.
+     * <p>
+     * In asynchronous or batched mode, only a snapshot of the session is taken here,
+     * and the store is performed without holding the lock.
+     * The session is then only removed from local storage if it has not
+     * been accessed or modified since the snapshot was taken.
+     *
+     * @param session     The session to store.
+     * @param removeLocal Whether to remove the session from local storage once stored.
+     */
+    private void storeRemote(BasicSession session, boolean removeLocal) {
+        storeRemote(session, getSessionStorage(), removeLocal ? new LocalRelease(1) : null);
+    }
+
+    /**
+     * Stores a session in a given storage, optionally removing it from local storage.
+     * Must be called while holding the lock of the session.
+     *
+     * @param session The session to store.
+     * @param storage The storage to store the session in.
+     * @param release Counts the stores that must succeed before the session is removed from local storage,
+     *                or null to keep it.
+     * @see #storeRemote(BasicSession, boolean)
+     */
+    private void storeRemote(BasicSession session, SessionStorage storage, LocalRelease release) {
+        // The version must be read before the snapshot is taken or reused
+        long version = session.getVersion();
+
+        if (relocationBatchSize > 1) {
+            storeBatch.add(new PendingStore(session, storage, version, session.getSessionData(), release));
+            return;
+        }
+
+        // Reuse the bytes serialized for another storage, if the session is unchanged
+        byte[] image = imageCache.get(session, storage);
+
+        if (relocationExecutor == null) {
+            boolean stored = image != null
+                    ? storage.storeSerialized(session.getClusterId(), image)
+                    : storage.store(session.getSessionData());
+            if (storeFinished(session, storage, version, release, stored))
+                removeSession(session.getClusterId());
+            return;
+        }
+
+        SessionData snapshot = image == null ? session.getSessionData() : null;
+
+        AsyncSessionStorage asyncStorage = getNativeAsyncStorage(storage);
+        if (image != null) {
+            relocationExecutor.submit(session.getClusterId(), () -> {
+                if (storeFinished(session, storage, version, release, storage.storeSerialized(session.getClusterId(), image)))
+                    commitRemote(session, version);
+            });
+        } else if (asyncStorage != null) {
+            relocationExecutor.submitAsync(session.getClusterId(), () -> asyncStorage.storeAsync(snapshot).thenAccept(stored -> {
+                if (storeFinished(session, storage, version, release, stored))
+                    commitRemote(session, version);
+            }));
+        } else {
+            relocationExecutor.submit(session.getClusterId(), () -> {
+                if (storeFinished(session, storage, version, release, storage.store(snapshot)))
+                    commitRemote(session, version);
+            });
+        }
+    }
+
+    /**
+     * Records the outcome of a store, and checks whether the local copy of the session may now be removed.
+     *
+     * @param session       The stored session.
+     * @param storage       The storage the session was stored in.
+     * @param version       Version of the session when the snapshot was taken.
+     * @param release       Counts the stores that must succeed before the local copy is removed, or null to keep it.
+     * @param success       Whether the store succeeded.
+     * @return true if every store of the session succeeded and its local copy may be removed, else false.
+     */
+    private boolean storeFinished(BasicSession session, SessionStorage storage, long version,
+                                  LocalRelease release, boolean success) {
+        if (success && storage == getSessionStorage())
+            remoteVersions.put(session.getClusterId(), version);
+        return release != null && release.stored(success);
+    }
+
+    /**
+     * Returns a session storage if it performs asynchronous operations natively,
+     * in which case relocations do not need to occupy a relocation thread.
+     *
+     * @param storage The session storage.
+     * @return The storage, or null if it is blocking.
+     */
+    private AsyncSessionStorage getNativeAsyncStorage(SessionStorage storage) {
+        if (storage instanceof JournalingSessionStorage && ((JournalingSessionStorage) storage).isNativelyAsync())
+            return (JournalingSessionStorage) storage;
+        else
+            return null;
+    }
+
+    /**
+     * Removes a session from local storage after it has been stored remotely,
+     * unless it has changed since its snapshot was taken.
+     *
+     * @param session The stored session.
+     * @param version Version of the session when the snapshot was taken.
+     */
+    private void commitRemote(BasicSession session, long version) {
+        String sessionId = session.getClusterId();
+        Lock lock = locks.findLock(sessionId);
+        if (lock == null)
+            return;
+
+        lock.lock();
+        try {
+            if (getLocalSession(sessionId) != session) {
+                logger.debug("Session {} was replaced during relocation.", sessionId);
+            } else if (session.getVersion() != version) {
+                logger.debug("Session {} changed during relocation, keeping the local copy.", sessionId);
+            } else {
+                removeSession(sessionId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a session from remote storage, asynchronously if so configured.
+     * Must be called while holding the lock of the session.
+     *
+     * @param sessionId Id of the session.
+     */
+    private void removeRemote(String sessionId) {
+        removeRemote(sessionId, getSessionStorage());
+    }
+
+    /**
+     * Removes a session from a given storage, asynchronously if so configured.
+     * Asynchronous removals are never cancelled at the relocation deadline.
+     * Must be called while holding the lock of the session.
+     *
+     * @param sessionId Id of the session.
+     * @param storage   The storage to remove the session from.
+     */
+    private void removeRemote(String sessionId, SessionStorage storage) {
+        AsyncSessionStorage asyncStorage = getNativeAsyncStorage(storage);
+        if (storage == getSessionStorage())
+            remoteVersions.remove(sessionId);
+        remoteRemovals.incrementAndGet();
+
+        if (relocationBatchSize > 1)
+            removeBatch.computeIfAbsent(storage, key -> new ArrayList<>()).add(sessionId);
+        else if (relocationExecutor == null)
+            storage.remove(sessionId);
+        else if (asyncStorage != null)
+            relocationExecutor.submitAsync(sessionId, () -> asyncStorage.removeAsync(sessionId));
+        else
+            relocationExecutor.submit(Collections.singletonList(sessionId), () -> storage.remove(sessionId), false);
+    }
+
+    /**
+     * Removes a dropped session from every storage holding it.
+     * Must be called while holding the lock of the session.
+     * <p>
+     * The removals are always made synchronously, since a removal that is batched, cancelled
+     * at the relocation deadline or still queued would let the dropped session be loaded back.
+     *
+     * @param sessionId Id of the session.
+     */
+    private void removeRemoteAll(String sessionId) {
+        List<SessionStorage> storages = getSessionStorages();
+        remoteVersions.remove(sessionId);
+        remoteRemovals.incrementAndGet();
+
+        int tiers = storages.size() == 1 ? 1 : storedTiers(sessionId);
+        for (int tier = 0; tier < storages.size(); tier++) {
+            if ((tiers & (1 << tier)) != 0)
+                storages.get(tier).remove(sessionId);
+        }
+    }
+
+    /**
+     * Stores the batched sessions with a single call to each remote storage,
+     * then removes the local copies of those that were moved and have not changed.
+     * Runs on the relocation executor if there is one, else on the calling thread,
+     * which must not hold any session locks.
+     */
+    private void flushStores() {
+        if (storeBatch.isEmpty())
+            return;
+
+        Map<SessionStorage, List<PendingStore>> batches = new LinkedHashMap<>();
+        for (PendingStore pending : storeBatch) {
+            batches.computeIfAbsent(pending.storage, key -> new ArrayList<>()).add(pending);
+        }
+        storeBatch.clear();
+
+        for (Map.Entry<SessionStorage, List<PendingStore>> entry : batches.entrySet()) {
+            SessionStorage storage = entry.getKey();
+            List<PendingStore> batch = entry.getValue();
+            List<String> ids = new ArrayList<>(batch.size());
+            List<SessionData> snapshots = new ArrayList<>(batch.size());
+            for (PendingStore pending : batch) {
+                ids.add(pending.session.getClusterId());
+                snapshots.add(pending.snapshot);
+            }
+
+            Runnable task = () -> {
+                Set<String> stored = storage.storeAll(snapshots);
+                for (PendingStore pending : batch) {
+                    if (storeFinished(pending.session, storage, pending.version, pending.release,
+                            stored.contains(pending.session.getClusterId())))
+                        commitRemote(pending.session, pending.version);
+                }
+            };
+
+            if (relocationExecutor != null)
+                relocationExecutor.submit(ids, task);
+            else
+                task.run();
+        }
+    }
+
+    /**
+     * Removes the batched sessions from remote storage with a single call to each storage.
+     * Runs on the relocation executor if there is one, else on the calling thread.
+     */
+    private void flushRemoves() {
+        if (removeBatch.isEmpty())
+            return;
+
+        Map<SessionStorage, List<String>> batches = new LinkedHashMap<>(removeBatch);
+        removeBatch.clear();
+
+        for (Map.Entry<SessionStorage, List<String>> entry : batches.entrySet()) {
+            SessionStorage storage = entry.getKey();
+            List<String> batch = entry.getValue();
+
+            if (relocationExecutor != null)
+                relocationExecutor.submit(batch, () -> storage.removeAll(batch), false);
+            else
+                storage.removeAll(batch);
+        }
+    }
+
+    /**
+     * Counts the sessions waiting to be removed as part of a batch, over all storages.
+     *
+     * @return The number of batched removals.
+     */
+    private int batchedRemoves() {
+        int count = 0;
+        for (List<String> batch : removeBatch.values()) {
+            count += batch.size();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the time by which the relocations of the current cycle should be finished.
+     * Defaults to one persist period from now.
+     *
+     * @return The deadline in milliseconds.
+     */
+    private long relocationDeadline() {
+        int seconds = relocationDeadline > 0 ? relocationDeadline : getPersistPeriod();
+        if (seconds <= 0)
+            return Long.MAX_VALUE;
+
+        return System.currentTimeMillis() + seconds * 1000L;
+    }
+
     private void executeDrop(String sessionId) {
         BasicSession session;
-        SessionStorage storage = getSessionStorage();
-        Lock lock = locks.get(sessionId);
+        Lock lock = locks.findLock(sessionId);
 
         if (lock != null) {
             lock.lock();
             try {
-                session = getSession(sessionId);
+                session = getHeldSession(sessionId);
                 if (session != null) {
                     session.invalidate();
-                    storage.remove(sessionId);
+                    removeRemoteAll(sessionId);
                     removeSession(sessionId);
                 }
             } finally {
@@ -749,8 +1680,11 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
     private int emptyRubbishBin() {
         for (String id : rubbishBin) {
             data.removeSession(id);
-            locks.remove(id);
+            locks.removeLock(id);
             accessBuffer.remove(id);
+            sizeEvaluator.evict(id);
+            imageCache.evict(id);
+            remoteVersions.remove(id);
         }
 
         int size = rubbishBin.size();
@@ -760,8 +1694,185 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         return size;
     }
 
+    /**
+     * Relieves memory pressure between persist cycles, unless a persist cycle is already running.
+     *
+     * @param bytesToFree Number of bytes above the target heap usage.
+     */
+    @Override
+    public void memoryPressure(long bytesToFree) {
+        if (getSessionStorage() == null)
+            return;
+
+        if (!cycleLock.tryLock()) {
+            logger.info("Persist in progress, leaving the memory pressure to it.");
+            return;
+        }
+
+        try {
+            offload(bytesToFree);
+        } finally {
+            cycleLock.unlock();
+        }
+    }
+
+    /**
+     * Moves the locally stored sessions with the lowest value per byte to remote storage,
+     * until their local sizes add up to the given number of bytes or remote storage is full.
+     * Uses the sizes and values of the last cycle, and leaves all other placements to the next one.
+     *
+     * @param bytesToFree Number of bytes to free.
+     */
+    private void offload(long bytesToFree) {
+        StopWatch watch = new Slf4JStopWatch("OFFLOAD", perf4jLogger);
+        SessionStorage storage = getSessionStorage();
+        Map<String, Double> density = new HashMap<>();
+        long remoteFree;
+
+        synchronized (data) {
+            remoteFree = data.getStorageProperties(storage).capacity;
+            for (String sessionId : data.getSessions()) {
+                SessionProperties properties = data.getSessionProperties(sessionId);
+                boolean local = properties.oldPlacement == SessionPlacement.LOCAL || properties.oldPlacement == SessionPlacement.BOTH;
+                boolean remote = inFirstStorage(properties);
+                if (remote && properties.remoteSize != null)
+                    remoteFree -= properties.remoteSize;
+                if (local && properties.localSize != null && properties.localSize > 0)
+                    density.put(sessionId, properties.value / properties.localSize);
+            }
+        }
+
+        List<String> candidates = new ArrayList<>(density.keySet());
+        candidates.sort(Comparator.comparingDouble(density::get));
+
+        long deadline = relocationDeadline();
+        long offloading = 0;
+        List<String> offloaded = new ArrayList<>();
+
+        for (String sessionId : candidates) {
+            if (offloading >= bytesToFree)
+                break;
+
+            SessionProperties properties = data.getSessionProperties(sessionId);
+            if (properties == null)
+                continue;
+
+            // Sessions placed in both storages already occupy remote capacity
+            boolean remote = properties.oldPlacement == SessionPlacement.BOTH && inFirstStorage(properties);
+            long remoteSize = properties.remoteSize != null ? properties.remoteSize : properties.localSize;
+            if (!remote && remoteSize > remoteFree)
+                continue;
+
+            if (relocationExecutor != null) {
+                if (relocationExecutor.isPending(sessionId))
+                    continue;
+
+                try {
+                    if (!relocationExecutor.awaitCapacity(deadline))
+                        break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            if (offloadSession(sessionId, remote)) {
+                offloading += properties.localSize;
+                if (!remote)
+                    remoteFree -= remoteSize;
+                offloaded.add(sessionId);
+            }
+
+            if (storeBatch.size() >= relocationBatchSize)
+                flushStores();
+        }
+
+        flushStores();
+
+        if (relocationExecutor != null) {
+            int unfinished = relocationExecutor.awaitCycle(deadline);
+            if (unfinished > 0)
+                logger.warn("{} offloads did not finish before the deadline.", unfinished);
+        }
+        syncStorages();
+
+        // Only sessions whose local copies were released free memory, the others failed or changed meanwhile
+        long freed = 0;
+        int moved = 0;
+        for (String sessionId : offloaded) {
+            SessionProperties properties = data.getSessionProperties(sessionId);
+            if (!stored(sessionId) && properties != null && properties.localSize != null) {
+                freed += properties.localSize;
+                moved++;
+            }
+        }
+
+        logger.info("Offloaded {} of {} sessions, {} of {} bytes.", moved, offloaded.size(), freed, bytesToFree);
+        watch.stop();
+    }
+
+    /**
+     * Makes the writes of a cycle durable in every storage, after all relocations have finished.
+     */
+    private void syncStorages() {
+        for (SessionStorage storage : getSessionStorages()) {
+            storage.sync();
+        }
+    }
+
+    /**
+     * Checks whether a session is held by the first storage, which sessions are offloaded to.
+     * Sessions without a record of their storages are held by the first storage if they are held remotely.
+     */
+    private static boolean inFirstStorage(SessionProperties properties) {
+        boolean remote = properties.oldPlacement == SessionPlacement.REMOTE || properties.oldPlacement == SessionPlacement.BOTH;
+        return remote && (properties.storedTiers == 0 || (properties.storedTiers & 1) != 0);
+    }
+
+    /**
+     * Moves a single locally stored session to remote storage.
+     * A session already held by the first storage is only removed locally,
+     * unless it has been accessed or modified since it was stored there.
+     *
+     * @param sessionId Id of the session.
+     * @param remote    Whether the session is placed in both local memory and the first storage.
+     * @return true if the session was stored locally and is being moved, else false.
+     */
+    private boolean offloadSession(String sessionId, boolean remote) {
+        Lock lock = locks.findLock(sessionId);
+        if (lock == null)
+            return false;
+
+        lock.lock();
+        try {
+            if (!stored(sessionId))
+                return false;
+
+            BasicSession session = getHeldSession(sessionId);
+            if (session == null)
+                return false;
+
+            // Attributes may be changed in place, so only a session that has not even been accessed is unchanged
+            Long version = remoteVersions.get(sessionId);
+            if (remote && version != null && version == session.getVersion())
+                removeSession(sessionId);
+            else
+                storeRemote(session, true);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void crash() {
+        super.crash();
+        journal.requestFullScan();
+    }
+
     @Override
     public void sessionAccessed(BasicSession session) {
+        journal.mark(session.getClusterId());
         long now = System.currentTimeMillis();
         accessBuffer.putIfAbsent(session.getClusterId(), new AtomicInteger(0));
         accessBuffer.get(session.getClusterId()).incrementAndGet();
@@ -771,10 +1882,20 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         }
     }
 
+    @Override
+    public void sessionModified(BasicSession session) {
+        journal.mark(session.getClusterId());
+    }
+
     private double evaluateCosts(String session, SessionStorage storage, long duration) {
         StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionProperties properties = data.getSessionProperties(session);
 
-        double size = ((double) data.getSessionProperties(session).remoteSize) / 1048576.0D;
+        // Sizes in the other storages are only known with several storages
+        int tier = data.getStorageList().indexOf(storage);
+        long remoteSize = properties.storageSizes != null && tier > 0 && tier < properties.storageSizes.length
+                ? properties.storageSizes[tier] : properties.remoteSize;
+        double size = ((double) remoteSize) / 1048576.0D;
 
         double readCost = storageProperties.readCost;
         double writeCost = storageProperties.writeCost;
@@ -783,4 +1904,63 @@ public class OptimizingSessionManager extends PersistentSessionManager implement
         return readCost + writeCost + duration * size * storageCost;
     }
 
+    /**
+     * Evaluates the costs of a session in every storage holding it.
+     * Sessions without a record of their storages are held by the first storage.
+     */
+    private double evaluateTierCosts(String session, SessionProperties properties, long duration) {
+        List<SessionStorage> storages = getSessionStorages();
+        int tiers = properties.storedTiers != 0 ? properties.storedTiers : 1;
+        double costs = 0;
+        for (int tier = 0; tier < storages.size(); tier++) {
+            if ((tiers & (1 << tier)) != 0)
+                costs += evaluateCosts(session, storages.get(tier), duration);
+        }
+        return costs;
+    }
+
+    /**
+     * A session snapshot waiting to be stored as part of a batch.
+     */
+    private static class PendingStore {
+        final BasicSession session;
+        final SessionStorage storage;
+        final long version;
+        final SessionData snapshot;
+        final LocalRelease release;
+
+        PendingStore(BasicSession session, SessionStorage storage, long version,
+                     SessionData snapshot, LocalRelease release) {
+            this.session = session;
+            this.storage = storage;
+            this.version = version;
+            this.snapshot = snapshot;
+            this.release = release;
+        }
+    }
+
+    /**
+     * Counts the stores of a session that must all succeed before its local copy is removed.
+     */
+    private static class LocalRelease {
+        private final AtomicInteger pending;
+        private volatile boolean failed = false;
+
+        LocalRelease(int stores) {
+            this.pending = new AtomicInteger(stores);
+        }
+
+        /**
+         * Records the outcome of one of the stores.
+         *
+         * @param success Whether the store succeeded.
+         * @return true if this was the last store and every store succeeded, else false.
+         */
+        boolean stored(boolean success) {
+            if (!success)
+                failed = true;
+            return pending.decrementAndGet() == 0 && !failed;
+        }
+    }
+
 }
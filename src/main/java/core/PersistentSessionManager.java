@@ -9,10 +9,14 @@ import core.storage.serializer.JavaSerializer;
 import core.storage.serializer.SessionSerializer;
 import core.util.ClassLoadingFactory;
 import core.util.PingPongLogger;
+import core.util.SingleFlight;
 import org.eclipse.jetty.util.thread.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +45,8 @@ public class PersistentSessionManager extends BasicSessionManager {
     private long persistPeriod = 0;
     private Scheduler.Task persistTask;
     private SessionStorage storage = null;
+    private List<SessionStorage> storages = Collections.emptyList();
+    private final SingleFlight<String, BasicSession> loads = new SingleFlight<>();
 
 
     /**
@@ -51,19 +57,55 @@ public class PersistentSessionManager extends BasicSessionManager {
         BasicSession session = super.getSession(id);
 
         if (session == null && storage != null) {
-            logger.debug("Session with id {} not found in local memory. Checking remote session storage.", id);
-            SessionData in = storage.load(id);
-            if (in != null) {
-                session = loadSession(in);
-                logger.debug("Found session {} in remote storage.", id);
-            } else {
-                logger.debug("Could not find the session {} in remote storage.", id);
-            }
+            // Concurrent requests for the same session share a single load
+            session = loads.execute(id, () -> loadRemoteSession(id));
         }
 
         return session;
     }
 
+    /**
+     * Loads a session from the session storage into local memory,
+     * unless it was loaded by another thread in the meantime.
+     *
+     * @param id The id of the session.
+     * @return The session, or null if it could not be found.
+     */
+    protected BasicSession loadRemoteSession(String id) {
+        BasicSession session = getLocalSession(id);
+        if (session != null)
+            return session;
+
+        SessionData in = readRemoteSession(id);
+        if (in != null)
+            session = loadSession(in);
+
+        return session;
+    }
+
+    /**
+     * Reads a session from the first session storage holding it, without restoring it.
+     *
+     * @param id The id of the session.
+     * @return The stored session, or null if it could not be found.
+     */
+    protected SessionData readRemoteSession(String id) {
+        logger.debug("Session with id {} not found in local memory. Checking remote session storage.", id);
+        SessionData in = null;
+        for (SessionStorage tier : storages) {
+            in = tier.load(id);
+            if (in != null)
+                break;
+        }
+        if (in != null) {
+            logger.debug("Found session {} in remote storage.", id);
+        } else {
+            logger.debug("Could not find the session {} in remote storage.", id);
+        }
+
+        return in;
+    }
+
     /**
      * Periodically saves sessions.
      */
@@ -76,6 +118,7 @@ public class PersistentSessionManager extends BasicSessionManager {
                 if (session.isValid())
                     storage.store(session.getSessionData());
             }
+            storage.sync();
         } else {
             logger.warn("No session storage defined.");
         }
@@ -111,15 +154,26 @@ public class PersistentSessionManager extends BasicSessionManager {
             setPersistPeriod(persistPeriod);
         }
 
+        // A comma separated list of storages, ordered from the cheapest to read to the most expensive
         String sessionStorageValue = this.getContext().getInitParameter(SESSION_STORAGE_PARAM);
-        storage = ClassLoadingFactory.tryLoadClass(sessionStorageValue, DEFAULT_SESSION_STORAGE, SessionStorage.class);
+        List<SessionStorage> storages = new ArrayList<>();
+        if (sessionStorageValue != null) {
+            for (String storageValue : sessionStorageValue.split(",")) {
+                if (!storageValue.trim().isEmpty())
+                    storages.add(ClassLoadingFactory.tryLoadClass(storageValue.trim(), DEFAULT_SESSION_STORAGE, SessionStorage.class));
+            }
+        }
+        if (storages.isEmpty())
+            storages.add(ClassLoadingFactory.tryLoadClass(null, DEFAULT_SESSION_STORAGE, SessionStorage.class));
         //storage = new PingPongLogger(storage);
 
         String serializerValue = this.getContext().getInitParameter(SERIALIZER_PARAM);
-        storage.setSerializer(ClassLoadingFactory.tryLoadClass(serializerValue, DEFAULT_SERIALIZER, SessionSerializer.class));
-
         String compressorValue = this.getContext().getInitParameter(STREAM_COMPRESSOR_PARAM);
-        storage.setCompressor(ClassLoadingFactory.tryLoadClass(compressorValue, DEFAULT_STREAM_COMPRESSOR, StreamCompressor.class));
+        for (SessionStorage storage : storages) {
+            storage.setSerializer(ClassLoadingFactory.tryLoadClass(serializerValue, DEFAULT_SERIALIZER, SessionSerializer.class));
+            storage.setCompressor(ClassLoadingFactory.tryLoadClass(compressorValue, DEFAULT_STREAM_COMPRESSOR, StreamCompressor.class));
+        }
+        setSessionStorages(storages);
 
         logger.info("Started {}.", PersistentSessionManager.class.getName());
     }
@@ -212,10 +266,33 @@ public class PersistentSessionManager extends BasicSessionManager {
         return session;
     }
 
+    /**
+     * Gets the first, and cheapest to read, session storage.
+     *
+     * @return The session storage, or null if none is defined.
+     */
     protected SessionStorage getSessionStorage() {
         return storage;
     }
 
+    protected void setSessionStorage(SessionStorage storage) {
+        setSessionStorages(storage != null ? Collections.singletonList(storage) : Collections.<SessionStorage>emptyList());
+    }
+
+    /**
+     * Gets all session storages, ordered from the cheapest to read to the most expensive.
+     *
+     * @return An unmodifiable list of the session storages.
+     */
+    protected List<SessionStorage> getSessionStorages() {
+        return storages;
+    }
+
+    protected void setSessionStorages(List<SessionStorage> storages) {
+        this.storages = Collections.unmodifiableList(new ArrayList<>(storages));
+        this.storage = this.storages.isEmpty() ? null : this.storages.get(0);
+    }
+
     /**
      * Class that runs in a separate thread, calling persist periodically.
      *
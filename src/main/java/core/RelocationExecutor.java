@@ -0,0 +1,263 @@
+package core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Runs the remote storage I/O of session relocations on a pool of worker threads.
+ * The number of relocations waiting or running is bounded, and every relocation
+ * cycle has a deadline after which relocations that have not started are cancelled,
+ * so that a slow remote storage cannot stall the next persist cycle.
+ * <p>
+ * Relocations are submitted by a single thread, the persist thread of the
+ * OptimizingSessionManager. Stores are safe to cancel before they have started,
+ * since the local copy is kept, but removals are submitted as uncancellable,
+ * because a remote copy left behind could be loaded again.
+ */
+public class RelocationExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RelocationExecutor.class);
+
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final ConcurrentMap<String, Integer> pendingSessions = new ConcurrentHashMap<>();
+    private final List<Relocation> cycle = new ArrayList<>();
+    private int pending = 0;
+
+    /**
+     * @param threads    Number of worker threads.
+     * @param maxPending Maximum number of relocations waiting or running at any time.
+     */
+    public RelocationExecutor(int threads, int maxPending) {
+        this.maxPending = Math.max(maxPending, threads);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SessionRelocator-" + count++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submits a relocation. Never blocks, call awaitCapacity() beforehand
+     * to keep the number of pending relocations bounded.
+     *
+     * @param sessionId Id of the relocated session.
+     * @param task      The remote I/O to perform.
+     */
+    public void submit(String sessionId, Runnable task) {
+        submit(Collections.singletonList(sessionId), task);
+    }
+
+    /**
+     * Submits a relocation of several sessions, such as a batch store.
+     * Counts as a single relocation towards the bound.
+     *
+     * @param sessionIds Ids of the relocated sessions.
+     * @param task       The remote I/O to perform.
+     */
+    public void submit(Collection<String> sessionIds, Runnable task) {
+        submit(sessionIds, task, true);
+    }
+
+    /**
+     * Submits a relocation of several sessions, that may be exempt from cancellation at the deadline.
+     * Uncancellable relocations that have not started by the deadline are left to run in the background.
+     *
+     * @param sessionIds  Ids of the relocated sessions.
+     * @param task        The remote I/O to perform.
+     * @param cancellable Whether the relocation may be cancelled if it has not started by the deadline.
+     */
+    public void submit(Collection<String> sessionIds, Runnable task, boolean cancellable) {
+        for (String sessionId : sessionIds) {
+            pendingSessions.merge(sessionId, 1, Integer::sum);
+        }
+        synchronized (this) {
+            pending++;
+        }
+
+        Relocation relocation = new Relocation(sessionIds, task, cancellable);
+        cycle.add(relocation);
+        executor.execute(relocation);
+    }
+
+    /**
+     * Starts a relocation performed by a non-blocking storage operation,
+     * which occupies no worker thread while the I/O is in progress.
+     * Such relocations are started immediately and can not be cancelled.
+     *
+     * @param sessionId Id of the relocated session.
+     * @param operation Starts the remote I/O, returning a future completed when it is done.
+     */
+    public void submitAsync(String sessionId, Supplier<CompletableFuture<?>> operation) {
+        pendingSessions.merge(sessionId, 1, Integer::sum);
+        synchronized (this) {
+            pending++;
+        }
+
+        Relocation relocation = new Relocation(Collections.singletonList(sessionId), null, false);
+        cycle.add(relocation);
+        relocation.start(operation);
+    }
+
+    /**
+     * Checks whether a session has relocations that have not finished yet,
+     * possibly left over from a previous cycle.
+     *
+     * @param sessionId Id of the session.
+     * @return true if the session has pending relocations, else false.
+     */
+    public boolean isPending(String sessionId) {
+        return pendingSessions.containsKey(sessionId);
+    }
+
+    /**
+     * Waits until another relocation can be submitted.
+     *
+     * @param deadline Time in milliseconds after which to give up waiting.
+     * @return true if there is room for another relocation, false if the deadline passed.
+     */
+    public synchronized boolean awaitCapacity(long deadline) throws InterruptedException {
+        while (pending >= maxPending) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            wait(remaining);
+        }
+
+        return System.currentTimeMillis() < deadline;
+    }
+
+    /**
+     * Waits for the relocations submitted during the current cycle to finish.
+     * Cancellable relocations that have not started when the deadline passes are cancelled,
+     * other relocations are left to finish in the background.
+     *
+     * @param deadline Time in milliseconds after which to stop waiting.
+     * @return The number of relocations that did not finish before the deadline.
+     */
+    public int awaitCycle(long deadline) {
+        int unfinished = 0;
+
+        for (Relocation relocation : cycle) {
+            try {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    relocation.get(remaining, TimeUnit.MILLISECONDS);
+                } else if (!relocation.isDone()) {
+                    relocation.cancelIfWaiting();
+                    unfinished++;
+                }
+            } catch (TimeoutException e) {
+                relocation.cancelIfWaiting();
+                unfinished++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                deadline = 0;
+                relocation.cancelIfWaiting();
+                unfinished++;
+            } catch (ExecutionException e) {
+                logger.warn("Relocation failed.", e.getCause());
+            }
+        }
+
+        cycle.clear();
+
+        return unfinished;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void finished() {
+        pending--;
+        notifyAll();
+    }
+
+    /**
+     * A relocation of one or more sessions, that releases its
+     * reservations both on completion and on cancellation.
+     * Only cancellable relocations that have not started can be cancelled.
+     */
+    private class Relocation implements Runnable {
+
+        private final Collection<String> sessionIds;
+        private final Runnable task;
+        private final boolean cancellable;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicBoolean started = new AtomicBoolean(false);
+
+        Relocation(Collection<String> sessionIds, Runnable task, boolean cancellable) {
+            this.sessionIds = sessionIds;
+            this.task = task;
+            this.cancellable = cancellable;
+            result.whenComplete((value, throwable) -> done());
+        }
+
+        @Override
+        public void run() {
+            if (started.compareAndSet(false, true)) {
+                try {
+                    task.run();
+                    result.complete(null);
+                } catch (Throwable throwable) {
+                    result.completeExceptionally(throwable);
+                }
+            }
+        }
+
+        /**
+         * Starts an asynchronous operation, and completes this relocation with it.
+         */
+        void start(Supplier<CompletableFuture<?>> operation) {
+            started.set(true);
+            try {
+                operation.get().whenComplete((value, throwable) -> {
+                    if (throwable != null)
+                        result.completeExceptionally(throwable);
+                    else
+                        result.complete(null);
+                });
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Cancels the relocation unless it has already started or is uncancellable.
+         */
+        void cancelIfWaiting() {
+            if (cancellable && started.compareAndSet(false, true))
+                result.cancel(false);
+        }
+
+        boolean isDone() {
+            return result.isDone();
+        }
+
+        void get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            result.get(timeout, unit);
+        }
+
+        private void done() {
+            for (String sessionId : sessionIds) {
+                pendingSessions.computeIfPresent(sessionId, (id, count) -> count > 1 ? count - 1 : null);
+            }
+            finished();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package core;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Journal of sessions that have been created, accessed, modified,
+ * stored or removed since it was last drained.
+ * Used by the OptimizingSessionManager to only revisit
+ * changed sessions on each persist cycle.
+ */
+public class SessionJournal {
+
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean fullScanRequested = new AtomicBoolean(true);
+
+    /**
+     * Marks a session as changed.
+     *
+     * @param sessionId The id of the session.
+     */
+    public void mark(String sessionId) {
+        if (sessionId != null)
+            dirty.add(sessionId);
+    }
+
+    /**
+     * Removes and returns all sessions marked since the last call.
+     * Sessions marked while draining end up in either this or the next result.
+     *
+     * @return A set of session ids.
+     */
+    public Set<String> drain() {
+        Set<String> drained = new HashSet<>();
+        Iterator<String> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+
+        return drained;
+    }
+
+    /**
+     * Requests that the next cycle rescans all sessions,
+     * e.g. after a crash when the journal can no longer be trusted.
+     */
+    public void requestFullScan() {
+        fullScanRequested.set(true);
+    }
+
+    /**
+     * Checks whether a full scan has been requested and clears the request.
+     *
+     * @return true if a full scan was requested, else false.
+     */
+    public boolean takeFullScanRequest() {
+        return fullScanRequested.getAndSet(false);
+    }
+
+    public int size() {
+        return dirty.size();
+    }
+
+}
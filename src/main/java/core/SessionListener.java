@@ -1,10 +1,12 @@
 package core;
 
 /**
- * Can receive events on session access.
+ * Can receive events on session access and modification.
  */
 public interface SessionListener {
 
     public void sessionAccessed(BasicSession session);
 
+    public void sessionModified(BasicSession session);
+
 }
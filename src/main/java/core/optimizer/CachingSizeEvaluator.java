@@ -0,0 +1,110 @@
+package core.optimizer;
+
+import core.BasicSession;
+import core.storage.SessionStorage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SizeEvaluator that remembers the sizes of each session, and only evaluates
+ * them again once the session has been accessed or modified,
+ * since attributes may also be changed in place without being set again.
+ * Sizes are evaluated by another SizeEvaluator.
+ * <p>
+ * Storages with the same serializer and compressor classes store the same bytes,
+ * so their remote sizes are shared, and a size is remembered for each such encoding.
+ */
+public class CachingSizeEvaluator implements SizeEvaluator {
+
+    private final SizeEvaluator evaluator;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param evaluator SizeEvaluator used for the sizes.
+     */
+    public CachingSizeEvaluator(SizeEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    @Override
+    public long evaluateLocal(BasicSession session) {
+        Entry entry = getEntry(session);
+
+        synchronized (entry) {
+            if (entry.localSize < 0)
+                entry.localSize = evaluator.evaluateLocal(session);
+            return entry.localSize;
+        }
+    }
+
+    @Override
+    public long evaluateRemote(BasicSession session, SessionStorage storage) {
+        Entry entry = getEntry(session);
+
+        synchronized (entry) {
+            for (Map.Entry<SessionStorage, Long> known : entry.remoteSizes.entrySet()) {
+                if (sameEncoding(known.getKey(), storage))
+                    return known.getValue();
+            }
+
+            long size = evaluator.evaluateRemote(session, storage);
+            entry.remoteSizes.put(storage, size);
+            return size;
+        }
+    }
+
+    @Override
+    public void evict(String sessionId) {
+        entries.remove(sessionId);
+        evaluator.evict(sessionId);
+    }
+
+    /**
+     * Returns the cache entry of a session, emptied if the session has been accessed or modified since.
+     */
+    private Entry getEntry(BasicSession session) {
+        long version = session.getVersion();
+        Entry entry = entries.computeIfAbsent(session.getClusterId(), id -> new Entry(version));
+
+        synchronized (entry) {
+            if (entry.version != version) {
+                entry.version = version;
+                entry.localSize = -1;
+                entry.remoteSizes.clear();
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Checks whether two storages store the same bytes for a session.
+     */
+    static boolean sameEncoding(SessionStorage first, SessionStorage second) {
+        if (first == second)
+            return true;
+        if (first == null || second == null)
+            return false;
+
+        return classOf(first.getSerializer()) == classOf(second.getSerializer())
+                && classOf(first.getCompressor()) == classOf(second.getCompressor());
+    }
+
+    private static Class<?> classOf(Object object) {
+        return object != null ? object.getClass() : null;
+    }
+
+    private static class Entry {
+        long version;
+        long localSize = -1;
+        final Map<SessionStorage, Long> remoteSizes = new HashMap<>(2);
+
+        Entry(long version) {
+            this.version = version;
+        }
+    }
+
+}
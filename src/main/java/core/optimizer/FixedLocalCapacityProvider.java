@@ -0,0 +1,25 @@
+package core.optimizer;
+
+/**
+ * LocalCapacityProvider that gives the sessions a fixed fraction of the current heap size.
+ */
+public class FixedLocalCapacityProvider implements LocalCapacityProvider {
+
+    public static final double DEFAULT_RATIO = 0.25;
+
+    private volatile double ratio = DEFAULT_RATIO;
+
+    public double getRatio() {
+        return ratio;
+    }
+
+    public void setRatio(double ratio) {
+        this.ratio = Math.max(0, Math.min(1, ratio));
+    }
+
+    @Override
+    public long getLocalCapacity(long localUsage) {
+        return (long) (ratio * Runtime.getRuntime().totalMemory());
+    }
+
+}
@@ -0,0 +1,160 @@
+package core.optimizer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * LocalCapacityProvider that adapts the local capacity to the state of the heap,
+ * as reported by the memory pool and garbage collector MXBeans.
+ * <p>
+ * The capacity is bounded by the ratio of the maximum heap size, and by the room left
+ * before the old generation, measured after the last collection, reaches the target occupancy.
+ * In addition, the capacity is scaled down on every cycle during which the fraction of time spent
+ * in garbage collection exceeds the maximum GC time ratio, and scaled back up once it has dropped
+ * below half of it, so that sessions are offloaded to remote storage before collections
+ * start to dominate response times.
+ * <p>
+ * Local usage is compared with heap occupancy, so this works best with a SizeEvaluator
+ * that measures heap bytes, such as the HeapSizeEvaluator.
+ */
+public class GcAwareLocalCapacityProvider extends FixedLocalCapacityProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(GcAwareLocalCapacityProvider.class);
+
+    public static final double DEFAULT_TARGET_OCCUPANCY = 0.7;
+    public static final double DEFAULT_MAX_GC_RATIO = 0.05;
+
+    private static final double SHRINK_FACTOR = 0.8;
+    private static final double GROW_FACTOR = 1.1;
+    private static final double MIN_SCALE = 0.1;
+
+    private final MemoryPoolMXBean oldGeneration;
+    private final List<GarbageCollectorMXBean> collectors;
+    private volatile double targetOccupancy = DEFAULT_TARGET_OCCUPANCY;
+    private volatile double maxGcRatio = DEFAULT_MAX_GC_RATIO;
+    private double scale = 1;
+    private long lastGcTime = -1;
+    private long lastTimestamp = 0;
+
+    public GcAwareLocalCapacityProvider() {
+        oldGeneration = findOldGeneration();
+        collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+        if (oldGeneration != null)
+            logger.info("Measuring heap occupancy from memory pool {}.", oldGeneration.getName());
+        else
+            logger.warn("No old generation memory pool found, measuring heap occupancy from the runtime.");
+    }
+
+    public double getTargetOccupancy() {
+        return targetOccupancy;
+    }
+
+    /**
+     * @param targetOccupancy Fraction of the old generation that may be occupied after a collection.
+     */
+    public void setTargetOccupancy(double targetOccupancy) {
+        this.targetOccupancy = Math.max(0, Math.min(1, targetOccupancy));
+    }
+
+    public double getMaxGcRatio() {
+        return maxGcRatio;
+    }
+
+    /**
+     * @param maxGcRatio Fraction of time spent in garbage collection above which the capacity is scaled down.
+     */
+    public void setMaxGcRatio(double maxGcRatio) {
+        this.maxGcRatio = Math.max(0, Math.min(1, maxGcRatio));
+    }
+
+    @Override
+    public synchronized long getLocalCapacity(long localUsage) {
+        Runtime runtime = Runtime.getRuntime();
+        long maxHeap = runtime.maxMemory();
+        long poolMax = maxHeap;
+        long usedAfterGc = runtime.totalMemory() - runtime.freeMemory();
+
+        if (oldGeneration != null) {
+            MemoryUsage usage = oldGeneration.getCollectionUsage();
+            if (usage != null) {
+                usedAfterGc = usage.getUsed();
+                if (usage.getMax() > 0)
+                    poolMax = usage.getMax();
+            }
+        }
+
+        long gcTime = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcTime += Math.max(0, collector.getCollectionTime());
+        }
+
+        long now = System.nanoTime();
+        double gcRatio = 0;
+        if (lastGcTime >= 0 && now > lastTimestamp)
+            gcRatio = (gcTime - lastGcTime) * 1E6 / (now - lastTimestamp);
+        lastGcTime = gcTime;
+        lastTimestamp = now;
+
+        return adjust(maxHeap, poolMax, usedAfterGc, gcRatio, localUsage);
+    }
+
+    /**
+     * Computes the local capacity from heap telemetry, and updates the GC pressure scale.
+     *
+     * @param maxHeap     Maximum heap size.
+     * @param poolMax     Maximum size of the old generation.
+     * @param usedAfterGc Old generation occupancy after the last collection.
+     * @param gcRatio     Fraction of time spent in garbage collection since the last call.
+     * @param localUsage  Total local size of the sessions currently held in local memory.
+     * @return The local capacity in bytes.
+     */
+    synchronized long adjust(long maxHeap, long poolMax, long usedAfterGc, double gcRatio, long localUsage) {
+        if (gcRatio > maxGcRatio) {
+            scale = Math.max(MIN_SCALE, scale * SHRINK_FACTOR);
+        } else if (gcRatio < maxGcRatio / 2) {
+            scale = Math.min(1, scale * GROW_FACTOR);
+        }
+
+        long budget = (long) (getRatio() * maxHeap);
+        long headroom = (long) (targetOccupancy * poolMax) - usedAfterGc;
+        long capacity = (long) (scale * Math.min(budget, Math.max(0, localUsage + headroom)));
+
+        logger.debug("Local capacity {}: {} BUDGET, {} HEADROOM, {} GC_RATIO, {} SCALE.", capacity, budget, headroom, gcRatio, scale);
+
+        return capacity;
+    }
+
+    synchronized double getScale() {
+        return scale;
+    }
+
+    /**
+     * Finds the heap memory pool holding long-lived objects, or the only collected heap pool
+     * for collectors that do not divide the heap into generations.
+     */
+    private static MemoryPoolMXBean findOldGeneration() {
+        MemoryPoolMXBean candidate = null;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported())
+                continue;
+
+            String name = pool.getName();
+            if (name.contains("Old") || name.contains("Tenured"))
+                return pool;
+
+            candidate = pool;
+        }
+
+        return candidate;
+    }
+
+}
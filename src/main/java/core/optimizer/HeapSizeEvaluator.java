@@ -0,0 +1,48 @@
+package core.optimizer;
+
+import core.BasicSession;
+import core.storage.SessionStorage;
+import core.util.HeapSizer;
+
+/**
+ * SizeEvaluator that estimates the local size of a session as the heap retained by its attributes,
+ * by walking the attribute graph with a HeapSizer, so that the local size is in the same unit
+ * as the local capacity. Serialized sizes can be off by several times for string-heavy
+ * or deeply nested attributes.
+ * The remote size is still the serialized size, measured by another SizeEvaluator,
+ * by default a StreamingSizeEvaluator.
+ */
+public class HeapSizeEvaluator implements SizeEvaluator {
+
+    private final HeapSizer sizer;
+    private final SizeEvaluator remoteEvaluator;
+
+    public HeapSizeEvaluator() {
+        this(new HeapSizer(), new StreamingSizeEvaluator());
+    }
+
+    /**
+     * @param sizer           HeapSizer used for the local size.
+     * @param remoteEvaluator SizeEvaluator used for the remote size.
+     */
+    public HeapSizeEvaluator(HeapSizer sizer, SizeEvaluator remoteEvaluator) {
+        this.sizer = sizer;
+        this.remoteEvaluator = remoteEvaluator;
+    }
+
+    @Override
+    public long evaluateLocal(BasicSession session) {
+        return sizer.sizeOf(session.getSessionData());
+    }
+
+    @Override
+    public long evaluateRemote(BasicSession session, SessionStorage storage) {
+        return remoteEvaluator.evaluateRemote(session, storage);
+    }
+
+    @Override
+    public void evict(String sessionId) {
+        remoteEvaluator.evict(sessionId);
+    }
+
+}
@@ -0,0 +1,17 @@
+package core.optimizer;
+
+/**
+ * Decides how many bytes of local memory the sessions may occupy,
+ * consulted by the OptimizingSessionManager on every cycle.
+ */
+public interface LocalCapacityProvider {
+
+    /**
+     * Computes the local capacity for the next optimization.
+     *
+     * @param localUsage Total local size of the sessions currently held in local memory.
+     * @return The local capacity in bytes.
+     */
+    public long getLocalCapacity(long localUsage);
+
+}
@@ -2,19 +2,26 @@ package core.optimizer;
 
 import core.storage.SessionStorage;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * Class made to hold relevant optimization data.
+ * Storages are kept in the order they were added, which is the order of the storage bits of placement masks.
  *
  * @author Sebastian Lindholm
  */
 public class OptimizationData {
 
-    private final Map<SessionStorage, StorageProperties> storages = new HashMap<>();
+    private final Map<SessionStorage, StorageProperties> storages = new LinkedHashMap<>();
+    private List<SessionStorage> storageList = Collections.emptyList();
     private final Map<String, SessionProperties> sessions = new HashMap<>();
+    private final SessionTable table = new SessionTable();
 
     public int optimizerPeriod = 0;
     public long localCapacity = 0;
@@ -26,6 +33,7 @@ public class OptimizationData {
 
     public void putStorageProperties(SessionStorage storage, StorageProperties properties) {
         storages.put(storage, properties);
+        storageList = Collections.unmodifiableList(new ArrayList<>(storages.keySet()));
     }
 
     public boolean containsStorage(SessionStorage storage) {
@@ -36,6 +44,23 @@ public class OptimizationData {
         return storages.keySet();
     }
 
+    /**
+     * Gets the storages in the order they were added.
+     *
+     * @return An unmodifiable list of storages.
+     */
+    public List<SessionStorage> getStorageList() {
+        return storageList;
+    }
+
+    public SessionStorage getStorage(int index) {
+        return storageList.get(index);
+    }
+
+    public int getStorageCount() {
+        return storageList.size();
+    }
+
     public SessionProperties getSessionProperties(String sessionId) {
         return sessions.get(sessionId);
     }
@@ -60,4 +85,33 @@ public class OptimizationData {
         return sessions.keySet();
     }
 
+    /**
+     * Rebuilds and returns the structure-of-arrays view of the sessions.
+     * The returned table is reused between calls, and is invalidated by the next call.
+     *
+     * @return The SessionTable.
+     */
+    public SessionTable getSessionTable() {
+        table.reset(sessions.size(), storages.size());
+        for (Map.Entry<String, SessionProperties> entry : sessions.entrySet()) {
+            entry.getValue().index = table.add(entry.getKey(), entry.getValue());
+        }
+        return table;
+    }
+
+    /**
+     * Gets the index of a session in the last SessionTable built.
+     *
+     * @param sessionId The session id.
+     * @return The index, or -1 if the session is not part of the table.
+     */
+    public int indexOf(String sessionId) {
+        SessionProperties properties = sessions.get(sessionId);
+        if (properties == null || properties.index < 0 || properties.index >= table.size()
+                || !sessionId.equals(table.getId(properties.index)))
+            return -1;
+        else
+            return properties.index;
+    }
+
 }
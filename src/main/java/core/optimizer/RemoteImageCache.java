@@ -0,0 +1,138 @@
+package core.optimizer;
+
+import core.BasicSession;
+import core.storage.SessionData;
+import core.storage.SessionStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialized sessions, kept within a memory budget until the end of the relocation,
+ * so that a session written to several storages with the same serializer and compressor classes
+ * is only serialized once. Images are only reused while the version of the session is unchanged.
+ */
+public class RemoteImageCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RemoteImageCache.class);
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+    private final ConcurrentMap<String, Image> images = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public RemoteImageCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes Maximum number of bytes of serialized sessions to keep.
+     */
+    public RemoteImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Serializes a session for a storage, and keeps the bytes if they fit in the budget.
+     * A session whose measured size does not fit in what is left of the budget is not serialized at all.
+     * Must be called while holding the lock of the session.
+     *
+     * @param session      The session.
+     * @param storage      The storage the session is about to be stored in.
+     * @param expectedSize The measured remote size of the session in the storage.
+     * @return The serialized session, or null if it could not be serialized or does not fit.
+     */
+    public byte[] serialize(BasicSession session, SessionStorage storage, long expectedSize) {
+        byte[] data = get(session, storage);
+        if (data != null)
+            return data;
+        if (bytes.get() + expectedSize > maxBytes)
+            return null;
+
+        // The version must be read before the session is serialized
+        long version = session.getVersion();
+        data = serialize(session.getSessionData(), storage);
+        if (data == null)
+            return null;
+
+        if (bytes.get() + data.length <= maxBytes)
+            replace(session.getClusterId(), new Image(data, storage, version));
+
+        return data;
+    }
+
+    /**
+     * Returns the kept serialized session, if the session has not been accessed or modified since.
+     *
+     * @param session The session.
+     * @param storage The storage the session is about to be stored in.
+     * @return The serialized session, or null if none is available.
+     */
+    public byte[] get(BasicSession session, SessionStorage storage) {
+        Image image = images.get(session.getClusterId());
+        if (image != null && image.version == session.getVersion()
+                && CachingSizeEvaluator.sameEncoding(image.storage, storage))
+            return image.data;
+
+        return null;
+    }
+
+    /**
+     * Forgets all serialized sessions, called at the end of each relocation.
+     */
+    public void clear() {
+        for (String sessionId : images.keySet()) {
+            evict(sessionId);
+        }
+    }
+
+    /**
+     * Forgets the serialized session of a session that leaves the manager.
+     *
+     * @param sessionId Id of the session.
+     */
+    public void evict(String sessionId) {
+        replace(sessionId, null);
+    }
+
+    private void replace(String sessionId, Image image) {
+        Image old = image != null ? images.put(sessionId, image) : images.remove(sessionId);
+        if (old != null)
+            bytes.addAndGet(-old.data.length);
+        if (image != null)
+            bytes.addAndGet(image.data.length);
+    }
+
+    private byte[] serialize(SessionData data, SessionStorage storage) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (OutputStream compressed = storage.getCompressor().compress(out)) {
+            storage.getSerializer().writeSessionData(data, compressed);
+        } catch (IOException e) {
+            logger.warn("Error serializing session {}.", data.getClusterId(), e);
+            return null;
+        }
+
+        return out.toByteArray();
+    }
+
+    private static class Image {
+        final byte[] data;
+        final SessionStorage storage;
+        final long version;
+
+        Image(byte[] data, SessionStorage storage, long version) {
+            this.data = data;
+            this.storage = storage;
+            this.version = version;
+        }
+    }
+
+}
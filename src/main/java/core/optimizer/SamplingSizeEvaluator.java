@@ -0,0 +1,113 @@
+package core.optimizer;
+
+import core.BasicSession;
+import core.storage.SessionStorage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SizeEvaluator that only measures a random fraction of the sessions on each evaluation,
+ * and reuses the last measured size for the others.
+ * Sessions that have never been measured, or whose attributes have been set or removed since, are always measured.
+ * Remote sizes are remembered for each storage.
+ * Sizes are measured by another SizeEvaluator, by default a StreamingSizeEvaluator.
+ * <p>
+ * This evaluator should not be wrapped in a CachingSizeEvaluator, which would only call it after a modification.
+ */
+public class SamplingSizeEvaluator implements SizeEvaluator {
+
+    public static final double DEFAULT_FRACTION = 0.1;
+
+    private final SizeEvaluator evaluator;
+    private final ConcurrentMap<String, Sizes> sizes = new ConcurrentHashMap<>();
+    private volatile double fraction;
+
+    public SamplingSizeEvaluator() {
+        this(new StreamingSizeEvaluator(), DEFAULT_FRACTION);
+    }
+
+    /**
+     * @param evaluator SizeEvaluator used for measuring.
+     * @param fraction  Probability of measuring a session that has been measured before.
+     */
+    public SamplingSizeEvaluator(SizeEvaluator evaluator, double fraction) {
+        this.evaluator = evaluator;
+        setFraction(fraction);
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public void setFraction(double fraction) {
+        this.fraction = Math.max(0, Math.min(1, fraction));
+    }
+
+    @Override
+    public long evaluateLocal(BasicSession session) {
+        Sizes known = getSizes(session);
+
+        synchronized (known) {
+            if (known.localSize < 0 || sample())
+                known.localSize = evaluator.evaluateLocal(session);
+            return known.localSize;
+        }
+    }
+
+    @Override
+    public long evaluateRemote(BasicSession session, SessionStorage storage) {
+        Sizes known = getSizes(session);
+
+        synchronized (known) {
+            Long size = known.remoteSizes.get(storage);
+            if (size == null || sample()) {
+                size = evaluator.evaluateRemote(session, storage);
+                known.remoteSizes.put(storage, size);
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public void evict(String sessionId) {
+        sizes.remove(sessionId);
+        evaluator.evict(sessionId);
+    }
+
+    /**
+     * Returns the known sizes of a session, forgotten if its attributes have been set or removed since.
+     */
+    private Sizes getSizes(BasicSession session) {
+        long modifications = session.getModificationCount();
+        Sizes known = sizes.computeIfAbsent(session.getClusterId(), id -> new Sizes(modifications));
+
+        synchronized (known) {
+            if (known.modifications != modifications) {
+                known.modifications = modifications;
+                known.localSize = -1;
+                known.remoteSizes.clear();
+            }
+        }
+
+        return known;
+    }
+
+    private boolean sample() {
+        return ThreadLocalRandom.current().nextDouble() < fraction;
+    }
+
+    private static class Sizes {
+        long modifications;
+        long localSize = -1;
+        final Map<SessionStorage, Long> remoteSizes = new HashMap<>(2);
+
+        Sizes(long modifications) {
+            this.modifications = modifications;
+        }
+    }
+
+}
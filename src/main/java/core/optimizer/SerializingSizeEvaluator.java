@@ -41,4 +41,8 @@ public class SerializingSizeEvaluator implements SizeEvaluator {
 
         return size;
     }
+
+    @Override
+    public void evict(String sessionId) {
+    }
 }
@@ -1,18 +1,47 @@
 package core.optimizer;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Class representing the result of a SessionOptimizer.
- * It contains mappings between Session ids and SessionPlacement objects.
+ * It contains mappings between Session ids and placements, kept as placement masks
+ * so that solutions can span several storages, see SessionPlacement.
+ * A solution is either backed by a map, or by an int array indexed
+ * by the sessions of the SessionTable it was computed from.
  *
  * @author Sebastian Lindholm
  */
 public class SessionOptimizerSolution {
 
+    private static final int UNSET = -1;
+
     private double value;
-    private Map<String, SessionPlacement> sessionPlacement = new HashMap<>();
+    private Map<String, Integer> sessionPlacement;
+    private OptimizationData data;
+    private int[] placements;
+    private int placed = 0;
+
+    /**
+     * Creates an empty, map-backed solution.
+     */
+    public SessionOptimizerSolution() {
+        sessionPlacement = new HashMap<>();
+    }
+
+    /**
+     * Creates an empty, array-backed solution for the current SessionTable of an OptimizationData object.
+     * Placements are then added by session index.
+     *
+     * @param data     The OptimizationData whose SessionTable indexes the sessions.
+     * @param sessions The number of sessions in the table.
+     */
+    public SessionOptimizerSolution(OptimizationData data, int sessions) {
+        this.data = data;
+        this.placements = new int[sessions];
+        Arrays.fill(placements, UNSET);
+    }
 
     /**
      * Adds a new mapping, overwriting any previous mappings for the session.
@@ -21,7 +50,45 @@ public class SessionOptimizerSolution {
      * @param placement The SessionPlacement for the session.
      */
     public void putNewPlacement(String session, SessionPlacement placement) {
-        sessionPlacement.put(session, placement);
+        putNewPlacementMask(session, placement.getMask());
+    }
+
+    /**
+     * Adds a new mapping to a placement mask, overwriting any previous mappings for the session.
+     *
+     * @param session The session to map.
+     * @param mask    The placement mask for the session.
+     */
+    public void putNewPlacementMask(String session, int mask) {
+        if (placements != null) {
+            int index = data.indexOf(session);
+            if (index >= 0)
+                putNewPlacementMask(index, mask);
+        } else {
+            sessionPlacement.put(session, mask);
+        }
+    }
+
+    /**
+     * Adds a new mapping by session index. Only valid for array-backed solutions.
+     *
+     * @param session   Index of the session in the SessionTable.
+     * @param placement The SessionPlacement for the session.
+     */
+    public void putNewPlacement(int session, SessionPlacement placement) {
+        putNewPlacementMask(session, placement.getMask());
+    }
+
+    /**
+     * Adds a new mapping to a placement mask by session index. Only valid for array-backed solutions.
+     *
+     * @param session Index of the session in the SessionTable.
+     * @param mask    The placement mask for the session.
+     */
+    public void putNewPlacementMask(int session, int mask) {
+        if (placements[session] == UNSET)
+            placed++;
+        placements[session] = mask;
     }
 
     /**
@@ -31,7 +98,45 @@ public class SessionOptimizerSolution {
      * @return A SessionPlacement object if the mapping exists, otherwise null.
      */
     public SessionPlacement getNewPlacement(String session) {
-        return sessionPlacement.get(session);
+        int mask = getNewPlacementMask(session);
+        return mask != UNSET ? SessionPlacement.fromMask(mask) : null;
+    }
+
+    /**
+     * Gets the placement mask for a session.
+     *
+     * @param session The session id.
+     * @return The placement mask if the mapping exists, otherwise -1.
+     */
+    public int getNewPlacementMask(String session) {
+        if (placements != null) {
+            int index = data.indexOf(session);
+            return index >= 0 ? placements[index] : UNSET;
+        } else {
+            Integer mask = sessionPlacement.get(session);
+            return mask != null ? mask : UNSET;
+        }
+    }
+
+    /**
+     * Gets the SessionPlacement mapping for a session by index. Only valid for array-backed solutions.
+     *
+     * @param session Index of the session in the SessionTable.
+     * @return A SessionPlacement object if the mapping exists, otherwise null.
+     */
+    public SessionPlacement getNewPlacement(int session) {
+        int mask = placements[session];
+        return mask != UNSET ? SessionPlacement.fromMask(mask) : null;
+    }
+
+    /**
+     * Gets the placement mask for a session by index. Only valid for array-backed solutions.
+     *
+     * @param session Index of the session in the SessionTable.
+     * @return The placement mask if the mapping exists, otherwise -1.
+     */
+    public int getNewPlacementMask(int session) {
+        return placements[session];
     }
 
     /**
@@ -53,10 +158,10 @@ public class SessionOptimizerSolution {
     }
 
     public boolean contains(String session) {
-        return sessionPlacement.containsKey(session);
+        return getNewPlacement(session) != null;
     }
 
     public int size() {
-        return sessionPlacement.size();
+        return placements != null ? placed : sessionPlacement.size();
     }
 }
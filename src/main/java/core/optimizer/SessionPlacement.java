@@ -2,6 +2,11 @@ package core.optimizer;
 
 /**
  * Constants representing the possible states of a session with respect to storage.
+ * <p>
+ * With several session storages, a placement is a bit mask instead, with bit 0 set
+ * if the session is kept in local memory and bit k + 1 set if it is kept in storage k,
+ * in the order of OptimizationData.getStorageList(). A SessionPlacement is then the
+ * placement as seen from local memory, where REMOTE and BOTH stand for any set of storages.
  *
  * @author Sebastian Lindholm
  */
@@ -10,6 +15,67 @@ public enum SessionPlacement {
     LOCAL,
     REMOTE,
     BOTH,
-    DROP
+    DROP;
+
+    /**
+     * The bit of a placement mask that stands for local memory.
+     */
+    public static final int LOCAL_BIT = 1;
+
+    private static final SessionPlacement[] PLACEMENTS = values();
+
+    /**
+     * Gets the bit of a placement mask that stands for a storage.
+     *
+     * @param storage Index of the storage.
+     * @return The bit.
+     */
+    public static int storageBit(int storage) {
+        return 1 << (storage + 1);
+    }
+
+    /**
+     * Gets the placement mask of this placement, with the first storage standing for remote storage.
+     *
+     * @return The mask.
+     */
+    public int getMask() {
+        switch (this) {
+            case LOCAL:
+                return LOCAL_BIT;
+            case REMOTE:
+                return storageBit(0);
+            case BOTH:
+                return LOCAL_BIT | storageBit(0);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the SessionPlacement of a placement mask, collapsing all storages into remote storage.
+     *
+     * @param mask The placement mask.
+     * @return The SessionPlacement.
+     */
+    public static SessionPlacement fromMask(int mask) {
+        boolean local = (mask & LOCAL_BIT) != 0;
+        boolean remote = (mask & ~LOCAL_BIT) != 0;
+
+        if (local)
+            return remote ? BOTH : LOCAL;
+        else
+            return remote ? REMOTE : DROP;
+    }
+
+    /**
+     * Gets a SessionPlacement by its ordinal, without copying the values() array.
+     *
+     * @param ordinal The ordinal.
+     * @return The SessionPlacement.
+     */
+    public static SessionPlacement fromOrdinal(int ordinal) {
+        return PLACEMENTS[ordinal];
+    }
 
 }
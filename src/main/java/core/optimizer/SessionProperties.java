@@ -13,7 +13,12 @@ public class SessionProperties {
     public SessionPlacement oldPlacement = SessionPlacement.DROP;
     public Long localSize = null;
     public Long remoteSize = null;
+    /** Bit k is set if the session is held by storage k, with several storages. */
+    public int storedTiers = 0;
+    /** Size of the session in each storage, with several storages. */
+    public long[] storageSizes = null;
     public int accesses = 0;
     public long lastAccess = System.currentTimeMillis();
+    int index = -1;
 
 }
@@ -0,0 +1,126 @@
+package core.optimizer;
+
+/**
+ * Structure-of-arrays view of the session properties in an OptimizationData object,
+ * meant for the inner loops of optimizers.
+ * Each session is identified by a dense index, which is valid until the table is rebuilt.
+ * The arrays may be longer than the table, only the first size() entries are valid.
+ * <p>
+ * With several storages, storageSize holds the size of each session in each storage,
+ * and oldMask the placement mask of each session. The size in the first storage
+ * is the same array as remoteSize.
+ */
+public class SessionTable {
+
+    private String[] ids = new String[0];
+    private int size = 0;
+    private int storages = 1;
+
+    public long[] localSize = new long[0];
+    public long[] remoteSize = new long[0];
+    public double[] value = new double[0];
+    public byte[] oldPlacement = new byte[0];
+    public long[] lastAccess = new long[0];
+    public long[][] storageSize = {remoteSize};
+    public int[] oldMask = new int[0];
+
+    /**
+     * Gets the number of sessions in the table.
+     *
+     * @return The number of sessions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of storages in the table.
+     *
+     * @return The number of storages.
+     */
+    public int storages() {
+        return storages;
+    }
+
+    /**
+     * Gets the id of the session at a given index.
+     *
+     * @param index The index of the session.
+     * @return The session id.
+     */
+    public String getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Gets the old placement of the session at a given index.
+     *
+     * @param index The index of the session.
+     * @return The SessionPlacement.
+     */
+    public SessionPlacement getOldPlacement(int index) {
+        return SessionPlacement.fromOrdinal(oldPlacement[index]);
+    }
+
+    /**
+     * Empties the table, making room for a given amount of sessions and storages.
+     * The arrays are only reallocated when they are too small.
+     *
+     * @param capacity The amount of sessions to make room for.
+     * @param storages The number of storages.
+     */
+    void reset(int capacity, int storages) {
+        storages = Math.max(1, storages);
+        if (ids.length < capacity) {
+            ids = new String[capacity];
+            localSize = new long[capacity];
+            remoteSize = new long[capacity];
+            value = new double[capacity];
+            oldPlacement = new byte[capacity];
+            lastAccess = new long[capacity];
+            oldMask = new int[capacity];
+            storageSize = new long[0][];
+        }
+        if (storageSize.length != storages) {
+            long[][] sizes = new long[storages][];
+            sizes[0] = remoteSize;
+            for (int storage = 1; storage < storages; storage++) {
+                sizes[storage] = storage < storageSize.length ? storageSize[storage] : new long[ids.length];
+            }
+            storageSize = sizes;
+        }
+        this.storages = storages;
+        size = 0;
+    }
+
+    /**
+     * Appends a session to the table.
+     *
+     * @param id         The session id.
+     * @param properties The properties of the session.
+     * @return The index of the session.
+     */
+    int add(String id, SessionProperties properties) {
+        int index = size++;
+        ids[index] = id;
+        localSize[index] = properties.localSize != null ? properties.localSize : 0L;
+        remoteSize[index] = properties.remoteSize != null ? properties.remoteSize : 0L;
+        value[index] = properties.value;
+        oldPlacement[index] = (byte) properties.oldPlacement.ordinal();
+        lastAccess[index] = properties.lastAccess;
+
+        for (int storage = 1; storage < storages; storage++) {
+            long[] sizes = properties.storageSizes;
+            storageSize[storage][index] = sizes != null && storage < sizes.length ? sizes[storage] : remoteSize[index];
+        }
+
+        // Without a record of the storages holding the session, remote storage means the first one
+        int mask = properties.oldPlacement.getMask();
+        if (properties.storedTiers != 0)
+            mask = (mask & SessionPlacement.LOCAL_BIT) | (properties.storedTiers << 1);
+        oldMask[index] = mask;
+
+        return index;
+    }
+
+}
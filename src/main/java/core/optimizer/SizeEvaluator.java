@@ -8,4 +8,12 @@ public interface SizeEvaluator {
     public long evaluateLocal(BasicSession session);
     public long evaluateRemote(BasicSession session, SessionStorage storage);
 
+    /**
+     * Discards anything remembered about a session,
+     * called when the session leaves the manager.
+     *
+     * @param sessionId Id of the session.
+     */
+    public void evict(String sessionId);
+
 }
@@ -2,6 +2,7 @@ package core.optimizer;
 
 /**
  * Optimization data specific to a remote storage.
+ * A MTTF of 0 means that the storage never loses sessions.
  */
 public class StorageProperties {
 
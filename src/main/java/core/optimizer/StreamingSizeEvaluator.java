@@ -0,0 +1,55 @@
+package core.optimizer;
+
+import core.BasicSession;
+import core.storage.SessionStorage;
+import core.util.ByteCountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * SizeEvaluator that serializes sessions into a byte counting stream
+ * that discards the bytes, so that sizes are measured with constant memory.
+ * Measures the same sizes as the SerializingSizeEvaluator.
+ */
+public class StreamingSizeEvaluator implements SizeEvaluator {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingSizeEvaluator.class);
+
+    @Override
+    public long evaluateLocal(BasicSession session) {
+        ByteCountingOutputStream counter = new ByteCountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(session.getSessionData());
+        } catch (IOException e) {
+            logger.debug("Error measuring the local size of session {}.", session.getClusterId(), e);
+            return 0;
+        }
+
+        return counter.getByteCount();
+    }
+
+    @Override
+    public long evaluateRemote(BasicSession session, SessionStorage storage) {
+        ByteCountingOutputStream counter = new ByteCountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+
+        try (OutputStream out = storage.getCompressor().compress(counter)) {
+            storage.getSerializer().writeSessionData(session.getSessionData(), out);
+        } catch (IOException e) {
+            logger.debug("Error measuring the remote size of session {}.", session.getClusterId(), e);
+            return 0;
+        }
+
+        return counter.getByteCount();
+    }
+
+    @Override
+    public void evict(String sessionId) {
+    }
+
+}
@@ -3,6 +3,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.Arrays;
@@ -22,23 +24,23 @@ public class BothOptimizer extends UtilityBasedOptimizer {
             return null;
 
         SessionStorage storage = data.getStorages().iterator().next();
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionTable table = data.getSessionTable();
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
-        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[data.getSessions().size()];
+        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[table.size()];
 
         double value = 0;
         long localCapacity = data.localCapacity;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
-        int i = 0;
-        for (String session : data.getSessions()) {
-            lotteryValues[i] = new SessionLotteryValue(session, SessionPlacement.BOTH, data.getSessionProperties(session).value);
-            i++;
+        long remoteCapacity = storageProperties.capacity;
+        for (int session = 0; session < table.size(); session++) {
+            lotteryValues[session] = new SessionLotteryValue(session, SessionPlacement.BOTH, table.value[session]);
         }
 
         Arrays.parallelSort(lotteryValues);
 
         for (SessionLotteryValue lotteryValue : lotteryValues) {
-            long localSize = data.getSessionProperties(lotteryValue.session).localSize;
-            long remoteSize = data.getSessionProperties(lotteryValue.session).remoteSize;
+            long localSize = table.localSize[lotteryValue.session];
+            long remoteSize = table.remoteSize[lotteryValue.session];
             boolean localValid = localCapacity >= localSize;
             boolean remoteValid = remoteCapacity >= remoteSize;
             SessionPlacement placement = SessionPlacement.DROP;
@@ -55,8 +57,8 @@ public class BothOptimizer extends UtilityBasedOptimizer {
                     placement = SessionPlacement.REMOTE;
             }
 
-            solution.putNewPlacement(lotteryValue.session, placement);
-            value = value + evaluateUtility(lotteryValue.session, placement, storage, data);
+            solution.putNewPlacement(table.getId(lotteryValue.session), placement);
+            value = value + evaluateUtility(lotteryValue.session, placement, storageProperties, table, data);
         }
 
         solution.setValue(value);
@@ -2,9 +2,8 @@ package core.optimizer.alg;
 
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
-import core.optimizer.SessionPlacement;
-import core.optimizer.SessionProperties;
-import core.storage.SessionStorage;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 
 import solver.chp.CHPSolver;
 import solver.chp.CHPSolver.Configuration;
@@ -13,52 +12,31 @@ import java.util.*;
 
 public class CHPOptimizer extends UtilityBasedOptimizer {
 
-    private static final int LOCAL = 0;
-    private static final int REMOTE = 1;
     private static final int SET_CUTOFF = 32;
 
     private Map<Configuration, SessionLotteryValue> lotteries = new HashMap<>();
+    private SessionTable table;
 
     @Override
     public SessionOptimizerSolution optimize(OptimizationData data) {
-        SessionStorage storage = data.getStorages().iterator().next();
+        StorageProperties[] storageProperties = getStorageProperties(data);
+        table = data.getSessionTable();
+        lotteries.clear();
 
-        // Get constraints
-        long[] constraints = new long[2];
-        constraints[LOCAL] = data.localCapacity;
-        constraints[REMOTE] = data.getStorageProperties(storage).capacity;
+        // Get constraints, local memory first and then every storage
+        long[] constraints = getCapacities(data, storageProperties);
+        int[] masks = getMasks(storageProperties.length);
 
         // Initialize input data
-        List<List<Configuration>> input = new ArrayList<>(data.getSessions().size());
-        for(String session : data.getSessions()){
-            List<Configuration> confSet = new ArrayList<>(4);
-            SessionProperties properties = data.getSessionProperties(session);
-            for(SessionPlacement placement : SessionPlacement.values()){
-                double utility = evaluateUtility(session, placement, storage, data);
-                long[] resourceVector = new long[2];
-                switch(placement){
-                    case DROP:
-                        resourceVector[LOCAL] = 0;
-                        resourceVector[REMOTE] = 0;
-                        break;
-                    case LOCAL:
-                        resourceVector[LOCAL] = properties.localSize;
-                        resourceVector[REMOTE] = 0;
-                        break;
-                    case REMOTE:
-                        resourceVector[LOCAL] = 0;
-                        resourceVector[REMOTE] = properties.remoteSize;
-                        break;
-                    case BOTH:
-                        resourceVector[LOCAL] = properties.localSize;
-                        resourceVector[REMOTE] = properties.remoteSize;
-                        break;
-                    default:
-                        break;
-                }
+        List<List<Configuration>> input = new ArrayList<>(table.size());
+        for(int session = 0; session < table.size(); session++){
+            List<Configuration> confSet = new ArrayList<>(masks.length);
+            for(int mask : masks){
+                double utility = evaluateUtility(session, mask, storageProperties, table, data);
+                long[] resourceVector = getDemand(session, mask, table);
                 Configuration conf = new Configuration(utility, resourceVector);
                 confSet.add(conf);
-                lotteries.put(conf, new SessionLotteryValue(session, placement, utility));
+                lotteries.put(conf, new SessionLotteryValue(session, mask, utility));
             }
             input.add(confSet);
         }
@@ -85,7 +63,7 @@ public class CHPOptimizer extends UtilityBasedOptimizer {
                 solution.setValue(best.value);
                 for(Configuration conf : best.groups.values()){
                     SessionLotteryValue lottery = lotteries.get(conf);
-                    solution.putNewPlacement(lottery.session, lottery.placement);
+                    solution.putNewPlacementMask(table.getId(lottery.session), lottery.mask);
                 }
             }
             else return null;
@@ -4,10 +4,11 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.Arrays;
-import java.util.Set;
 
 /**
  * Optimizer that sorts sessions according to their value/size ratio
@@ -20,6 +21,7 @@ import java.util.Set;
 public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
 
     private OptimizationData data;
+    private SessionTable table;
     private SessionLotteryValue[] lotteryValues;
     private SessionStorage storage;
 
@@ -34,31 +36,32 @@ public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
 
         // Temporary solution: get the first session storage.
         storage = data.getStorages().iterator().next();
+        table = data.getSessionTable();
 
         evaluateSessions();
         return constructSolution();
     }
 
     private void evaluateSessions() {
-        Set<String> sessions = data.getSessions();
-        lotteryValues = new SessionLotteryValue[sessions.size() * SessionPlacement.values().length];
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        lotteryValues = new SessionLotteryValue[table.size() * PLACEMENTS.length];
 
         int i = 0;
-        for (String session : sessions) {
-            double localSize = (double) data.getSessionProperties(session).localSize;
-            for (SessionPlacement placement : SessionPlacement.values()) {
+        for (int session = 0; session < table.size(); session++) {
+            double localSize = (double) table.localSize[session];
+            for (SessionPlacement placement : PLACEMENTS) {
                 double utility = 0;
                 if(localSize>0){
                     switch(placement){
 
                         case LOCAL:
-                            utility = evaluateUtility(session, placement, storage, data) / localSize;
+                            utility = evaluateUtility(session, placement, storageProperties, table, data) / localSize;
                             break;
                         case BOTH:
-                            utility = evaluateUtility(session, placement, storage, data) / localSize;
+                            utility = evaluateUtility(session, placement, storageProperties, table, data) / localSize;
                             break;
                         default:
-                            utility = evaluateUtility(session, placement, storage, data);
+                            utility = evaluateUtility(session, placement, storageProperties, table, data);
 
                     }
 
@@ -73,26 +76,29 @@ public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
 
     private SessionOptimizerSolution constructSolution() {
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
+        boolean[] placed = new boolean[table.size()];
         long localCapacity = data.localCapacity;
         long remoteCapacity = data.getStorageProperties(storage).capacity;
         double value = 0;
 
         for (SessionLotteryValue lottery : lotteryValues) {
-            if (!solution.contains(lottery.session)) {
+            if (!placed[lottery.session]) {
 
-                long localSize = data.getSessionProperties(lottery.session).localSize;
-                long remoteSize = data.getSessionProperties(lottery.session).remoteSize;
+                String session = table.getId(lottery.session);
+                long localSize = table.localSize[lottery.session];
+                long remoteSize = table.remoteSize[lottery.session];
+                SessionPlacement placement = null;
 
                 switch (lottery.placement) {
 
                     case DROP:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
+                        placement = SessionPlacement.DROP;
                         value = value + lottery.value;
                         break;
 
                     case LOCAL:
                         if (localCapacity >= localSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.LOCAL);
+                            placement = SessionPlacement.LOCAL;
                             localCapacity = localCapacity - localSize;
                             value = value + lottery.value * localSize;
                         }
@@ -100,7 +106,7 @@ public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
 
                     case REMOTE:
                         if (remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.REMOTE);
+                            placement = SessionPlacement.REMOTE;
                             remoteCapacity = remoteCapacity - remoteSize;
                             value = value + lottery.value;
                         }
@@ -108,7 +114,7 @@ public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
 
                     case BOTH:
                         if (localCapacity >= localSize && remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.BOTH);
+                            placement = SessionPlacement.BOTH;
                             localCapacity = localCapacity - localSize;
                             remoteCapacity = remoteCapacity - remoteSize;
                             value = value + lottery.value * localSize;
@@ -116,10 +122,15 @@ public class GreedyAdjustedOptimizer extends UtilityBasedOptimizer {
                         break;
 
                     default:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
+                        placement = SessionPlacement.DROP;
                         break;
                 }
 
+                if (placement != null) {
+                    solution.putNewPlacement(session, placement);
+                    placed[lottery.session] = true;
+                }
+
             }
         }
 
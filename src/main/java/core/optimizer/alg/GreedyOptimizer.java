@@ -3,24 +3,26 @@ package core.optimizer.alg;
 
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
-import core.optimizer.SessionPlacement;
-import core.storage.SessionStorage;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 
 import java.util.Arrays;
-import java.util.Set;
 
 /**
  * Optimizer that sorts sessions according to their value/size ratio
- * and allocates them to the SessionPlacement with the highest value
+ * and allocates them to the placement with the highest value
  * in which they will fit.
+ * Placements span local memory and all storages, so that the
+ * storages are filled as a multi-dimensional knapsack.
  *
  * @author Sebastian Lindholm
  */
 public class GreedyOptimizer extends UtilityBasedOptimizer {
 
     private OptimizationData data;
+    private SessionTable table;
     private SessionLotteryValue[] lotteryValues;
-    private SessionStorage storage;
+    private StorageProperties[] storageProperties;
 
 
     @Override
@@ -31,26 +33,26 @@ public class GreedyOptimizer extends UtilityBasedOptimizer {
             return null;
         }
 
-        // Temporary solution: get the first session storage.
-        storage = data.getStorages().iterator().next();
+        storageProperties = getStorageProperties(data);
+        table = data.getSessionTable();
 
         evaluateSessions();
         return constructSolution();
     }
 
     private void evaluateSessions() {
-        Set<String> sessions = data.getSessions();
-        lotteryValues = new SessionLotteryValue[sessions.size() * SessionPlacement.values().length];
+        int[] masks = getMasks(storageProperties.length);
+        lotteryValues = new SessionLotteryValue[table.size() * masks.length];
 
         int i = 0;
-        for (String session : sessions) {
-            double localSize = (double) data.getSessionProperties(session).localSize;
-            for (SessionPlacement placement : SessionPlacement.values()) {
+        for (int session = 0; session < table.size(); session++) {
+            double localSize = (double) table.localSize[session];
+            for (int mask : masks) {
                 double utility = 0;
                 if(localSize>0){
-                    utility = evaluateUtility(session, placement, storage, data) / localSize;
+                    utility = evaluateUtility(session, mask, storageProperties, table, data) / localSize;
                 }
-                lotteryValues[i] = new SessionLotteryValue(session, placement, utility);
+                lotteryValues[i] = new SessionLotteryValue(session, mask, utility);
                 i++;
             }
         }
@@ -60,53 +62,15 @@ public class GreedyOptimizer extends UtilityBasedOptimizer {
 
     private SessionOptimizerSolution constructSolution() {
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
-        long localCapacity = data.localCapacity;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
+        boolean[] placed = new boolean[table.size()];
+        long[] remaining = getCapacities(data, storageProperties);
         double value = 0;
 
         for (SessionLotteryValue lottery : lotteryValues) {
-            if (!solution.contains(lottery.session)) {
-
-                long localSize = data.getSessionProperties(lottery.session).localSize;
-                long remoteSize = data.getSessionProperties(lottery.session).remoteSize;
-
-                switch (lottery.placement) {
-
-                    case DROP:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
-                        value = value + lottery.value * localSize;
-                        break;
-
-                    case LOCAL:
-                        if (localCapacity >= localSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.LOCAL);
-                            localCapacity = localCapacity - localSize;
-                            value = value + lottery.value * localSize;
-                        }
-                        break;
-
-                    case REMOTE:
-                        if (remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.REMOTE);
-                            remoteCapacity = remoteCapacity - remoteSize;
-                            value = value + lottery.value * localSize;
-                        }
-                        break;
-
-                    case BOTH:
-                        if (localCapacity >= localSize && remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.BOTH);
-                            localCapacity = localCapacity - localSize;
-                            remoteCapacity = remoteCapacity - remoteSize;
-                            value = value + lottery.value * localSize;
-                        }
-                        break;
-
-                    default:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
-                        break;
-                }
-
+            if (!placed[lottery.session] && allocate(lottery.session, lottery.mask, remaining, table)) {
+                value = value + lottery.value * table.localSize[lottery.session];
+                solution.putNewPlacementMask(table.getId(lottery.session), lottery.mask);
+                placed[lottery.session] = true;
             }
         }
 
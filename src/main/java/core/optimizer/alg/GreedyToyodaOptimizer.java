@@ -19,11 +19,12 @@ import java.util.*;
 public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
 
     private OptimizationData data;
+    private SessionTable table;
     private SessionLotteryContainer[] containers;
     private SessionStorage storage;
 
     private static class SessionLotteryContainer implements Comparable<SessionLotteryContainer>{
-        public String id;
+        public int session;
         public ToyodaLotteryValue[] lotteries;
         public double score = 0D;
 
@@ -44,7 +45,7 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
         double square = 0D;
         double weightedValue = 0D;
 
-        public ToyodaLotteryValue(String session, SessionPlacement placement, double value) {
+        public ToyodaLotteryValue(int session, SessionPlacement placement, double value) {
             super(session, placement, value);
         }
 
@@ -73,30 +74,28 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
 
         // Temporary solution: get the first session storage.
         storage = data.getStorages().iterator().next();
+        table = data.getSessionTable();
 
         return evaluateSessions();
     }
 
     private SessionOptimizerSolution evaluateSessions() {
-        Set<String> sessions = data.getSessions();
-        containers = new SessionLotteryContainer[sessions.size()];
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        containers = new SessionLotteryContainer[table.size()];
 
-        int i = 0;
-        for (String session : sessions) {
-            SessionProperties properties = data.getSessionProperties(session);
-            double localSize = (double) properties.localSize;
+        for (int session = 0; session < table.size(); session++) {
+            double localSize = (double) table.localSize[session];
             SessionLotteryContainer container = new SessionLotteryContainer();
-            container.id = session;
-            containers[i] = container;
-            i++;
+            container.session = session;
+            containers[session] = container;
 
-            container.lotteries = new ToyodaLotteryValue[SessionPlacement.values().length];
+            container.lotteries = new ToyodaLotteryValue[PLACEMENTS.length];
             int j = 0;
-            for(SessionPlacement placement : SessionPlacement.values()) {
+            for(SessionPlacement placement : PLACEMENTS) {
                 double weight = 0;
 
                 if (localSize > 0) {
-                    weight = evaluateUtility(session, placement, storage, data);
+                    weight = evaluateUtility(session, placement, storageProperties, table, data);
                     container.score += weight;
                 }
 
@@ -109,7 +108,6 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
         Arrays.parallelSort(containers);
 
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
-        StorageProperties storageProperties = data.getStorageProperties(storage);
         final long remoteCapacity = storageProperties.capacity;
         long remoteConsumed = 0L;
         final long localCapacity = data.localCapacity;
@@ -118,7 +116,8 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
         double value = 0D;
 
         for (SessionLotteryContainer container : containers) {
-            SessionProperties sessionProperties = data.getSessionProperties(container.id);
+            final long localSize = table.localSize[container.session];
+            final long remoteSize = table.remoteSize[container.session];
 
             // Update the lotteries with aggregate resource consumption
             for(ToyodaLotteryValue lottery : container.lotteries){
@@ -128,29 +127,29 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
                 switch(lottery.placement){
 
                     case LOCAL:
-                        lottery.square = Math.pow(sessionProperties.localSize, 2D);
+                        lottery.square = Math.pow(localSize, 2D);
                         norm = Math.sqrt(sumOfSquares+lottery.square);
 
                         if(norm!=0){
-                            lottery.weightedValue = lottery.value/((sessionProperties.localSize*localConsumed)/norm);
+                            lottery.weightedValue = lottery.value/((localSize*localConsumed)/norm);
                         }
                         break;
 
                     case REMOTE:
-                        lottery.square = Math.pow(sessionProperties.remoteSize, 2D);
+                        lottery.square = Math.pow(remoteSize, 2D);
                         norm = Math.sqrt(sumOfSquares+lottery.square);
 
                         if(norm!=0){
-                            lottery.weightedValue = lottery.value/((sessionProperties.remoteSize*remoteConsumed)/norm);
+                            lottery.weightedValue = lottery.value/((remoteSize*remoteConsumed)/norm);
                         }
                         break;
 
                     case BOTH:
-                        lottery.square = Math.pow(sessionProperties.localSize, 2D) + Math.pow(sessionProperties.remoteSize, 2D);
+                        lottery.square = Math.pow(localSize, 2D) + Math.pow(remoteSize, 2D);
                         norm = Math.sqrt(sumOfSquares+lottery.square);
 
                         if(norm!=0){
-                            lottery.weightedValue = lottery.value/((sessionProperties.remoteSize*remoteConsumed+sessionProperties.localSize*localConsumed)/norm);
+                            lottery.weightedValue = lottery.value/((remoteSize*remoteConsumed+localSize*localConsumed)/norm);
                         }
                         break;
 
@@ -170,28 +169,28 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
                 switch(lottery.placement){
 
                     case LOCAL:
-                        if(localCapacity>=localConsumed+sessionProperties.localSize){
+                        if(localCapacity>=localConsumed+localSize){
                             chosenPlacement = SessionPlacement.LOCAL;
-                            localConsumed += sessionProperties.localSize;
+                            localConsumed += localSize;
                             sumOfSquares += lottery.square;
                             value+=lottery.value;
                         }
                         break;
 
                     case REMOTE:
-                        if(remoteCapacity>=remoteConsumed+sessionProperties.remoteSize){
+                        if(remoteCapacity>=remoteConsumed+remoteSize){
                             chosenPlacement = SessionPlacement.REMOTE;
-                            remoteConsumed += sessionProperties.remoteSize;
+                            remoteConsumed += remoteSize;
                             sumOfSquares += lottery.square;
                             value+=lottery.value;
                         }
                         break;
 
                     case BOTH:
-                        if(localCapacity>=localConsumed+sessionProperties.localSize && remoteCapacity>=remoteConsumed+sessionProperties.remoteSize){
+                        if(localCapacity>=localConsumed+localSize && remoteCapacity>=remoteConsumed+remoteSize){
                             chosenPlacement = SessionPlacement.BOTH;
-                            localConsumed += sessionProperties.localSize;
-                            remoteConsumed += sessionProperties.remoteSize;
+                            localConsumed += localSize;
+                            remoteConsumed += remoteSize;
                             sumOfSquares += lottery.square;
                             value+=lottery.value;
                         }
@@ -209,7 +208,7 @@ public class GreedyToyodaOptimizer extends UtilityBasedOptimizer {
 
             }
 
-            solution.putNewPlacement(container.id, chosenPlacement);
+            solution.putNewPlacement(table.getId(container.session), chosenPlacement);
         }
 
         solution.setValue(value);
@@ -3,7 +3,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
-import core.storage.SessionStorage;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import solver.LinearConstraint;
 import solver.LinearConstraint.Sign;
 import solver.LinearObjective;
@@ -26,7 +27,8 @@ public class LPOptimizer extends UtilityBasedOptimizer {
     private static final double SCALING_FACTOR = 1E3;
 
     private OptimizationData data;
-    private SessionStorage storage;
+    private StorageProperties[] storageProperties;
+    private SessionTable table;
     private SessionLotteryValue[] lotteryValues;
 
     @Override
@@ -37,8 +39,8 @@ public class LPOptimizer extends UtilityBasedOptimizer {
             return null;
         }
 
-        // Temporary solution: get the first session storage.
-        storage = data.getStorages().iterator().next();
+        storageProperties = getStorageProperties(data);
+        table = data.getSessionTable();
 
         LinearProblem problem = makeProblem();
 
@@ -64,46 +66,35 @@ public class LPOptimizer extends UtilityBasedOptimizer {
         LinearObjective objective = new LinearObjective();
         objective.setGoal(Goal.MAX);
 
-        // Constraints: Neither the local or remote storage can exceed their respective capacities.
-        LinearConstraint localResources = new LinearConstraint(Sign.LTEQ, (double) data.localCapacity);
-        LinearConstraint remoteResources = new LinearConstraint(Sign.LTEQ, (double) data.getStorageProperties(storage).capacity);
+        // Constraints: Neither the local memory or any storage can exceed their respective capacities.
+        long[] capacities = getCapacities(data, storageProperties);
+        LinearConstraint[] resources = new LinearConstraint[capacities.length];
+        for (int resource = 0; resource < capacities.length; resource++) {
+            resources[resource] = new LinearConstraint(Sign.LTEQ, (double) capacities[resource]);
+        }
 
-        lotteryValues = new SessionLotteryValue[data.getSessions().size() * SessionPlacement.values().length];
+        int[] masks = getMasks(storageProperties.length);
+        lotteryValues = new SessionLotteryValue[table.size() * masks.length];
 
         int i = 0;
-        for (String session : data.getSessions()) {
-            Double localSize = (double) data.getSessionProperties(session).localSize;
-            Double remoteSize = (double) data.getSessionProperties(session).remoteSize;
+        for (int session = 0; session < table.size(); session++) {
 
             // Constraint: For each session, exactly one placement has to be chosen.
             LinearConstraint oneLottery = new LinearConstraint(Sign.EQ, 1.0D);
 
-            for (SessionPlacement placement : SessionPlacement.values()) {
-                double util = evaluateUtility(session, placement, storage, data);
+            for (int mask : masks) {
+                double util = evaluateUtility(session, mask, storageProperties, table, data);
 
-                lotteryValues[i] = new SessionLotteryValue(session, placement, util);
+                lotteryValues[i] = new SessionLotteryValue(session, mask, util);
 
                 objective.putVariable(lotteryValues[i], util * SCALING_FACTOR);
 
                 // Depending on the placement, resources have to be allocated accordingly
-                switch (placement) {
-
-                    case BOTH:
-                        localResources.putVariable(lotteryValues[i], localSize);
-                        remoteResources.putVariable(lotteryValues[i], remoteSize);
-                        break;
-
-                    case LOCAL:
-                        localResources.putVariable(lotteryValues[i], localSize);
-                        break;
-
-                    case REMOTE:
-                        remoteResources.putVariable(lotteryValues[i], remoteSize);
-                        break;
-
-                    default:
-                        break;
-
+                if ((mask & SessionPlacement.LOCAL_BIT) != 0)
+                    resources[0].putVariable(lotteryValues[i], (double) table.localSize[session]);
+                for (int storage = 0; storage < storageProperties.length; storage++) {
+                    if ((mask & SessionPlacement.storageBit(storage)) != 0)
+                        resources[storage + 1].putVariable(lotteryValues[i], (double) table.storageSize[storage][session]);
                 }
 
                 oneLottery.putVariable(lotteryValues[i], 1.0D);
@@ -112,8 +103,9 @@ public class LPOptimizer extends UtilityBasedOptimizer {
             problem.addConstraint(oneLottery);
         }
 
-        problem.addConstraint(localResources);
-        problem.addConstraint(remoteResources);
+        for (LinearConstraint constraint : resources) {
+            problem.addConstraint(constraint);
+        }
         problem.addObjective(objective);
 
 
@@ -128,10 +120,10 @@ public class LPOptimizer extends UtilityBasedOptimizer {
      */
     private SessionOptimizerSolution parseSolution(LinearProblem problem) {
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
+        boolean[] placed = new boolean[table.size()];
         Map<Object, Double> result = problem.getVariableResults();
         double value = 0;
-        long localCapacity = data.localCapacity;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
+        long[] remaining = getCapacities(data, storageProperties);
 
         Arrays.parallelSort(lotteryValues, (o1, o2) -> {
             double val = result.get(o1) - result.get(o2);
@@ -144,48 +136,10 @@ public class LPOptimizer extends UtilityBasedOptimizer {
         });
 
         for (SessionLotteryValue lottery : lotteryValues) {
-            if (!solution.contains(lottery.session)) {
-
-                long localSize = data.getSessionProperties(lottery.session).localSize;
-                long remoteSize = data.getSessionProperties(lottery.session).remoteSize;
-
-                switch (lottery.placement) {
-
-                    case DROP:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
-                        value = value + lottery.value;
-                        break;
-
-                    case LOCAL:
-                        if (localCapacity >= localSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.LOCAL);
-                            localCapacity = localCapacity - localSize;
-                            value = value + lottery.value;
-                        }
-                        break;
-
-                    case REMOTE:
-                        if (remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.REMOTE);
-                            remoteCapacity = remoteCapacity - remoteSize;
-                            value = value + lottery.value;
-                        }
-                        break;
-
-                    case BOTH:
-                        if (localCapacity >= localSize && remoteCapacity >= remoteSize) {
-                            solution.putNewPlacement(lottery.session, SessionPlacement.BOTH);
-                            localCapacity = localCapacity - localSize;
-                            remoteCapacity = remoteCapacity - remoteSize;
-                            value = value + lottery.value;
-                        }
-                        break;
-
-                    default:
-                        solution.putNewPlacement(lottery.session, SessionPlacement.DROP);
-                        break;
-                }
-
+            if (!placed[lottery.session] && allocate(lottery.session, lottery.mask, remaining, table)) {
+                solution.putNewPlacementMask(table.getId(lottery.session), lottery.mask);
+                value = value + lottery.value;
+                placed[lottery.session] = true;
             }
         }
 
@@ -4,6 +4,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.Arrays;
@@ -22,21 +24,21 @@ public class LocalOptimizer extends UtilityBasedOptimizer {
             return null;
 
         SessionStorage storage = data.getStorages().iterator().next();
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionTable table = data.getSessionTable();
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
-        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[data.getSessions().size()];
+        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[table.size()];
 
         double value = 0;
         long localCapacity = data.localCapacity;
-        int i = 0;
-        for (String session : data.getSessions()) {
-            lotteryValues[i] = new SessionLotteryValue(session, SessionPlacement.LOCAL, data.getSessionProperties(session).value);
-            i++;
+        for (int session = 0; session < table.size(); session++) {
+            lotteryValues[session] = new SessionLotteryValue(session, SessionPlacement.LOCAL, table.value[session]);
         }
 
         Arrays.parallelSort(lotteryValues);
 
         for (SessionLotteryValue lotteryValue : lotteryValues) {
-            long size = data.getSessionProperties(lotteryValue.session).localSize;
+            long size = table.localSize[lotteryValue.session];
             SessionPlacement placement = SessionPlacement.DROP;
 
             if (localCapacity >= size) {
@@ -44,9 +46,9 @@ public class LocalOptimizer extends UtilityBasedOptimizer {
                 placement = lotteryValue.placement;
             }
 
-            value = value + evaluateUtility(lotteryValue.session, placement, storage, data);
+            value = value + evaluateUtility(lotteryValue.session, placement, storageProperties, table, data);
 
-            solution.putNewPlacement(lotteryValue.session, placement);
+            solution.putNewPlacement(table.getId(lotteryValue.session), placement);
 
         }
 
@@ -0,0 +1,124 @@
+package core.optimizer.alg;
+
+
+import core.optimizer.OptimizationData;
+import core.optimizer.SessionOptimizerSolution;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Allocation-free variant of the GreedyOptimizer.
+ * Each lottery is packed into a single long, with the value/size ratio
+ * (as an order-preserving float) in the high 32 bits and the session index
+ * and placement in the low 32 bits, so that the lotteries can be sorted
+ * in descending order with a primitive sort.
+ * The placement is packed as its index in the list of placement masks,
+ * which takes one bit more than the number of storages.
+ * The lottery buffer is reused between runs, and the solution is stored
+ * in an int array indexed by session.
+ * <p>
+ * Ratios are compared with float precision, which only affects the order
+ * of lotteries whose ratios are nearly equal.
+ */
+public class PackedGreedyOptimizer extends UtilityBasedOptimizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackedGreedyOptimizer.class);
+
+    private long[] lotteries = new long[0];
+
+    @Override
+    public SessionOptimizerSolution optimize(OptimizationData data) {
+        if (data == null)
+            return null;
+
+        StorageProperties[] storageProperties = getStorageProperties(data);
+        SessionTable table = data.getSessionTable();
+        int[] masks = getMasks(storageProperties.length);
+        int placementBits = storageProperties.length + 1;
+        int maxSessions = 1 << (32 - placementBits);
+
+        if (table.size() > maxSessions) {
+            logger.warn("Too many sessions to pack: {}, the maximum is {}.", table.size(), maxSessions);
+            return null;
+        }
+
+        int count = evaluateSessions(table, masks, placementBits, storageProperties, data);
+        Arrays.sort(lotteries, 0, count);
+
+        return constructSolution(count, table, masks, placementBits, storageProperties, data);
+    }
+
+    private int evaluateSessions(SessionTable table, int[] masks, int placementBits, StorageProperties[] storageProperties, OptimizationData data) {
+        int count = table.size() * masks.length;
+        if (lotteries.length < count)
+            lotteries = new long[count];
+
+        int i = 0;
+        for (int session = 0; session < table.size(); session++) {
+            double localSize = (double) table.localSize[session];
+            for (int placement = 0; placement < masks.length; placement++) {
+                double utility = 0;
+                if (localSize > 0) {
+                    utility = evaluateUtility(session, masks[placement], storageProperties, table, data) / localSize;
+                }
+                lotteries[i] = pack(utility, session, placement, placementBits);
+                i++;
+            }
+        }
+
+        return count;
+    }
+
+    private SessionOptimizerSolution constructSolution(int count, SessionTable table, int[] masks, int placementBits, StorageProperties[] storageProperties, OptimizationData data) {
+        SessionOptimizerSolution solution = new SessionOptimizerSolution(data, table.size());
+        long[] remaining = getCapacities(data, storageProperties);
+        double value = 0;
+
+        for (int i = 0; i < count; i++) {
+            int session = unpackSession(lotteries[i], placementBits);
+            if (solution.getNewPlacementMask(session) >= 0)
+                continue;
+
+            int mask = masks[unpackPlacement(lotteries[i], placementBits)];
+
+            if (allocate(session, mask, remaining, table)) {
+                solution.putNewPlacementMask(session, mask);
+                if (table.localSize[session] > 0)
+                    value = value + evaluateUtility(session, mask, storageProperties, table, data);
+            }
+        }
+
+        solution.setValue(value);
+
+        return solution;
+    }
+
+    /**
+     * Packs a lottery into a long, so that sorting in ascending order
+     * orders the lotteries by descending key, then by ascending session and placement.
+     *
+     * @param key           The value to sort by.
+     * @param session       Index of the session.
+     * @param placement     Index of the placement mask.
+     * @param placementBits Number of bits used for the placement.
+     * @return The packed lottery.
+     */
+    static long pack(double key, int session, int placement, int placementBits) {
+        int bits = Float.floatToIntBits((float) key);
+        bits ^= (bits >> 31) & 0x7fffffff;
+        return ((long) ~bits << 32) | ((((long) session << placementBits) | placement) & 0xffffffffL);
+    }
+
+    static int unpackSession(long lottery, int placementBits) {
+        return (int) ((lottery & 0xffffffffL) >>> placementBits);
+    }
+
+    static int unpackPlacement(long lottery, int placementBits) {
+        return (int) (lottery & ((1 << placementBits) - 1));
+    }
+
+}
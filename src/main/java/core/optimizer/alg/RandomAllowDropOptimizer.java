@@ -3,6 +3,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.ArrayList;
@@ -37,16 +39,20 @@ public class RandomAllowDropOptimizer extends UtilityBasedOptimizer {
     private SessionOptimizerSolution generateSolution() {
         Random rng = new Random();
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionTable table = data.getSessionTable();
         double value = 0;
         long localCapacity = data.localCapacity;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
+        long remoteCapacity = storageProperties.capacity;
         List<SessionPlacement> validPlacements = new ArrayList<SessionPlacement>();
 
-        for (String session : data.getSessions()) {
+        for (int session = 0; session < table.size(); session++) {
             SessionPlacement placement;
+            long localSize = table.localSize[session];
+            long remoteSize = table.remoteSize[session];
 
-            boolean localValid = localCapacity >= data.getSessionProperties(session).localSize;
-            boolean remoteValid = remoteCapacity >= data.getSessionProperties(session).remoteSize;
+            boolean localValid = localCapacity >= localSize;
+            boolean remoteValid = remoteCapacity >= remoteSize;
 
             validPlacements.add(SessionPlacement.DROP);
             if (localValid) {
@@ -67,22 +73,22 @@ public class RandomAllowDropOptimizer extends UtilityBasedOptimizer {
             switch (placement) {
 
                 case BOTH:
-                    localCapacity = localCapacity - data.getSessionProperties(session).localSize;
-                    remoteCapacity = remoteCapacity - data.getSessionProperties(session).remoteSize;
+                    localCapacity = localCapacity - localSize;
+                    remoteCapacity = remoteCapacity - remoteSize;
                     break;
                 case REMOTE:
-                    remoteCapacity = remoteCapacity - data.getSessionProperties(session).remoteSize;
+                    remoteCapacity = remoteCapacity - remoteSize;
                     break;
                 case LOCAL:
-                    localCapacity = localCapacity - data.getSessionProperties(session).localSize;
+                    localCapacity = localCapacity - localSize;
                     break;
                 default:
                     placement = SessionPlacement.DROP;
 
             }
 
-            value = value + evaluateUtility(session, placement, storage, data);
-            solution.putNewPlacement(session, placement);
+            value = value + evaluateUtility(session, placement, storageProperties, table, data);
+            solution.putNewPlacement(table.getId(session), placement);
             validPlacements.clear();
         }
 
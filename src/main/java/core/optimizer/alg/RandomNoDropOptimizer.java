@@ -3,6 +3,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.ArrayList;
@@ -38,16 +40,20 @@ public class RandomNoDropOptimizer extends UtilityBasedOptimizer {
     private SessionOptimizerSolution generateSolution() {
         Random rng = new Random();
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionTable table = data.getSessionTable();
         double value = 0;
         long localCapacity = data.localCapacity;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
+        long remoteCapacity = storageProperties.capacity;
         List<SessionPlacement> validPlacements = new ArrayList<SessionPlacement>();
 
-        for (String session : data.getSessions()) {
+        for (int session = 0; session < table.size(); session++) {
             SessionPlacement placement;
+            long localSize = table.localSize[session];
+            long remoteSize = table.remoteSize[session];
 
-            boolean localValid = localCapacity >= data.getSessionProperties(session).localSize;
-            boolean remoteValid = remoteCapacity >= data.getSessionProperties(session).remoteSize;
+            boolean localValid = localCapacity >= localSize;
+            boolean remoteValid = remoteCapacity >= remoteSize;
 
             //validPlacements.add(SessionPlacement.DROP);
             if (localValid) {
@@ -68,14 +74,14 @@ public class RandomNoDropOptimizer extends UtilityBasedOptimizer {
             switch (placement) {
 
                 case BOTH:
-                    localCapacity = localCapacity - data.getSessionProperties(session).localSize;
-                    remoteCapacity = remoteCapacity - data.getSessionProperties(session).remoteSize;
+                    localCapacity = localCapacity - localSize;
+                    remoteCapacity = remoteCapacity - remoteSize;
                     break;
                 case REMOTE:
-                    remoteCapacity = remoteCapacity - data.getSessionProperties(session).remoteSize;
+                    remoteCapacity = remoteCapacity - remoteSize;
                     break;
                 case LOCAL:
-                    localCapacity = localCapacity - data.getSessionProperties(session).localSize;
+                    localCapacity = localCapacity - localSize;
                     break;
                 default:
                     placement = SessionPlacement.DROP;
@@ -83,8 +89,8 @@ public class RandomNoDropOptimizer extends UtilityBasedOptimizer {
 
             }
 
-            value = value + evaluateUtility(session, placement, storage, data);
-            solution.putNewPlacement(session, placement);
+            value = value + evaluateUtility(session, placement, storageProperties, table, data);
+            solution.putNewPlacement(table.getId(session), placement);
             validPlacements.clear();
         }
 
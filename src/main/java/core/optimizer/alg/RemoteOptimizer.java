@@ -4,6 +4,8 @@ package core.optimizer.alg;
 import core.optimizer.OptimizationData;
 import core.optimizer.SessionOptimizerSolution;
 import core.optimizer.SessionPlacement;
+import core.optimizer.SessionTable;
+import core.optimizer.StorageProperties;
 import core.storage.SessionStorage;
 
 import java.util.Arrays;
@@ -21,21 +23,21 @@ public class RemoteOptimizer extends UtilityBasedOptimizer {
             return null;
 
         SessionStorage storage = data.getStorages().iterator().next();
+        StorageProperties storageProperties = data.getStorageProperties(storage);
+        SessionTable table = data.getSessionTable();
         SessionOptimizerSolution solution = new SessionOptimizerSolution();
-        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[data.getSessions().size()];
+        SessionLotteryValue[] lotteryValues = new SessionLotteryValue[table.size()];
 
         double value = 0;
-        long remoteCapacity = data.getStorageProperties(storage).capacity;
-        int i = 0;
-        for (String session : data.getSessions()) {
-            lotteryValues[i] = new SessionLotteryValue(session, SessionPlacement.REMOTE, data.getSessionProperties(session).value);
-            i++;
+        long remoteCapacity = storageProperties.capacity;
+        for (int session = 0; session < table.size(); session++) {
+            lotteryValues[session] = new SessionLotteryValue(session, SessionPlacement.REMOTE, table.value[session]);
         }
 
         Arrays.parallelSort(lotteryValues);
 
         for (SessionLotteryValue lotteryValue : lotteryValues) {
-            long size = data.getSessionProperties(lotteryValue.session).remoteSize;
+            long size = table.remoteSize[lotteryValue.session];
             SessionPlacement placement = SessionPlacement.DROP;
 
             if (remoteCapacity >= size) {
@@ -43,8 +45,8 @@ public class RemoteOptimizer extends UtilityBasedOptimizer {
                 placement = lotteryValue.placement;
             }
 
-            value = value + evaluateUtility(lotteryValue.session, placement, storage, data);
-            solution.putNewPlacement(lotteryValue.session, placement);
+            value = value + evaluateUtility(lotteryValue.session, placement, storageProperties, table, data);
+            solution.putNewPlacement(table.getId(lotteryValue.session), placement);
         }
 
         solution.setValue(value);
@@ -3,20 +3,31 @@ package core.optimizer.alg;
 import core.optimizer.SessionPlacement;
 
 /**
- * A comparable (Session, Placement, Value) tuple.
+ * A comparable (Session, Placement, Value) tuple,
+ * where the session is identified by its index in a SessionTable.
+ * The placement is also kept as a placement mask, which may span several storages.
  * The comparator orders tuples in descending order.
  *
  * @author Sebastian Lindholm
  */
 public class SessionLotteryValue implements Comparable<SessionLotteryValue> {
 
-    public String session;
+    public int session;
     public SessionPlacement placement;
+    public int mask;
     public double value;
 
-    public SessionLotteryValue(String session, SessionPlacement placement, double value) {
+    public SessionLotteryValue(int session, SessionPlacement placement, double value) {
         this.session = session;
         this.placement = placement;
+        this.mask = placement.getMask();
+        this.value = value;
+    }
+
+    public SessionLotteryValue(int session, int mask, double value) {
+        this.session = session;
+        this.placement = SessionPlacement.fromMask(mask);
+        this.mask = mask;
         this.value = value;
     }
 
@@ -6,11 +6,23 @@ import core.storage.SessionStorage;
 
 /**
  * Provides a utility function for utility based optimizers.
+ * <p>
+ * The utility function is defined for placement masks over any number of storages, see SessionPlacement.
+ * A session placed in a set of storages keeps its value if at least one copy survives the period,
+ * pays the write and storage costs of every storage it is written to, and pays the read cost
+ * of the cheapest storage when it is read back because it is not, or no longer, in local memory.
+ * The MTTF of a storage only counts when there are several storages to choose between:
+ * a single storage is taken to be reliable, as in the utility of the LOCAL, REMOTE, BOTH and DROP placements.
  *
  * @author Sebastian Lindholm
  */
 public abstract class UtilityBasedOptimizer implements SessionOptimizer {
 
+    /**
+     * All placements, cached to avoid copying SessionPlacement.values() in inner loops.
+     */
+    protected static final SessionPlacement[] PLACEMENTS = SessionPlacement.values();
+
     /**
      * Calculates the value of the utility function.
      *
@@ -23,38 +35,185 @@ public abstract class UtilityBasedOptimizer implements SessionOptimizer {
         SessionProperties sessionProperties = data.getSessionProperties(session);
         StorageProperties storageProperties = data.getStorageProperties(storage);
 
-        double remoteSize = ((double) sessionProperties.remoteSize) / 1048576.0D;
-        double value = 0.0D;
-        double localReliability = 1;
+        return evaluateUtility(sessionProperties.value, sessionProperties.remoteSize, placement.getMask(), storageProperties, data);
+
+    }
+
+    /**
+     * Calculates the value of the utility function for a session in a SessionTable.
+     *
+     * @param session           Index of the session to evaluate.
+     * @param placement         The lottery to evaluate.
+     * @param storageProperties Properties of the remote storage.
+     * @param table             The SessionTable holding the session.
+     * @param data              The OptimizationData the table was built from.
+     * @return The value of the function.
+     */
+    public double evaluateUtility(int session, SessionPlacement placement, StorageProperties storageProperties, SessionTable table, OptimizationData data) {
+
+        return evaluateUtility(table.value[session], table.remoteSize[session], placement.getMask(), storageProperties, data);
+
+    }
+
+    /**
+     * Calculates the value of the utility function for a placement mask of a session in a SessionTable.
+     *
+     * @param session           Index of the session to evaluate.
+     * @param mask              The placement mask to evaluate.
+     * @param storageProperties Properties of the storages, in the order of the storage bits.
+     * @param table             The SessionTable holding the session.
+     * @param data              The OptimizationData the table was built from.
+     * @return The value of the function.
+     */
+    public double evaluateUtility(int session, int mask, StorageProperties[] storageProperties, SessionTable table, OptimizationData data) {
+
+        return evaluateUtility(table.value[session], session, mask, storageProperties, table.storageSize, data);
+
+    }
+
+    private double evaluateUtility(double value, int session, int mask, StorageProperties[] storageProperties, long[][] sizes, OptimizationData data) {
+
+        if (storageProperties.length == 1)
+            return evaluateUtility(value, sizes[0][session], mask, storageProperties[0], data);
+
+        double localReliability = reliability(data.localMTTF, data);
+        boolean local = (mask & SessionPlacement.LOCAL_BIT) != 0;
+
+        // Probability that every copy is lost, and cost of reading the session back
+        double lost = local ? 1 - localReliability : 1;
+        double readCost = Double.POSITIVE_INFINITY;
+        double costs = 0;
+
+        for (int storage = 0; storage < storageProperties.length; storage++) {
+            if ((mask & SessionPlacement.storageBit(storage)) == 0)
+                continue;
+
+            StorageProperties properties = storageProperties[storage];
+            double size = ((double) sizes[storage][session]) / 1048576.0D;
+            lost *= 1 - reliability(properties.MTTF, data);
+            readCost = Math.min(readCost, properties.readCost);
+            costs += properties.writeCost + properties.storageCost * data.optimizerPeriod * size;
+        }
+
+        if (readCost != Double.POSITIVE_INFINITY)
+            costs += (local ? 1 - localReliability : 1) * readCost;
+
+        return value * (1 - lost) - costs;
+
+    }
 
-        if (data.localMTTF > 0)
-            localReliability = Math.exp(-(data.optimizerPeriod / data.localMTTF));
+    /**
+     * The utility function over local memory and a single storage, which is taken to be reliable.
+     */
+    private double evaluateUtility(double value, long remoteSize, int mask, StorageProperties storageProperties, OptimizationData data) {
 
-        switch (placement) {
+        double localReliability = reliability(data.localMTTF, data);
+        boolean local = (mask & SessionPlacement.LOCAL_BIT) != 0;
 
-            case DROP:
-                break;
+        if ((mask & SessionPlacement.storageBit(0)) == 0)
+            return local ? value * localReliability : 0;
 
-            case LOCAL:
-                value = sessionProperties.value * localReliability;
-                break;
+        double size = ((double) remoteSize) / 1048576.0D;
+        return value - storageProperties.writeCost - (local ? 1 - localReliability : 1) * storageProperties.readCost
+                - storageProperties.storageCost * data.optimizerPeriod * size;
 
-            case BOTH:
-                value = sessionProperties.value - (storageProperties.writeCost + storageProperties.readCost * (1.0D - localReliability)) - storageProperties.storageCost * data.optimizerPeriod * remoteSize;
-                break;
+    }
 
-            case REMOTE:
-                value = sessionProperties.value - (storageProperties.readCost + storageProperties.writeCost) - storageProperties.storageCost * data.optimizerPeriod * remoteSize;
-                break;
+    /**
+     * Gets the properties of all storages, in the order of the storage bits of placement masks.
+     *
+     * @param data The OptimizationData.
+     * @return The storage properties.
+     */
+    protected static StorageProperties[] getStorageProperties(OptimizationData data) {
+        StorageProperties[] properties = new StorageProperties[data.getStorageCount()];
+        for (int storage = 0; storage < properties.length; storage++) {
+            properties[storage] = data.getStorageProperties(data.getStorage(storage));
+        }
+        return properties;
+    }
 
-            default:
-                System.err.println("Evaluating utility for invalid placement: " + placement + ".");
-                break;
+    /**
+     * Lists the placement masks over a number of storages, in the order that lotteries are evaluated:
+     * all placements that keep the session, in ascending order, followed by dropping it.
+     * With a single storage, this is the order LOCAL, REMOTE, BOTH, DROP.
+     *
+     * @param storages The number of storages.
+     * @return The placement masks.
+     */
+    protected static int[] getMasks(int storages) {
+        int count = 1 << (storages + 1);
+        int[] masks = new int[count];
+        for (int i = 0; i < count - 1; i++) {
+            masks[i] = i + 1;
+        }
+        masks[count - 1] = 0;
+        return masks;
+    }
 
+    /**
+     * Gets the capacities of local memory and of all storages.
+     *
+     * @param data              The OptimizationData.
+     * @param storageProperties Properties of the storages.
+     * @return The capacities, local memory first.
+     */
+    protected static long[] getCapacities(OptimizationData data, StorageProperties[] storageProperties) {
+        long[] capacities = new long[storageProperties.length + 1];
+        capacities[0] = data.localCapacity;
+        for (int storage = 0; storage < storageProperties.length; storage++) {
+            capacities[storage + 1] = storageProperties[storage].capacity;
+        }
+        return capacities;
+    }
+
+    /**
+     * Gets the resources a placement takes, in the dimensions of getCapacities().
+     *
+     * @param session Index of the session.
+     * @param mask    The placement mask.
+     * @param table   The SessionTable holding the session.
+     * @return The resource vector.
+     */
+    protected static long[] getDemand(int session, int mask, SessionTable table) {
+        long[] demand = new long[table.storages() + 1];
+        if ((mask & SessionPlacement.LOCAL_BIT) != 0)
+            demand[0] = table.localSize[session];
+        for (int storage = 0; storage < table.storages(); storage++) {
+            if ((mask & SessionPlacement.storageBit(storage)) != 0)
+                demand[storage + 1] = table.storageSize[storage][session];
         }
+        return demand;
+    }
 
-        return value;
+    /**
+     * Takes the resources of a placement from the remaining capacities, if they fit.
+     *
+     * @param session   Index of the session.
+     * @param mask      The placement mask.
+     * @param remaining Remaining capacities, in the dimensions of getCapacities().
+     * @param table     The SessionTable holding the session.
+     * @return true if the placement fits and was allocated, else false.
+     */
+    protected static boolean allocate(int session, int mask, long[] remaining, SessionTable table) {
+        if ((mask & SessionPlacement.LOCAL_BIT) != 0 && remaining[0] < table.localSize[session])
+            return false;
+        for (int storage = 0; storage < table.storages(); storage++) {
+            if ((mask & SessionPlacement.storageBit(storage)) != 0 && remaining[storage + 1] < table.storageSize[storage][session])
+                return false;
+        }
+
+        if ((mask & SessionPlacement.LOCAL_BIT) != 0)
+            remaining[0] -= table.localSize[session];
+        for (int storage = 0; storage < table.storages(); storage++) {
+            if ((mask & SessionPlacement.storageBit(storage)) != 0)
+                remaining[storage + 1] -= table.storageSize[storage][session];
+        }
+        return true;
+    }
 
+    private static double reliability(double MTTF, OptimizationData data) {
+        return MTTF > 0 ? Math.exp(-(data.optimizerPeriod / MTTF)) : 1;
     }
 
 }
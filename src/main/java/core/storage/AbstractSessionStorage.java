@@ -2,18 +2,73 @@ package core.storage;
 
 import core.storage.compressor.StreamCompressor;
 import core.storage.serializer.SessionSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
 
 /**
  * Convenience class that provides some getters
- * and setters for some SessionStorage attributes.
+ * and setters for some SessionStorage attributes,
+ * and implements the batch operations one session at a time.
  *
  * @author Sebastian Lindholm
  */
 public abstract class AbstractSessionStorage implements SessionStorage {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractSessionStorage.class);
+
     private SessionSerializer serializer;
     private StreamCompressor compressor;
 
+    /**
+     * Deserializes the session and stores it with store().
+     * Storages that write bytes should override this to store the data as is.
+     */
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        try (InputStream in = getCompressor().decompress(new ByteArrayInputStream(data))) {
+            SessionData session = getSerializer().readSessionData(in);
+            return session != null && store(session);
+        } catch (IOException e) {
+            logger.warn("Error reading serialized session {}.", id, e);
+            return false;
+        }
+    }
+
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        Set<String> stored = new HashSet<>();
+        for (SessionData session : sessions) {
+            if (store(session))
+                stored.add(session.getClusterId());
+        }
+
+        return stored;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (String id : ids) {
+            remove(id);
+        }
+    }
+
+    @Override
+    public Map<String, SessionData> loadAll(Collection<String> ids) {
+        Map<String, SessionData> loaded = new HashMap<>();
+        for (String id : ids) {
+            SessionData data = load(id);
+            if (data != null)
+                loaded.put(id, data);
+        }
+
+        return loaded;
+    }
+
     @Override
     public SessionSerializer getSerializer() {
         return serializer;
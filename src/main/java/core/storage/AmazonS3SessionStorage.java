@@ -1,5 +1,7 @@
 package core.storage;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
@@ -11,18 +13,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * A customized Amazon S3 storage class, originally written by mrosin,
  * TODO: Untested
+ * <p>
+ * Sessions are serialized into a buffer kept by each thread and uploaded straight from memory with a known
+ * content length, so that storing does not depend on the local disk. Sessions of at least multipartThreshold
+ * bytes are uploaded as a multipart upload in parts of partSize bytes, both read from amazon.conf.
+ * <p>
+ * Keys are spread over a number of shards by a hexadecimal prefix derived from the session id,
+ * e.g. 1f/{id}.session, and the shards are listed in parallel.
+ * The stored sessions are cached and kept up to date from the sessions stored and removed through this storage,
+ * and the bucket is only listed in full every listingInterval listings, to find the changes made by other nodes.
+ * Changing the number of shards moves the keys, so a bucket written with one number of shards can not be read with another.
  *
  * @author Sebastian Lindholm
  */
-public class AmazonS3SessionStorage extends AbstractSessionStorage {
+public class AmazonS3SessionStorage extends AbstractSessionStorage implements AsyncSessionStorage, IncrementalListing {
 
     private static final Logger logger = LoggerFactory.getLogger(AmazonS3SessionStorage.class);
 
@@ -30,11 +40,43 @@ public class AmazonS3SessionStorage extends AbstractSessionStorage {
     private static final String accessParam = "accessKey";
     private static final String secretParam = "secretKey";
     private static final String bucketParam = "bucketName";
+    private static final String multipartThresholdParam = "multipartThreshold";
+    private static final String partSizeParam = "partSize";
+    private static final String shardsParam = "shards";
+    private static final String listingIntervalParam = "listingInterval";
+    private static final String SUFFIX = ".session";
+    private static final int MAX_DELETE_KEYS = 1000;
+    private static final int MAX_SHARDS = 256;
+    private static final int DEFAULT_SHARDS = 16;
+    private static final int DEFAULT_LISTING_INTERVAL = 10;
+    private static final int DEFAULT_MULTIPART_THRESHOLD = 16 * 1024 * 1024;
+    private static final int DEFAULT_PART_SIZE = 8 * 1024 * 1024;
+    /** Smallest part accepted by S3, except for the last part. */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    /** Larger buffers are dropped after use, rather than kept by the thread. */
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static ThreadLocal<UploadBuffer> localBuffer = new ThreadLocal<>();
 
     private String accessKey;
     private String secretKey;
     private String bucketName;
+    private int multipartThreshold = DEFAULT_MULTIPART_THRESHOLD;
+    private int partSize = DEFAULT_PART_SIZE;
+    private int shards = DEFAULT_SHARDS;
+    private int listingInterval = DEFAULT_LISTING_INTERVAL;
     private AmazonS3 client;
+    private ExecutorService executor;
+
+    /** Held while listing, separately from the storage, so that stores are not held up by a full listing. */
+    private final Object listingLock = new Object();
+    /** Cached listing, from session id to size. */
+    private final Map<String, Long> mirror = new HashMap<>();
+    /** Sessions stored or removed since the previous listing, with their sizes, or -1 if removed. */
+    private final Map<String, Long> changed = new ConcurrentHashMap<>();
+    /** Incremental listings left until the next full listing. */
+    private int untilFullListing = 0;
 
     public AmazonS3SessionStorage() {
         try (
@@ -51,39 +93,141 @@ public class AmazonS3SessionStorage extends AbstractSessionStorage {
         }
     }
 
-    public boolean store(SessionData session) {
-        String fileName = session + ".session";
+    /**
+     * @param client             The S3 client.
+     * @param bucketName         Bucket holding the sessions.
+     * @param multipartThreshold Size in bytes from which sessions are uploaded in parts.
+     * @param partSize           Size in bytes of the parts.
+     * @param shards             Number of key prefixes.
+     * @param listingInterval    Number of incremental listings between full listings of the bucket.
+     */
+    AmazonS3SessionStorage(AmazonS3 client, String bucketName, int multipartThreshold, int partSize,
+                           int shards, int listingInterval) {
+        this.client = client;
+        this.bucketName = bucketName;
+        this.multipartThreshold = multipartThreshold;
+        this.partSize = partSize;
+        this.shards = shards;
+        this.listingInterval = listingInterval;
+    }
 
+    public boolean store(SessionData session) {
         if (client == null)
             return false;
 
-        File file = null;
+        UploadBuffer buffer = getBuffer();
         try {
-            file = File.createTempFile(session.getClusterId(), ".session");
+            try (OutputStream out = getCompressor().compress(buffer)) {
+                getSerializer().writeSessionData(session, out);
+            }
+            return upload(session.getClusterId(), buffer.getData(), buffer.size());
         } catch (IOException e) {
-            logger.warn("Error creating temporary file.", e);
+            logger.warn("Error while storing a session.", e);
             return false;
+        } finally {
+            releaseBuffer(buffer);
         }
+    }
 
-        boolean success = false;
-        try (
-                OutputStream out = getCompressor().compress(new BufferedOutputStream(new FileOutputStream(file), 51200))
-        ) {
-            getSerializer().writeSessionData(session, out);
-            out.flush();
-            out.close();
-            client.putObject(new PutObjectRequest(bucketName, fileName, file));
-            file.delete();
-            success = true;
-        } catch (IOException e) {
-            logger.warn("Error while storing a session.", e);
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        if (client == null)
+            return false;
+
+        return upload(id, data, data.length);
+    }
+
+    /**
+     * Uploads a serialized session from memory, in parts if it is large.
+     *
+     * @param id     Id of the session.
+     * @param data   Array holding the serialized session.
+     * @param length Number of bytes of the session, from the start of the array.
+     * @return true if the session was uploaded, else false.
+     */
+    private boolean upload(String id, byte[] data, int length) {
+        try {
+            if (length < multipartThreshold) {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(length);
+                client.putObject(new PutObjectRequest(bucketName, key(id), new ByteArrayInputStream(data, 0, length), metadata));
+            } else {
+                uploadParts(key(id), data, length);
+            }
+            changed.put(id, (long) length);
+            return true;
+        } catch (AmazonClientException e) {
+            logger.warn("Error while storing session {}.", id, e);
+            return false;
+        }
+    }
+
+    /**
+     * Uploads an object as a multipart upload, which is aborted if any part fails,
+     * so that no parts are left stored in the bucket.
+     */
+    private void uploadParts(String key, byte[] data, int length) {
+        String uploadId = client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+
+        try {
+            List<PartETag> parts = new ArrayList<>(length / partSize + 1);
+            for (int offset = 0; offset < length; offset += partSize) {
+                int size = Math.min(partSize, length - offset);
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(parts.size() + 1)
+                        .withPartSize(size)
+                        .withLastPart(offset + size == length)
+                        .withInputStream(new ByteArrayInputStream(data, offset, size));
+                parts.add(client.uploadPart(request).getPartETag());
+            }
+
+            client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, parts));
+        } catch (AmazonClientException e) {
+            try {
+                client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            } catch (AmazonClientException abortException) {
+                logger.warn("Failed to abort the upload of {}.", key, abortException);
+            }
+            throw e;
+        }
+    }
+
+    private static UploadBuffer getBuffer() {
+        UploadBuffer buffer = localBuffer.get();
+        if (buffer == null) {
+            buffer = new UploadBuffer();
+            localBuffer.set(buffer);
+        } else {
+            buffer.reset();
         }
 
-        return success;
+        return buffer;
+    }
+
+    private static void releaseBuffer(UploadBuffer buffer) {
+        if (buffer.capacity() > MAX_RETAINED_BUFFER)
+            localBuffer.remove();
+    }
+
+    /**
+     * @return The key of a session, prefixed by its shard.
+     */
+    private String key(String id) {
+        return prefix(Math.floorMod(id.hashCode(), shards)) + id + SUFFIX;
+    }
+
+    /**
+     * @return The prefix of the keys in a shard, or an empty prefix if keys are not sharded.
+     */
+    private String prefix(int shard) {
+        return shards > 1 ? String.format("%02x/", shard) : "";
     }
 
     public SessionData load(String id) {
-        String fileName = id + ".session";
+        String fileName = key(id);
 
         if (client == null)
             return null;
@@ -112,9 +256,22 @@ public class AmazonS3SessionStorage extends AbstractSessionStorage {
                 secretKey = config.get(key);
             } else if (key.equalsIgnoreCase(bucketParam)) {
                 bucketName = config.get(key);
+            } else if (key.equalsIgnoreCase(multipartThresholdParam)) {
+                multipartThreshold = parse(key, config.get(key), DEFAULT_MULTIPART_THRESHOLD);
+            } else if (key.equalsIgnoreCase(partSizeParam)) {
+                partSize = parse(key, config.get(key), DEFAULT_PART_SIZE);
+            } else if (key.equalsIgnoreCase(shardsParam)) {
+                shards = Math.max(1, Math.min(MAX_SHARDS, parse(key, config.get(key), DEFAULT_SHARDS)));
+            } else if (key.equalsIgnoreCase(listingIntervalParam)) {
+                listingInterval = parse(key, config.get(key), DEFAULT_LISTING_INTERVAL);
             }
         }
 
+        if (partSize < MIN_PART_SIZE) {
+            logger.warn("{} is below the minimum of {} bytes. Defaulting to {}.", partSizeParam, MIN_PART_SIZE, MIN_PART_SIZE);
+            partSize = MIN_PART_SIZE;
+        }
+
         if (accessKey != null && secretKey != null && bucketName != null) {
             AWSCredentials credentials = new BasicAWSCredentials(accessKey, secretKey);
             client = new AmazonS3Client(credentials);
@@ -128,35 +285,277 @@ public class AmazonS3SessionStorage extends AbstractSessionStorage {
         }
     }
 
+    private static int parse(String key, String value, int defaultValue) {
+        try {
+            return (int) Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            logger.warn("Unable to parse {}: {}. Defaulting to {}.", key, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
     public void remove(String id) {
-        String fileName = id + ".session";
+        String fileName = key(id);
 
         if (client == null)
             return;
 
         client.deleteObject(new DeleteObjectRequest(bucketName, fileName));
+        changed.put(id, -1L);
+    }
+
+    /**
+     * Removes the sessions with multi-object delete requests,
+     * each covering up to 1000 sessions.
+     */
+    @Override
+    public void removeAll(Collection<String> ids) {
+        if (client == null)
+            return;
+
+        List<String> batch = new ArrayList<>(Math.min(ids.size(), MAX_DELETE_KEYS));
+        for (String id : ids) {
+            batch.add(id);
+            if (batch.size() == MAX_DELETE_KEYS) {
+                deleteObjects(batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty())
+            deleteObjects(batch);
+    }
+
+    private void deleteObjects(List<String> ids) {
+        List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            keys.add(new DeleteObjectsRequest.KeyVersion(key(id)));
+        }
+
+        Set<String> failed = new HashSet<>();
+        DeleteObjectsRequest request = new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true);
+        try {
+            client.deleteObjects(request);
+        } catch (MultiObjectDeleteException e) {
+            logger.warn("Failed to delete {} of {} sessions.", e.getErrors().size(), keys.size());
+            for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                failed.add(error.getKey());
+            }
+        }
+
+        for (String id : ids) {
+            if (!failed.contains(key(id)))
+                changed.put(id, -1L);
+        }
     }
 
+    /**
+     * The S3 client of the AWS SDK only offers blocking calls, so the
+     * asynchronous operations run on a pool with one thread per HTTP connection
+     * of the client, letting the requests use all connections at once.
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(ClientConfiguration.DEFAULT_MAX_CONNECTIONS, runnable -> {
+                Thread thread = new Thread(runnable, "AmazonS3SessionStorage");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return executor;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> storeAsync(SessionData session) {
+        if (client == null)
+            return CompletableFuture.completedFuture(false);
+
+        return CompletableFuture.supplyAsync(() -> store(session), getExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(String id) {
+        if (client == null)
+            return CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.runAsync(() -> remove(id), getExecutor());
+    }
+
+    @Override
+    public CompletableFuture<SessionData> loadAsync(String id) {
+        if (client == null)
+            return CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.supplyAsync(() -> load(id), getExecutor());
+    }
+
+    /**
+     * Brings the cached listing up to date and lists it.
+     * If the bucket can not be listed, the sessions last known to be stored are listed.
+     */
     public List<StoredSession> stored() {
-        List<StoredSession> sessions = new ArrayList<StoredSession>();
-        ListObjectsRequest request = new ListObjectsRequest().withBucketName(bucketName);
+        synchronized (listingLock) {
+            changes();
+
+            List<StoredSession> sessions = new ArrayList<>(mirror.size());
+            for (Map.Entry<String, Long> entry : mirror.entrySet()) {
+                sessions.add(new StoredSession(entry.getKey(), entry.getValue()));
+            }
+
+            return sessions;
+        }
+    }
+
+    /**
+     * Lists the sessions stored and removed through this storage since the previous call,
+     * or the whole bucket if a full listing is due.
+     */
+    @Override
+    public StoredSessionChanges changes() {
+        if (client == null)
+            return new StoredSessionChanges();
+
+        synchronized (listingLock) {
+            return listChanges();
+        }
+    }
+
+    private StoredSessionChanges listChanges() {
+        // Taken before a full listing, which may miss the latest changes
+        Map<String, Long> recent = new HashMap<>();
+        for (String id : changed.keySet()) {
+            Long size = changed.remove(id);
+            if (size != null)
+                recent.put(id, size);
+        }
+
+        if (untilFullListing <= 0) {
+            Map<String, Long> listed = listAll();
+            if (listed != null) {
+                untilFullListing = listingInterval;
+                for (Map.Entry<String, Long> entry : recent.entrySet()) {
+                    if (entry.getValue() < 0) {
+                        listed.remove(entry.getKey());
+                    } else {
+                        listed.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                return apply(true, listed);
+            }
+        }
+
+        untilFullListing = Math.max(0, untilFullListing - 1);
+        return apply(false, recent);
+    }
+
+    /**
+     * Lists every shard of the bucket in parallel.
+     *
+     * @return Map from session id to size, or null if any shard could not be listed.
+     */
+    private Map<String, Long> listAll() {
+        List<CompletableFuture<Map<String, Long>>> listings = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            String prefix = prefix(shard);
+            listings.add(CompletableFuture.supplyAsync(() -> listShard(prefix), getExecutor()));
+        }
+
+        Map<String, Long> listed = new HashMap<>();
+        try {
+            for (CompletableFuture<Map<String, Long>> listing : listings) {
+                listed.putAll(listing.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.warn("Error while listing stored sessions!", e.getCause());
+            return null;
+        }
+
+        return listed;
+    }
+
+    private Map<String, Long> listShard(String prefix) {
+        Map<String, Long> listed = new HashMap<>();
+        ListObjectsRequest request = new ListObjectsRequest().withBucketName(bucketName).withPrefix(prefix);
         ObjectListing listing;
 
         do {
             listing = client.listObjects(request);
+            String key = null;
             for (S3ObjectSummary summary : listing.getObjectSummaries()) {
-                String key = summary.getKey();
-                sessions.add(new StoredSession(key.substring(0, key.lastIndexOf(".session")), summary.getSize()));
+                key = summary.getKey();
+                if (key.endsWith(SUFFIX))
+                    listed.put(key.substring(prefix.length(), key.length() - SUFFIX.length()), summary.getSize());
             }
 
-            request.setMarker(listing.getNextMarker());
+            // The next marker is only returned for delimited listings, otherwise the last key is the marker
+            request.setMarker(listing.getNextMarker() != null ? listing.getNextMarker() : key);
         }
         while (listing.isTruncated());
-        return sessions;
+
+        return listed;
+    }
+
+    /**
+     * Applies a listing to the cached listing.
+     *
+     * @param complete true if the listing holds every stored session, else false.
+     * @param listed   Map from session id to size, or -1 for removed sessions.
+     * @return The changes made to the cached listing.
+     */
+    private StoredSessionChanges apply(boolean complete, Map<String, Long> listed) {
+        List<StoredSession> stored = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+
+        if (complete) {
+            for (String id : mirror.keySet()) {
+                if (!listed.containsKey(id))
+                    removed.add(id);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : listed.entrySet()) {
+            if (entry.getValue() < 0) {
+                removed.add(entry.getKey());
+            } else {
+                stored.add(new StoredSession(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        for (String id : removed) {
+            mirror.remove(id);
+        }
+        for (StoredSession session : stored) {
+            mirror.put(session.getSessionId(), session.getRemoteSize());
+        }
+
+        return new StoredSessionChanges(complete, stored, removed);
     }
 
     public long capacity() {
         return Long.MAX_VALUE;
     }
 
+    /**
+     * Buffer whose contents can be uploaded without copying them out.
+     */
+    private static class UploadBuffer extends ByteArrayOutputStream {
+
+        UploadBuffer() {
+            super(BUFFER_SIZE);
+        }
+
+        byte[] getData() {
+            return buf;
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+    }
+
 }
@@ -0,0 +1,574 @@
+package core.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * SessionStorage keeping serialized, compressed sessions in fixed-size slabs of memory
+ * allocated by a subclass, such as direct buffers or memory-mapped files.
+ * <p>
+ * Sessions are appended to the current slab as records, and located through an index.
+ * Storing a session again appends a new record, forces it with forceSlab(), and marks the old one dead. When the slabs
+ * reach the capacity, the slab with the most dead bytes is compacted in place, unless the subclass
+ * disables it with compactsInPlace(), in which case the live records of that slab are moved to other slabs.
+ * Slabs that become empty are kept for reuse rather than released.
+ * The live records of a sparse slab can also be moved to other slabs ahead of time
+ * with compactSparsest(), which never overwrites a live record.
+ * <p>
+ * Each record starts with a header holding its status, a sequence number, and the lengths of the id
+ * and the data, followed by the id and the data, so that slabs that outlive the process can be scanned
+ * to rebuild the index. A zero status marks the end of the records in a slab.
+ * <p>
+ * Loads copy the data out of the slab under a shared lock, stores and removals take an exclusive lock.
+ * Serialization and compression happen outside the lock.
+ */
+public abstract class ArenaSessionStorage extends AbstractSessionStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArenaSessionStorage.class);
+
+    protected static final byte EMPTY = 0;
+    protected static final byte LIVE = 1;
+    protected static final byte DEAD = 2;
+    /** Status, sequence number, id length and data length. */
+    protected static final int HEADER_SIZE = 1 + 8 + 2 + 4;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final long capacity;
+    private final int slabSize;
+    private final int maxSlabs;
+    private final List<Slab> slabs = new ArrayList<>();
+    private final Map<String, Entry> index = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Slab current;
+    private long sequence = 0;
+
+    /**
+     * @param capacity Maximum number of bytes in all slabs.
+     * @param slabSize Size of a slab in bytes, which bounds the size of a session.
+     */
+    protected ArenaSessionStorage(long capacity, int slabSize) {
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.max(1, Math.min(Integer.MAX_VALUE, capacity / slabSize));
+        this.capacity = (long) maxSlabs * slabSize;
+    }
+
+    /**
+     * Allocates a new slab.
+     *
+     * @param index Number of the slab, starting from 0.
+     * @param size  Size of the slab in bytes.
+     * @return A buffer with the given capacity, whose contents are all zero.
+     */
+    protected abstract ByteBuffer allocateSlab(int index, int size) throws IOException;
+
+    /**
+     * Makes the records appended to a slab durable, before older copies of them are marked dead,
+     * so that a crash can not leave the dead mark on disk without the new record.
+     * Does nothing by default, for slabs that do not outlive the process.
+     *
+     * @param slab The slab that was appended to.
+     */
+    protected void forceSlab(ByteBuffer slab) {
+    }
+
+    /**
+     * Whether a full storage may move the live records of a slab to its beginning.
+     * A crash in the middle of such a move leaves a slab whose records can not be scanned,
+     * so slabs that outlive the process should only be emptied by moving records to other slabs.
+     *
+     * @return True by default.
+     */
+    protected boolean compactsInPlace() {
+        return true;
+    }
+
+    @Override
+    public boolean store(SessionData session) {
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(BUFFER_SIZE)) {
+            try (OutputStream out = getCompressor().compress(bytes)) {
+                getSerializer().writeSessionData(session, out);
+            }
+            return storeSerialized(session.getClusterId(), bytes.toByteArray());
+        } catch (IOException e) {
+            logger.warn("Error serializing session {}.", session.getClusterId(), e);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + idBytes.length + data.length;
+        if (idBytes.length > Short.MAX_VALUE || recordSize > slabSize) {
+            logger.warn("Session {} of {} bytes does not fit in a slab of {} bytes.", id, data.length, slabSize);
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Slab slab = reserve(recordSize);
+            if (slab == null) {
+                logger.warn("No room for session {} of {} bytes.", id, data.length);
+                return false;
+            }
+
+            Entry entry = append(slab, idBytes, data, ++sequence);
+            Entry old = index.put(id, entry);
+            if (old != null) {
+                forceSlab(slab.buffer);
+                kill(old);
+            }
+
+            return true;
+        } catch (IOException e) {
+            logger.warn("Error allocating a slab for session {}.", id, e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public SessionData load(String id) {
+        byte[] data = loadSerialized(id);
+        if (data == null)
+            return null;
+
+        try (InputStream in = getCompressor().decompress(new ByteArrayInputStream(data))) {
+            return getSerializer().readSessionData(in);
+        } catch (IOException e) {
+            logger.warn("Error reading session {}.", id, e);
+            return null;
+        }
+    }
+
+    /**
+     * Copies the serialized bytes of a session out of its slab.
+     *
+     * @param id The id of the session.
+     * @return The bytes, or null if the session is not stored.
+     */
+    public byte[] loadSerialized(String id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null)
+                return null;
+
+            byte[] data = new byte[entry.length];
+            ByteBuffer buffer = entry.slab.buffer.duplicate();
+            buffer.position(entry.dataOffset());
+            buffer.get(data);
+
+            return data;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id The id of the session.
+     * @return The number of serialized bytes of the session, or -1 if it is not stored.
+     */
+    public long sizeOf(String id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(id);
+            return entry != null ? entry.length : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.remove(id);
+            if (entry != null)
+                kill(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Entry entry = index.remove(id);
+                if (entry != null)
+                    kill(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<StoredSession> stored() {
+        lock.readLock().lock();
+        try {
+            List<StoredSession> sessions = new ArrayList<>(index.size());
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                sessions.add(new StoredSession(entry.getKey(), entry.getValue().length));
+            }
+            return sessions;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of bytes in the slabs allocated so far.
+     */
+    public long allocated() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Adds a slab that already holds records, and indexes its live records.
+     * Of two records with the same id, the one with the highest sequence number is kept.
+     * Meant for subclasses whose slabs outlive the process, before the storage is used.
+     *
+     * @param buffer The slab.
+     */
+    protected void recoverSlab(ByteBuffer buffer) {
+        lock.writeLock().lock();
+        try {
+            Slab slab = new Slab(slabs.size(), buffer);
+            slabs.add(slab);
+
+            ByteBuffer view = buffer.duplicate();
+            int offset = 0;
+            while (offset + HEADER_SIZE <= slabSize && view.get(offset) != EMPTY) {
+                byte status = view.get(offset);
+                long recordSequence = view.getLong(offset + 1);
+                int idLength = view.getShort(offset + 9);
+                int length = view.getInt(offset + 11);
+                int recordSize = HEADER_SIZE + idLength + length;
+                if (idLength < 0 || length < 0 || offset + recordSize > slabSize) {
+                    logger.warn("Corrupt record at offset {} of slab {}, ignoring the rest of the slab.", offset, slab.number);
+                    break;
+                }
+
+                if (status == LIVE) {
+                    byte[] idBytes = new byte[idLength];
+                    view.position(offset + HEADER_SIZE);
+                    view.get(idBytes);
+                    String id = new String(idBytes, StandardCharsets.UTF_8);
+
+                    Entry entry = new Entry(slab, offset, idLength, length, recordSequence);
+                    slab.live += recordSize;
+                    Entry old = index.get(id);
+                    if (old == null || old.sequence < recordSequence) {
+                        index.put(id, entry);
+                        if (old != null)
+                            kill(old);
+                    } else {
+                        view.put(offset, DEAD);
+                        slab.live -= recordSize;
+                        slab.dead += recordSize;
+                    }
+                } else {
+                    slab.dead += recordSize;
+                }
+
+                sequence = Math.max(sequence, recordSequence);
+                offset += recordSize;
+            }
+            slab.position = offset;
+
+            if (current == null || slab.free() > current.free())
+                current = slab;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the live records out of the slab with the largest share of dead bytes,
+     * if that share is at least a given ratio, so that the slab is emptied for reuse.
+     * Each record is appended to another slab with a new sequence number, and the originals
+     * are marked dead once the copies are forced, so that a scan finds a copy of every session at any point.
+     *
+     * @param minDeadRatio Minimum share of dead bytes among the bytes written to a slab.
+     * @return The number of bytes reclaimed, 0 if no slab qualified or the other slabs had no room.
+     */
+    public int compactSparsest(double minDeadRatio) {
+        lock.writeLock().lock();
+        try {
+            Slab sparsest = null;
+            for (Slab slab : slabs) {
+                if (slab.position > 0 && slab.dead >= minDeadRatio * slab.position
+                        && (sparsest == null || slab.dead * (long) sparsest.position > sparsest.dead * (long) slab.position))
+                    sparsest = slab;
+            }
+            if (sparsest == null || sparsest.dead == 0)
+                return 0;
+
+            List<Map.Entry<String, Entry>> entries = new ArrayList<>();
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                if (entry.getValue().slab == sparsest)
+                    entries.add(entry);
+            }
+            entries.sort(Comparator.comparingInt(entry -> entry.getValue().offset));
+
+            int reclaimed = sparsest.position;
+            Set<Slab> targets = new HashSet<>();
+            List<Entry> moved = new ArrayList<>(entries.size());
+            for (Map.Entry<String, Entry> entry : entries) {
+                Entry old = entry.getValue();
+                Slab slab;
+                try {
+                    slab = findRoom(old.recordSize(), sparsest);
+                } catch (IOException e) {
+                    logger.warn("Error allocating a slab during compaction.", e);
+                    slab = null;
+                }
+                if (slab == null) {
+                    logger.debug("No room to empty slab {}, {} live bytes left.", sparsest.number, sparsest.live);
+                    break;
+                }
+
+                byte[] idBytes = new byte[old.idLength];
+                byte[] data = new byte[old.length];
+                ByteBuffer buffer = sparsest.buffer.duplicate();
+                buffer.position(old.offset + HEADER_SIZE);
+                buffer.get(idBytes);
+                buffer.get(data);
+
+                entry.setValue(append(slab, idBytes, data, ++sequence));
+                targets.add(slab);
+                moved.add(old);
+            }
+
+            // The originals are only marked dead once their copies are durable
+            for (Slab target : targets) {
+                forceSlab(target.buffer);
+            }
+            for (Entry old : moved) {
+                kill(old);
+            }
+
+            // A slab whose records all died while it was current is not reset by kill()
+            if (sparsest.live != 0)
+                return 0;
+            sparsest.reset();
+
+            logger.debug("Emptied slab {}: {} live records moved, {} bytes reclaimed.", sparsest.number, entries.size(), reclaimed);
+            return reclaimed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds a slab with room for a record, allocating, compacting or emptying a slab if needed.
+     */
+    private Slab reserve(int recordSize) throws IOException {
+        Slab room = findRoom(recordSize, null);
+        if (room != null)
+            return room;
+
+        if (!compactsInPlace()) {
+            if (compactSparsest(0) == 0)
+                return null;
+            return findRoom(recordSize, null);
+        }
+
+        Slab sparsest = null;
+        for (Slab slab : slabs) {
+            if (sparsest == null || slab.dead > sparsest.dead)
+                sparsest = slab;
+        }
+
+        if (sparsest == null || sparsest.free() + sparsest.dead < recordSize)
+            return null;
+
+        compact(sparsest);
+        current = sparsest;
+
+        return current;
+    }
+
+    /**
+     * Finds a slab other than a given one with room for a record, allocating a slab if needed,
+     * and makes it the current slab.
+     */
+    private Slab findRoom(int recordSize, Slab excluded) throws IOException {
+        if (current != null && current != excluded && current.free() >= recordSize)
+            return current;
+
+        for (Slab slab : slabs) {
+            if (slab != excluded && slab.free() >= recordSize) {
+                current = slab;
+                return current;
+            }
+        }
+
+        if (slabs.size() < maxSlabs) {
+            Slab slab = new Slab(slabs.size(), allocateSlab(slabs.size(), slabSize));
+            slabs.add(slab);
+            current = slab;
+            return current;
+        }
+
+        return null;
+    }
+
+    private Entry append(Slab slab, byte[] idBytes, byte[] data, long recordSequence) {
+        int offset = slab.position;
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(offset + 1);
+        buffer.putLong(recordSequence);
+        buffer.putShort((short) idBytes.length);
+        buffer.putInt(data.length);
+        buffer.put(idBytes);
+        buffer.put(data);
+        if (buffer.position() + HEADER_SIZE <= slabSize)
+            buffer.put(buffer.position(), EMPTY);
+        // The status is written last, so that a scan never sees a partial record as live
+        buffer.put(offset, LIVE);
+
+        int recordSize = HEADER_SIZE + idBytes.length + data.length;
+        slab.position += recordSize;
+        slab.live += recordSize;
+
+        return new Entry(slab, offset, idBytes.length, data.length, recordSequence);
+    }
+
+    /**
+     * Marks a record dead, and empties its slab for reuse if nothing in it is live any more.
+     */
+    private void kill(Entry entry) {
+        Slab slab = entry.slab;
+        slab.buffer.put(entry.offset, DEAD);
+        slab.live -= entry.recordSize();
+        slab.dead += entry.recordSize();
+
+        if (slab.live == 0 && slab != current)
+            slab.reset();
+    }
+
+    /**
+     * Moves the live records of a slab to its beginning.
+     */
+    private void compact(Slab slab) {
+        List<String> ids = new ArrayList<>();
+        List<Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : index.entrySet()) {
+            if (entry.getValue().slab == slab) {
+                ids.add(entry.getKey());
+                entries.add(entry.getValue());
+            }
+        }
+        entries.sort(Comparator.comparingInt(entry -> entry.offset));
+
+        // Copy the records into the slab in order of offset, each moving towards the beginning
+        ByteBuffer buffer = slab.buffer.duplicate();
+        int position = 0;
+        Map<Entry, Entry> moved = new IdentityHashMap<>();
+        for (Entry entry : entries) {
+            int recordSize = entry.recordSize();
+            if (entry.offset != position) {
+                byte[] record = new byte[recordSize];
+                buffer.position(entry.offset);
+                buffer.get(record);
+                buffer.position(position);
+                buffer.put(record);
+            }
+            moved.put(entry, new Entry(slab, position, entry.idLength, entry.length, entry.sequence));
+            position += recordSize;
+        }
+        if (position + HEADER_SIZE <= slabSize)
+            buffer.put(position, EMPTY);
+
+        for (String id : ids) {
+            index.put(id, moved.get(index.get(id)));
+        }
+
+        logger.debug("Compacted slab {}: {} live bytes, {} freed.", slab.number, position, slab.dead);
+        slab.position = position;
+        slab.live = position;
+        slab.dead = 0;
+    }
+
+    private class Slab {
+
+        final int number;
+        final ByteBuffer buffer;
+        int position = 0;
+        int live = 0;
+        int dead = 0;
+
+        Slab(int number, ByteBuffer buffer) {
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        int free() {
+            return slabSize - position;
+        }
+
+        void reset() {
+            buffer.put(0, EMPTY);
+            position = 0;
+            live = 0;
+            dead = 0;
+        }
+    }
+
+    private static class Entry {
+
+        final Slab slab;
+        final int offset;
+        final int idLength;
+        final int length;
+        final long sequence;
+
+        Entry(Slab slab, int offset, int idLength, int length, long sequence) {
+            this.slab = slab;
+            this.offset = offset;
+            this.idLength = idLength;
+            this.length = length;
+            this.sequence = sequence;
+        }
+
+        int dataOffset() {
+            return offset + HEADER_SIZE + idLength;
+        }
+
+        int recordSize() {
+            return HEADER_SIZE + idLength + length;
+        }
+    }
+
+}
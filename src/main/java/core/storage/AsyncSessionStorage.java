@@ -0,0 +1,37 @@
+package core.storage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of the SessionStorage interface.
+ * Implemented natively by storages that can overlap their I/O,
+ * and by the AsyncStorageAdapter for blocking storages.
+ */
+public interface AsyncSessionStorage {
+
+    /**
+     * Stores a session without waiting for the storage.
+     *
+     * @param session The session to be stored.
+     * @return A future completed with true if the session was successfully saved,
+     * else false.
+     */
+    public CompletableFuture<Boolean> storeAsync(SessionData session);
+
+    /**
+     * Removes a session without waiting for the storage.
+     *
+     * @param id The id of the session to be removed.
+     * @return A future completed once the session has been removed.
+     */
+    public CompletableFuture<Void> removeAsync(String id);
+
+    /**
+     * Loads a session without waiting for the storage.
+     *
+     * @param id String identifying a session.
+     * @return A future completed with the SessionData object, or null if the session does not exist.
+     */
+    public CompletableFuture<SessionData> loadAsync(String id);
+
+}
@@ -0,0 +1,81 @@
+package core.storage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Adapts a blocking SessionStorage to the AsyncSessionStorage interface,
+ * by running its operations on an Executor.
+ */
+public class AsyncStorageAdapter implements AsyncSessionStorage {
+
+    private static ExecutorService sharedExecutor;
+
+    private final SessionStorage storage;
+    private final Executor executor;
+
+    /**
+     * @param storage  The blocking storage.
+     * @param executor Executor running the blocking operations.
+     */
+    public AsyncStorageAdapter(SessionStorage storage, Executor executor) {
+        this.storage = storage;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns an asynchronous view of a storage, which is the storage itself
+     * if it implements AsyncSessionStorage.
+     *
+     * @param storage  The storage.
+     * @param executor Executor running the operations of a blocking storage.
+     * @return An AsyncSessionStorage backed by the storage.
+     */
+    public static AsyncSessionStorage asAsync(SessionStorage storage, Executor executor) {
+        if (storage instanceof AsyncSessionStorage)
+            return (AsyncSessionStorage) storage;
+        else
+            return new AsyncStorageAdapter(storage, executor);
+    }
+
+    /**
+     * Returns an asynchronous view of a storage, running the operations
+     * of a blocking storage on a shared pool of daemon threads.
+     *
+     * @param storage The storage.
+     * @return An AsyncSessionStorage backed by the storage.
+     */
+    public static AsyncSessionStorage asAsync(SessionStorage storage) {
+        return asAsync(storage, getSharedExecutor());
+    }
+
+    private static synchronized Executor getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "SessionStorageIO");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return sharedExecutor;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> storeAsync(SessionData session) {
+        return CompletableFuture.supplyAsync(() -> storage.store(session), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(String id) {
+        return CompletableFuture.runAsync(() -> storage.remove(id), executor);
+    }
+
+    @Override
+    public CompletableFuture<SessionData> loadAsync(String id) {
+        return CompletableFuture.supplyAsync(() -> storage.load(id), executor);
+    }
+
+}
@@ -1,17 +1,32 @@
 package core.storage;
 
+import core.util.PropertyParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * SessionStorage saving sessions to the local filesystem.
+ * <p>
+ * Each session is written to a temporary file that is renamed over the session file,
+ * so that a crash during a write leaves either the old or the new session, never a partial one.
+ * Temporary files left behind by a crash are deleted on startup, since their session was never reported as stored.
+ * How the writes are made durable is read from file.conf:
+ * <ul>
+ * <li>none: files are never synced, and sessions may be lost if the machine crashes. This is the default.</li>
+ * <li>sync: every file is synced before it is renamed, and the directory after.</li>
+ * <li>group: files are synced before they are renamed, as in sync mode, but renames share a single sync of the directory.
+ * storeAll() writes and syncs the files of the whole group before renaming any of them,
+ * and concurrent calls to store() join the directory sync already in progress.
+ * Every file is still synced on its own, so group mode only costs less than sync mode
+ * when sessions are stored in batches or from several threads at once.</li>
+ * </ul>
+ * In every mode, a session is only reported as stored once its file is as durable as the mode makes it.
  *
  * @author Sebastian Lindholm
  */
@@ -19,52 +34,135 @@ public class FileSessionStorage extends AbstractSessionStorage {
 
     private static final Logger logger = LoggerFactory.getLogger(FileSessionStorage.class);
 
+    /**
+     * How stored sessions are made durable.
+     */
+    public enum Durability {
+        NONE,
+        SYNC,
+        GROUP
+    }
+
+    private static final String fileConfig = "file.conf";
+    private static final String durabilityParam = "durability";
+    private static final String groupSizeParam = "groupSize";
+    private static final Durability DEFAULT_DURABILITY = Durability.NONE;
+    private static final int DEFAULT_GROUP_SIZE = 1000;
+
     private static final String suffix = ".session";
+    private static final String tempSuffix = ".tmp";
     private static final String directoryName = "sessions";
 
     private final Path directory;
+    private final Durability durability;
+    private final int groupSize;
+    private final AtomicLong tempCounter = new AtomicLong();
+    /** Renames waiting for a sync of the directory, and renames covered by a completed sync, in group mode. */
+    private long renames = 0;
+    private long syncedRenames = 0;
+    private boolean syncingDirectory = false;
 
     public FileSessionStorage() throws IOException {
-        this.directory = Paths.get(directoryName);
+        this(Paths.get(directoryName), readDurability(), readGroupSize());
+    }
+
+    /**
+     * @param directory  Directory of the session files.
+     * @param durability How stored sessions are made durable.
+     * @param groupSize  Maximum number of sessions written before they are renamed together by storeAll(), in group mode.
+     * @throws IOException If the directory can not be created.
+     */
+    public FileSessionStorage(Path directory, Durability durability, int groupSize) throws IOException {
+        this.directory = directory;
+        this.durability = durability;
+        this.groupSize = Math.max(1, groupSize);
         Files.createDirectories(directory);
+        deleteTempFiles();
+        logger.info("File session storage in {}: {} durability.", directory, durability);
     }
 
     public boolean store(SessionData session) {
-        String fileName = session.getClusterId() + suffix;
-        File file = Paths.get(directory.toString(), fileName).toFile();
-        boolean success = false;
+        Path temp = write(session);
+        return temp != null && install(session.getClusterId(), temp);
+    }
+
+    /**
+     * Writes a session to a new temporary file.
+     *
+     * @return The temporary file, or null if the session could not be written.
+     */
+    private Path write(SessionData session) {
+        Path temp = tempPath(session.getClusterId());
 
         try (
-                OutputStream out = getCompressor().compress(new BufferedOutputStream(new FileOutputStream(file), 51200))
+                OutputStream out = getCompressor().compress(new BufferedOutputStream(new FileOutputStream(temp.toFile()), 51200))
         ) {
             getSerializer().writeSessionData(session, out);
             out.flush();
-            success = true;
-        } catch (FileNotFoundException e) {
-            logger.warn("Could not find file when writing session to disk", e);
+            return temp;
+        } catch (IOException e) {
+            logger.warn("Error when storing session {}.", session.getClusterId(), e);
+        }
+
+        discard(temp);
+        return null;
+    }
+
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        Path temp = tempPath(id);
+        try {
+            Files.write(temp, data);
         } catch (IOException e) {
-            logger.warn("Error when storing session {}.", e);
+            logger.warn("Error when storing session {}.", id, e);
+            return discard(temp);
         }
 
-        return success;
+        return install(id, temp);
+    }
+
+    /**
+     * Stores all sessions as groups in group mode: the files of a group are written and synced,
+     * then renamed together, followed by a single sync of the directory.
+     */
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        if (durability != Durability.GROUP)
+            return super.storeAll(sessions);
+
+        Set<String> stored = new HashSet<>();
+        Map<String, Path> group = new LinkedHashMap<>();
+
+        for (SessionData session : sessions) {
+            Path temp = write(session);
+            if (temp == null)
+                continue;
+            // Only the last write of a session in the group is kept
+            Path replaced = group.put(session.getClusterId(), temp);
+            if (replaced != null)
+                discard(replaced);
+            if (group.size() >= groupSize)
+                commit(group, stored);
+        }
+        commit(group, stored);
+
+        return stored;
     }
 
     public SessionData load(String id) {
-        String fileName = id + suffix;
-        File file = Paths.get(directory.toString(), fileName).toFile();
+        File file = sessionPath(id).toFile();
         SessionData data = null;
 
         if (file.exists()) {
             try (
                     InputStream fileIn = new FileInputStream(file);
-                    InputStream in = getCompressor().decompress(new BufferedInputStream(fileIn, fileIn.available()))
+                    InputStream in = getCompressor().decompress(new BufferedInputStream(fileIn, Math.max(fileIn.available(), 1)))
             ) {
                 data = getSerializer().readSessionData(in);
-                in.close();
             } catch (FileNotFoundException e) {
-                logger.debug("Could not find file when attempting to load session.", e);
+                logger.debug("Could not find file when attempting to load session {}.", id, e);
             } catch (IOException e) {
-                logger.warn("Error while attempting to load a session from disk.", e);
+                logger.warn("Error while attempting to load session {} from disk.", id, e);
             }
         }
 
@@ -72,12 +170,21 @@ public class FileSessionStorage extends AbstractSessionStorage {
     }
 
     public void remove(String id) {
-        String fileName = id + suffix;
-        Path path = Paths.get(directory.toString(), fileName);
-        File file = path.toFile();
-        if (file.delete()) {
-            logger.warn("Failed to delete file for session {}.", id);
+        try {
+            Files.deleteIfExists(sessionPath(id));
+        } catch (IOException e) {
+            logger.warn("Failed to delete file for session {}.", id, e);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        for (String id : ids) {
+            remove(id);
         }
+
+        if (durability != Durability.NONE)
+            syncDirectory();
     }
 
     public List<StoredSession> stored() {
@@ -92,7 +199,8 @@ public class FileSessionStorage extends AbstractSessionStorage {
         List<StoredSession> sessions = new ArrayList<StoredSession>(files.length);
 
         for (File file : files) {
-            sessions.add(new StoredSession(file.getName().substring(0, file.getName().lastIndexOf(".session")), file.length()));
+            String id = file.getName().substring(0, file.getName().lastIndexOf(suffix));
+            sessions.add(new StoredSession(id, file.length()));
         }
 
         return sessions;
@@ -102,4 +210,220 @@ public class FileSessionStorage extends AbstractSessionStorage {
         return directory.toFile().getTotalSpace();
     }
 
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Makes a written temporary file the file of a session, as the durability mode prescribes.
+     */
+    private boolean install(String id, Path temp) {
+        switch (durability) {
+
+            case GROUP:
+                // The file must be complete on disk before it can replace the old one
+                if (!force(temp))
+                    return discard(temp);
+                if (!rename(temp, sessionPath(id)))
+                    return false;
+                awaitDirectorySync();
+                return true;
+
+            case SYNC:
+                if (!force(temp))
+                    return discard(temp);
+                if (!rename(temp, sessionPath(id)))
+                    return false;
+                syncDirectory();
+                return true;
+
+            default:
+                return rename(temp, sessionPath(id));
+        }
+    }
+
+    /**
+     * Syncs the written temporary files of a group, renames those that could be synced,
+     * and syncs the directory once. The group is emptied.
+     *
+     * @param group  Temporary file of each session in the group.
+     * @param stored Receives the ids of the sessions that were committed.
+     */
+    private void commit(Map<String, Path> group, Set<String> stored) {
+        if (group.isEmpty())
+            return;
+
+        List<String> synced = new ArrayList<>(group.size());
+        for (Map.Entry<String, Path> entry : group.entrySet()) {
+            if (force(entry.getValue()))
+                synced.add(entry.getKey());
+            else
+                discard(entry.getValue());
+        }
+
+        List<String> renamed = new ArrayList<>(synced.size());
+        for (String id : synced) {
+            if (rename(group.get(id), sessionPath(id)))
+                renamed.add(id);
+        }
+
+        if (!renamed.isEmpty())
+            awaitDirectorySync();
+        stored.addAll(renamed);
+        logger.debug("Committed {} sessions, {} failed.", renamed.size(), group.size() - renamed.size());
+        group.clear();
+    }
+
+    /**
+     * Waits for a sync of the directory that started after the caller's renames, in group mode.
+     * Threads that arrive while a sync is in progress are covered together by the next one.
+     */
+    private void awaitDirectorySync() {
+        boolean interrupted = false;
+        long target;
+        try {
+            synchronized (this) {
+                long ticket = ++renames;
+                while (syncingDirectory && syncedRenames < ticket) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // The rename has happened, so the sync can not be abandoned
+                        interrupted = true;
+                    }
+                }
+                if (syncedRenames >= ticket)
+                    return;
+                syncingDirectory = true;
+                target = renames;
+            }
+
+            try {
+                syncDirectory();
+            } finally {
+                synchronized (this) {
+                    syncedRenames = Math.max(syncedRenames, target);
+                    syncingDirectory = false;
+                    notifyAll();
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean force(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+            return true;
+        } catch (NoSuchFileException e) {
+            // Superseded by a newer write
+            return false;
+        } catch (IOException e) {
+            logger.warn("Error when syncing session file {}.", path, e);
+            return false;
+        }
+    }
+
+    private boolean rename(Path temp, Path target) {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            logger.warn("Error when renaming session file {}.", temp, e);
+            return discard(temp);
+        }
+    }
+
+    /**
+     * Deletes a temporary file.
+     *
+     * @return false, for use as the result of a failed store.
+     */
+    private boolean discard(Path temp) {
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            logger.debug("Could not delete temporary file {}.", temp, e);
+        }
+        return false;
+    }
+
+    /**
+     * Syncs the directory entries, where the file system supports it.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync the session directory.", e);
+        }
+    }
+
+    /**
+     * Deletes the temporary files left behind by a crash.
+     */
+    private void deleteTempFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + tempSuffix)) {
+            for (Path path : stream) {
+                discard(path);
+            }
+        }
+    }
+
+    private Path sessionPath(String id) {
+        return directory.resolve(id + suffix);
+    }
+
+    private Path tempPath(String id) {
+        return directory.resolve(id + suffix + "." + tempCounter.incrementAndGet() + tempSuffix);
+    }
+
+    private static Durability readDurability() {
+        String value = readConfig(durabilityParam);
+        if (value != null) {
+            try {
+                return Durability.valueOf(value.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                logger.warn("Unknown {}: {}. Defaulting to {}.", durabilityParam, value, DEFAULT_DURABILITY);
+            }
+        }
+
+        return DEFAULT_DURABILITY;
+    }
+
+    private static int readGroupSize() {
+        String value = readConfig(groupSizeParam);
+        if (value != null) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                logger.warn("Unable to parse {}: {}. Defaulting to {}.", groupSizeParam, value, DEFAULT_GROUP_SIZE);
+            }
+        }
+
+        return DEFAULT_GROUP_SIZE;
+    }
+
+    private static String readConfig(String key) {
+        try (
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", fileConfig))
+        ) {
+            Map<String, String> config = parser.parse();
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(key))
+                    return entry.getValue();
+            }
+        } catch (FileNotFoundException e) {
+            logger.debug("No {} found.", fileConfig);
+        } catch (IOException e) {
+            logger.warn("Failed to read {} from {}!", key, fileConfig);
+        }
+
+        return null;
+    }
+
 }
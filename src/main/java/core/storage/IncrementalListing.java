@@ -0,0 +1,18 @@
+package core.storage;
+
+/**
+ * Implemented by storages that can list the changes to their contents since the previous listing,
+ * so that the stored sessions can be kept up to date without listing the whole storage.
+ */
+public interface IncrementalListing {
+
+    /**
+     * Lists the sessions stored, resized or removed since the previous call.
+     * The first call, and any call after the storage has lost track of the changes,
+     * lists every stored session, along with every previously listed session that has since been removed.
+     *
+     * @return The changes since the previous call.
+     */
+    public StoredSessionChanges changes();
+
+}
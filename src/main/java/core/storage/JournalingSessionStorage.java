@@ -0,0 +1,259 @@
+package core.storage;
+
+import core.SessionJournal;
+import core.storage.compressor.StreamCompressor;
+import core.storage.serializer.SessionSerializer;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SessionStorage decorator that records every store and remove in a SessionJournal,
+ * and keeps track of which sessions are held by the underlying storage
+ * so that membership can be checked without listing the whole storage.
+ */
+public class JournalingSessionStorage implements SessionStorage, AsyncSessionStorage, IncrementalListing {
+
+    private final SessionStorage storage;
+    private final AsyncSessionStorage asyncStorage;
+    private final SessionJournal journal;
+    private final Set<String> storedIds = ConcurrentHashMap.newKeySet();
+    private final Set<String> changedWhileListing = ConcurrentHashMap.newKeySet();
+    private volatile boolean listing = false;
+
+    public JournalingSessionStorage(SessionStorage storage, SessionJournal journal) {
+        this.storage = storage;
+        this.asyncStorage = AsyncStorageAdapter.asAsync(storage);
+        this.journal = journal;
+    }
+
+    /**
+     * @return The underlying storage.
+     */
+    public SessionStorage getDelegate() {
+        return storage;
+    }
+
+    /**
+     * Checks whether the underlying storage implements the asynchronous operations natively,
+     * rather than through an AsyncStorageAdapter.
+     *
+     * @return true if the storage is natively asynchronous, else false.
+     */
+    public boolean isNativelyAsync() {
+        return storage instanceof AsyncSessionStorage;
+    }
+
+    @Override
+    public boolean store(SessionData session) {
+        boolean success = storage.store(session);
+        if (success) {
+            added(session.getClusterId());
+            journal.mark(session.getClusterId());
+        }
+        return success;
+    }
+
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        boolean success = storage.storeSerialized(id, data);
+        if (success) {
+            added(id);
+            journal.mark(id);
+        }
+        return success;
+    }
+
+    @Override
+    public void remove(String id) {
+        storage.remove(id);
+        removed(id);
+        journal.mark(id);
+    }
+
+    @Override
+    public SessionData load(String id) {
+        return storage.load(id);
+    }
+
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        Set<String> stored = storage.storeAll(sessions);
+        for (String id : stored) {
+            added(id);
+            journal.mark(id);
+        }
+        return stored;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        storage.removeAll(ids);
+        for (String id : ids) {
+            removed(id);
+            journal.mark(id);
+        }
+    }
+
+    @Override
+    public Map<String, SessionData> loadAll(Collection<String> ids) {
+        return storage.loadAll(ids);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> storeAsync(SessionData session) {
+        return asyncStorage.storeAsync(session).thenApply(success -> {
+            if (success) {
+                added(session.getClusterId());
+                journal.mark(session.getClusterId());
+            }
+            return success;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(String id) {
+        return asyncStorage.removeAsync(id).thenRun(() -> {
+            removed(id);
+            journal.mark(id);
+        });
+    }
+
+    @Override
+    public CompletableFuture<SessionData> loadAsync(String id) {
+        return asyncStorage.loadAsync(id);
+    }
+
+    /**
+     * Lists the underlying storage, and resynchronizes the known membership with the result.
+     * Only the differences are applied, and sessions stored or removed through this storage
+     * while listing keep the membership they were given, as the listing may predate them.
+     */
+    @Override
+    public synchronized List<StoredSession> stored() {
+        changedWhileListing.clear();
+        listing = true;
+        try {
+            List<StoredSession> sessions = storage.stored();
+            Set<String> listed = new HashSet<>();
+            for (StoredSession session : sessions) {
+                listed.add(session.getSessionId());
+            }
+
+            for (String id : storedIds) {
+                if (!listed.contains(id) && !changedWhileListing.contains(id))
+                    storedIds.remove(id);
+            }
+            for (String id : listed) {
+                if (!changedWhileListing.contains(id))
+                    storedIds.add(id);
+            }
+            return sessions;
+        } finally {
+            listing = false;
+            changedWhileListing.clear();
+        }
+    }
+
+    /**
+     * Lists the changes to the underlying storage, and applies them to the known membership,
+     * except to sessions stored or removed through this storage while listing.
+     * Storages without incremental listing are listed in full, and compared to the known membership.
+     */
+    @Override
+    public synchronized StoredSessionChanges changes() {
+        if (isIncremental()) {
+            changedWhileListing.clear();
+            listing = true;
+            try {
+                StoredSessionChanges changes = ((IncrementalListing) storage).changes();
+                for (String id : changes.getRemoved()) {
+                    if (!changedWhileListing.contains(id))
+                        storedIds.remove(id);
+                }
+                for (StoredSession session : changes.getStored()) {
+                    if (!changedWhileListing.contains(session.getSessionId()))
+                        storedIds.add(session.getSessionId());
+                }
+                return changes;
+            } finally {
+                listing = false;
+                changedWhileListing.clear();
+            }
+        }
+
+        Set<String> removed = new HashSet<>(storedIds);
+        List<StoredSession> sessions = stored();
+        for (StoredSession session : sessions) {
+            removed.remove(session.getSessionId());
+        }
+        return new StoredSessionChanges(true, sessions, removed);
+    }
+
+    /**
+     * Checks whether the underlying storage can list its changes without listing all its sessions.
+     *
+     * @return true if the storage implements IncrementalListing, else false.
+     */
+    public boolean isIncremental() {
+        return storage instanceof IncrementalListing;
+    }
+
+    /**
+     * Checks whether a session is held by the underlying storage,
+     * as far as known since the last call to stored().
+     *
+     * @param id The id of the session.
+     * @return true if the session is stored, else false.
+     */
+    public boolean isStored(String id) {
+        return storedIds.contains(id);
+    }
+
+    private void added(String id) {
+        storedIds.add(id);
+        if (listing)
+            changedWhileListing.add(id);
+    }
+
+    private void removed(String id) {
+        storedIds.remove(id);
+        if (listing)
+            changedWhileListing.add(id);
+    }
+
+    @Override
+    public void sync() {
+        storage.sync();
+    }
+
+    @Override
+    public long capacity() {
+        return storage.capacity();
+    }
+
+    @Override
+    public SessionSerializer getSerializer() {
+        return storage.getSerializer();
+    }
+
+    @Override
+    public void setSerializer(SessionSerializer serializer) {
+        storage.setSerializer(serializer);
+    }
+
+    @Override
+    public StreamCompressor getCompressor() {
+        return storage.getCompressor();
+    }
+
+    @Override
+    public void setCompressor(StreamCompressor compressor) {
+        storage.setCompressor(compressor);
+    }
+}
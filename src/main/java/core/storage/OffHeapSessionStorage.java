@@ -0,0 +1,77 @@
+package core.storage;
+
+import core.util.PropertyParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * SessionStorage keeping serialized, compressed sessions in direct buffers outside the heap,
+ * where they are neither scanned nor moved by the garbage collector.
+ * Restoring a session costs a copy and a deserialization rather than a remote round trip,
+ * so this suits sessions that are idle but likely to return.
+ * The capacity and slab size are read from offheap.conf, in megabytes,
+ * and the capacity should fit within -XX:MaxDirectMemorySize.
+ * Sessions are lost when the process exits.
+ */
+public class OffHeapSessionStorage extends ArenaSessionStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapSessionStorage.class);
+
+    private static final String offHeapConfig = "offheap.conf";
+    private static final String capacityParam = "capacity";
+    private static final String slabSizeParam = "slabSize";
+    private static final double DEFAULT_CAPACITY = 256;
+    private static final double DEFAULT_SLAB_SIZE = 4;
+    private static final long MEGABYTE = 1048576;
+
+    public OffHeapSessionStorage() {
+        this(readConfig(capacityParam, DEFAULT_CAPACITY), readConfig(slabSizeParam, DEFAULT_SLAB_SIZE));
+    }
+
+    private OffHeapSessionStorage(double capacity, double slabSize) {
+        this((long) (capacity * MEGABYTE), (int) (slabSize * MEGABYTE));
+    }
+
+    /**
+     * @param capacity Maximum number of bytes held off heap.
+     * @param slabSize Size of a direct buffer in bytes, which bounds the size of a session.
+     */
+    public OffHeapSessionStorage(long capacity, int slabSize) {
+        super(capacity, slabSize);
+        logger.info("Off-heap session storage: {} bytes in slabs of {} bytes.", capacity(), slabSize);
+    }
+
+    @Override
+    protected ByteBuffer allocateSlab(int index, int size) throws IOException {
+        try {
+            return ByteBuffer.allocateDirect(size);
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Direct memory exhausted after " + index + " slabs.", e);
+        }
+    }
+
+    private static double readConfig(String key, double defaultValue) {
+        try (
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", offHeapConfig))
+        ) {
+            Map<String, String> config = parser.parse();
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(key))
+                    return Double.parseDouble(entry.getValue());
+            }
+        } catch (FileNotFoundException e) {
+            logger.warn("No {} found!", offHeapConfig);
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Failed to read {} from {}!", key, offHeapConfig);
+        }
+
+        return defaultValue;
+    }
+
+}
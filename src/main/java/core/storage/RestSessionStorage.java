@@ -1,55 +1,143 @@
 package core.storage;
 
 import core.util.ByteCountingInputStream;
+import core.util.PropertyParser;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
 import org.glassfish.jersey.client.ClientConfig;
 import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.perf4j.StopWatch;
 import org.perf4j.slf4j.Slf4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 
 /**
  * Saves sessions in a RESTfullish web service.
  * This SessionStorage is intended for benchmarking purposes.
+ * <p>
+ * The stored sessions are mirrored locally and kept up to date from sessions/changes,
+ * which lists the sessions stored, resized or removed since a cursor returned by the previous request.
+ * The response is a long epoch, a long cursor, a boolean telling whether the listing is complete,
+ * an int count and, for each session, its id and size, or -1 if it was removed.
+ * A service that does not know the epoch or has discarded the changes since the cursor
+ * answers with a complete listing. Services without sessions/changes are listed in full from sessions/stored.
+ * <p>
+ * The address of the service is read from rest.conf.
+ * Requests go through a pool of connections kept alive between requests, sized in rest.conf.
+ * Sessions stored by store() and storeAsync() are serialized straight into the connection, in chunks,
+ * rather than into a buffer first, unless streaming is disabled in rest.conf.
  *
  * @author Sebastian Lindholm
  */
-public class RestSessionStorage extends AbstractSessionStorage {
+public class RestSessionStorage extends AbstractSessionStorage implements AsyncSessionStorage, IncrementalListing {
 
     private static final Logger logger = LoggerFactory.getLogger(RestSessionStorage.class);
     private static final Logger bandwidthLogger = LoggerFactory.getLogger("bandwidth");
     private static final Logger perf4jLogger = LoggerFactory.getLogger("org.perf4j.TimingLogger");
-    private static final String address = "http://cloud2:8080";
     private static final int BUFFER_SIZE = 16 * 1024;
 
+    private static final String restConfig = "rest.conf";
+    private static final String addressParam = "address";
+    private static final String maxConnectionsParam = "maxConnections";
+    private static final String connectTimeoutParam = "connectTimeout";
+    private static final String readTimeoutParam = "readTimeout";
+    private static final String streamingParam = "streaming";
+    private static final String DEFAULT_ADDRESS = "http://localhost:8080";
+    private static final int DEFAULT_MAX_CONNECTIONS = 64;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 3000;
+    private static final int DEFAULT_READ_TIMEOUT = 5000;
+    private static final boolean DEFAULT_STREAMING = true;
+
     private WebTarget resource;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final boolean streaming;
 
+    private final Map<String, Long> mirror = new ConcurrentHashMap<>();
+    private long epoch;
+    private long cursor = -1;
+    private boolean incremental = true;
 
     public RestSessionStorage() {
+        this(readConfig(addressParam, DEFAULT_ADDRESS));
+    }
+
+    /**
+     * @param address Base address of the service, e.g. http://localhost:8080.
+     */
+    public RestSessionStorage(String address) {
+        this(address,
+                readConfig(maxConnectionsParam, DEFAULT_MAX_CONNECTIONS),
+                readConfig(connectTimeoutParam, DEFAULT_CONNECT_TIMEOUT),
+                readConfig(readTimeoutParam, DEFAULT_READ_TIMEOUT),
+                readConfig(streamingParam, DEFAULT_STREAMING));
+    }
+
+    /**
+     * @param address        Base address of the service, e.g. http://localhost:8080.
+     * @param maxConnections Number of pooled connections to the service,
+     *                       or 0 to open a connection per request through HttpURLConnection.
+     * @param connectTimeout Connect timeout in milliseconds.
+     * @param readTimeout    Read timeout in milliseconds.
+     * @param streaming      true to serialize sessions straight into the connection, else false.
+     */
+    public RestSessionStorage(String address, int maxConnections, int connectTimeout, int readTimeout, boolean streaming) {
         ClientConfig config = new ClientConfig();
 
-        config.property(ClientProperties.CONNECT_TIMEOUT, 3000);
-        config.property(ClientProperties.READ_TIMEOUT, 5000);
+        config.property(ClientProperties.CONNECT_TIMEOUT, connectTimeout);
+        config.property(ClientProperties.READ_TIMEOUT, readTimeout);
+        config.property(ClientProperties.REQUEST_ENTITY_PROCESSING,
+                streaming ? RequestEntityProcessing.CHUNKED : RequestEntityProcessing.BUFFERED);
+
+        if (maxConnections > 0) {
+            // All requests go to the same service, so a single route may use the whole pool
+            connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(maxConnections);
+            connectionManager.setDefaultMaxPerRoute(maxConnections);
+            config.property(ApacheClientProperties.CONNECTION_MANAGER, connectionManager);
+            config.connectorProvider(new ApacheConnectorProvider());
+            // Asynchronous requests beyond the pool would only wait for a connection
+            config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, maxConnections);
+        } else {
+            connectionManager = null;
+        }
+        this.streaming = streaming;
 
         Client client = ClientBuilder.newClient(config);
         resource = client.target(address);
+        logger.info("REST session storage at {}: {} pooled connections, streaming {}.", address, maxConnections, streaming);
     }
 
     @Override
     public boolean store(SessionData session) {
+        if (streaming) {
+            SessionOutput output = new SessionOutput(session);
+            boolean success = put(session.getClusterId(), Entity.entity(output, MediaType.APPLICATION_OCTET_STREAM));
+            if (success)
+                bandwidthLogger.info(", STORE, {}, {}", output.size, output.serializationTime);
+            return success;
+        }
+
         boolean success = false;
 
         try (ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE)) {
@@ -58,46 +146,295 @@ public class RestSessionStorage extends AbstractSessionStorage {
             serializaion.stop();
 
             byte[] data = out.toByteArray();
-            InputStream in = new ByteArrayInputStream(data);
+            success = put(session.getClusterId(), Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+            if (success)
+                bandwidthLogger.info(", STORE, {}, {}", data.length, serializaion.getElapsedTime());
+        } catch (IOException e) {
+            logger.warn("Error storing session.", e);
+        }
 
-            StopWatch store = new StopWatch("STORE");
-            WebTarget target = resource.path("sessions").path(session.getClusterId());
-            Response response = target.request(MediaType.TEXT_PLAIN).put(Entity.entity(in, MediaType.APPLICATION_OCTET_STREAM));
+        return success;
+    }
 
-            if (response.getStatus() == 200) {
-                store.stop("STORE_OK");
-                bandwidthLogger.info(", STORE, {}, {}", data.length, serializaion.getElapsedTime());
-                success = true;
-            } else {
-                store.stop("STORE_FAIL");
-            }
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        boolean success = put(id, Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM));
+        if (success)
+            bandwidthLogger.info(", STORE, {}, {}", data.length, 0);
+        return success;
+    }
 
-            in.close();
+    /**
+     * Uploads a session.
+     *
+     * @param id     Id of the session.
+     * @param entity The serialized session, or a SessionOutput serializing it.
+     * @return true if the session was successfully saved, else false.
+     */
+    private boolean put(String id, Entity<?> entity) {
+        StopWatch store = new StopWatch("STORE");
+        WebTarget target = resource.path("sessions").path(id);
+        Response response;
+        try {
+            response = target.request(MediaType.TEXT_PLAIN).put(entity);
+        } catch (ProcessingException e) {
+            logger.warn("Error storing session {}.", id, e);
+            store.stop("STORE_FAIL");
+            return false;
+        }
 
-            response.close();
+        boolean success = response.getStatus() == 200;
+        store.stop(success ? "STORE_OK" : "STORE_FAIL");
+        response.close();
+
+        return success;
+    }
+
+    /**
+     * Request body serializing a session straight into the connection.
+     */
+    private class SessionOutput implements StreamingOutput {
+
+        private final SessionData session;
+        private volatile long size;
+        private volatile long serializationTime;
+
+        SessionOutput(SessionData session) {
+            this.session = session;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            // The serializer closes the stream, which is left to the connector
+            CountingOutputStream counting = new CountingOutputStream(new CloseShieldOutputStream(out));
+            StopWatch serialization = new Slf4JStopWatch("SER", perf4jLogger);
+            getSerializer().writeSessionData(session, getCompressor().compress(counting));
+            serialization.stop();
+
+            size = counting.getByteCount();
+            serializationTime = serialization.getElapsedTime();
+        }
+
+    }
+
+    /**
+     * Serializes all sessions, then issues the PUT requests without waiting
+     * for each response before sending the next one.
+     * Responses are handled as they arrive, releasing their connections to the pool,
+     * so that later requests can not starve the one waited for.
+     */
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        Map<String, CompletableFuture<Boolean>> requests = new LinkedHashMap<>();
+        StopWatch store = new StopWatch("STORE_BATCH");
+
+        for (SessionData session : sessions) {
+            requests.put(session.getClusterId(), storeAsync(session));
+        }
+
+        Set<String> stored = new HashSet<>();
+        for (Map.Entry<String, CompletableFuture<Boolean>> request : requests.entrySet()) {
+            if (Boolean.TRUE.equals(await(request.getValue())))
+                stored.add(request.getKey());
+        }
+
+        store.stop(stored.size() == requests.size() ? "STORE_BATCH_OK" : "STORE_BATCH_FAIL");
 
+        return stored;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        List<CompletableFuture<Void>> requests = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            requests.add(removeAsync(id));
+        }
+
+        for (CompletableFuture<Void> request : requests) {
+            await(request);
+        }
+    }
+
+    @Override
+    public Map<String, SessionData> loadAll(Collection<String> ids) {
+        Map<String, CompletableFuture<SessionData>> requests = new LinkedHashMap<>();
+        for (String id : ids) {
+            requests.put(id, loadAsync(id));
+        }
+
+        Map<String, SessionData> loaded = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<SessionData>> request : requests.entrySet()) {
+            SessionData data = await(request.getValue());
+            if (data != null)
+                loaded.put(request.getKey(), data);
+        }
+
+        return loaded;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> storeAsync(SessionData session) {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        WebTarget target = resource.path("sessions").path(session.getClusterId());
+
+        if (streaming) {
+            // Serialization errors fail the request, and complete the result with false
+            SessionOutput output = new SessionOutput(session);
+            target.request(MediaType.TEXT_PLAIN).async().put(Entity.entity(output, MediaType.APPLICATION_OCTET_STREAM),
+                    callback(result, response -> {
+                        boolean success = response.getStatus() == 200;
+                        if (success)
+                            bandwidthLogger.info(", STORE, {}, {}", output.size, output.serializationTime);
+                        response.close();
+                        return success;
+                    }, false));
+            return result;
+        }
+
+        byte[] data;
+        long serializationTime;
+
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE)) {
+            StopWatch serialization = new Slf4JStopWatch("SER", perf4jLogger);
+            getSerializer().writeSessionData(session, getCompressor().compress(out));
+            serialization.stop();
+            data = out.toByteArray();
+            serializationTime = serialization.getElapsedTime();
         } catch (IOException e) {
             logger.warn("Error storing session.", e);
+            result.complete(false);
+            return result;
         }
 
-        return success;
+        int size = data.length;
+        target.request(MediaType.TEXT_PLAIN).async().put(Entity.entity(data, MediaType.APPLICATION_OCTET_STREAM),
+                callback(result, response -> {
+                    boolean success = response.getStatus() == 200;
+                    if (success)
+                        bandwidthLogger.info(", STORE, {}, {}", size, serializationTime);
+                    response.close();
+                    return success;
+                }, false));
+
+        return result;
     }
 
     @Override
-    public void remove(String id) {
+    public CompletableFuture<Void> removeAsync(String id) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
         WebTarget target = resource.path("sessions").path(id);
-        Response response = target.request().delete();
+        target.request().async().delete(callback(result, response -> {
+            response.close();
+            return null;
+        }, null));
+
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<SessionData> loadAsync(String id) {
+        CompletableFuture<SessionData> result = new CompletableFuture<>();
+        WebTarget target = resource.path("sessions").path(id);
+        target.request(MediaType.APPLICATION_OCTET_STREAM).async().get(callback(result, this::readSessionData, null));
+
+        return result;
+    }
+
+    /**
+     * Creates a callback that completes a future with the handled response,
+     * or with a fallback value if the request fails.
+     *
+     * @param result   The future to complete.
+     * @param handler  Function converting the response into the result.
+     * @param fallback Result used if the request fails.
+     * @param <T>      Type of the result.
+     * @return The callback.
+     */
+    private <T> InvocationCallback<Response> callback(CompletableFuture<T> result, Function<Response, T> handler, T fallback) {
+        return new InvocationCallback<Response>() {
+            @Override
+            public void completed(Response response) {
+                try {
+                    result.complete(handler.apply(response));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Throwable throwable) {
+                logger.warn("Request failed.", throwable);
+                result.complete(fallback);
+            }
+        };
+    }
+
+    /**
+     * Reads a session from the response to a GET request, and closes the response.
+     *
+     * @param response The response.
+     * @return The SessionData object, or null if the session could not be loaded.
+     */
+    private SessionData readSessionData(Response response) {
+        SessionData data = null;
+
+        if (response.getStatus() == 200) {
+            try (InputStream in = getCompressor().decompress(response.readEntity(InputStream.class))) {
+                data = getSerializer().readSessionData(in);
+            } catch (IOException e) {
+                logger.warn("Failure while loading session!", e);
+            }
+        }
         response.close();
+
+        return data;
+    }
+
+    /**
+     * Waits for an asynchronous request.
+     *
+     * @param request The pending request.
+     * @param <T>     Type of the result.
+     * @return The result, or null if the request failed.
+     */
+    private <T> T await(CompletableFuture<T> request) {
+        try {
+            return request.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Request failed.", e.getCause());
+        }
+
+        return null;
+    }
+
+    @Override
+    public void remove(String id) {
+        WebTarget target = resource.path("sessions").path(id);
+        try {
+            target.request().delete().close();
+        } catch (ProcessingException e) {
+            logger.warn("Error removing session {}.", id, e);
+        }
     }
 
     @Override
     public SessionData load(String id) {
         StopWatch load = new StopWatch();
         WebTarget target = resource.path("sessions").path(id);
-        Response response = target.request(MediaType.APPLICATION_OCTET_STREAM).get();
+        Response response;
+        try {
+            response = target.request(MediaType.APPLICATION_OCTET_STREAM).get();
+        } catch (ProcessingException e) {
+            logger.warn("Error loading session {}.", id, e);
+            return null;
+        }
 
         SessionData data = null;
-        if (response.getStatus() == 200) {
+        if (response.getStatus() != 200) {
+            response.close();
+        } else {
             InputStream responseData = response.readEntity(InputStream.class);
             try (
                     ByteCountingInputStream bytes = new ByteCountingInputStream(responseData);
@@ -112,41 +449,255 @@ public class RestSessionStorage extends AbstractSessionStorage {
                 } else {
                     deserialization.stop("DESER_NODATA");
                 }
-            } catch (IOException e) {
+            } catch (IOException | ProcessingException e) {
                 logger.warn("Failure while loading session!", e);
+            } finally {
+                // Releases the connection even if the session was not read to the end
+                response.close();
             }
         }
 
         return data;
     }
 
+    /**
+     * Brings the local mirror up to date and lists it.
+     * If the service can not be reached, the sessions last known to be stored are listed.
+     */
     @Override
     public List<StoredSession> stored() {
+        changes();
+
+        List<StoredSession> sessions = new ArrayList<>(mirror.size());
+        for (Map.Entry<String, Long> entry : mirror.entrySet()) {
+            sessions.add(new StoredSession(entry.getKey(), entry.getValue()));
+        }
+
+        return sessions;
+    }
+
+    @Override
+    public synchronized StoredSessionChanges changes() {
+        StopWatch list = new StopWatch("LIST");
+        StoredSessionChanges changes = null;
+
+        if (incremental)
+            changes = listChanges();
+        if (changes == null)
+            changes = listAll();
+
+        if (changes != null) {
+            list.stop(changes.isComplete() ? "LIST_FULL" : "LIST_CHANGES");
+            logger.debug("Listed {} stored and {} removed sessions.", changes.getStored().size(), changes.getRemoved().size());
+        } else {
+            list.stop("LIST_FAIL");
+            changes = new StoredSessionChanges();
+        }
+
+        return changes;
+    }
+
+    /**
+     * Lists the changes since the cursor and applies them to the mirror.
+     *
+     * @return The changes, or null if the service could not list them.
+     */
+    private StoredSessionChanges listChanges() {
+        WebTarget target = resource.path("sessions").path("changes");
+        if (cursor >= 0)
+            target = target.queryParam("epoch", epoch).queryParam("since", cursor);
+
+        Response response;
+        try {
+            response = target.request(MediaType.APPLICATION_OCTET_STREAM).get();
+        } catch (ProcessingException e) {
+            logger.warn("Error while listing stored sessions!", e);
+            return null;
+        }
+
+        try {
+            if (response.getStatus() == 404) {
+                logger.info("Incremental listing not supported by the service, listing all sessions from now on.");
+                incremental = false;
+                return null;
+            } else if (response.getStatus() != 200) {
+                logger.warn("Error while listing stored sessions: {}.", response.getStatus());
+                return null;
+            }
+
+            try (
+                    DataInputStream in = new DataInputStream(getCompressor().decompress(
+                            new BufferedInputStream(response.readEntity(InputStream.class), BUFFER_SIZE)))
+            ) {
+                long newEpoch = in.readLong();
+                long newCursor = in.readLong();
+                boolean complete = in.readBoolean();
+                int count = in.readInt();
+
+                Map<String, Long> listed = new HashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    listed.put(in.readUTF(), in.readLong());
+                }
+
+                StoredSessionChanges changes = apply(complete, listed);
+                epoch = newEpoch;
+                cursor = newCursor;
+                return changes;
+            }
+        } catch (IOException | ProcessingException e) {
+            logger.warn("Error while reading stored session changes!", e);
+            return null;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Lists all sessions from sessions/stored and replaces the mirror with them.
+     *
+     * @return The changes since the mirror was last updated, or null if the sessions could not be listed.
+     */
+    private StoredSessionChanges listAll() {
         WebTarget target = resource.path("sessions").path("stored");
-        Response response = target.request(MediaType.APPLICATION_OCTET_STREAM).get();
-        InputStream responseData = response.readEntity(InputStream.class);
-        List<StoredSession> data = null;
+        Response response;
+        try {
+            response = target.request(MediaType.APPLICATION_OCTET_STREAM).get();
+        } catch (ProcessingException e) {
+            logger.warn("Error while reading stored sessions!", e);
+            return null;
+        }
+
+        Map<String, Long> listed = new HashMap<>();
+        try {
+            if (response.getStatus() != 200) {
+                logger.warn("Error while reading stored sessions: {}.", response.getStatus());
+                return null;
+            }
 
-        if (responseData != null) {
             try (
-                    InputStream in = getCompressor().decompress(responseData);
+                    InputStream in = getCompressor().decompress(response.readEntity(InputStream.class))
             ) {
-                data = getSerializer().readStoredSessions(in);
-                in.close();
-            } catch (IOException e) {
-                logger.warn("Error while reading stored sessions!", e);
+                for (StoredSession session : getSerializer().readStoredSessions(in)) {
+                    listed.put(session.getSessionId(), session.getRemoteSize());
+                }
             }
-        } else {
-            data = new ArrayList<>();
+        } catch (IOException | ProcessingException e) {
+            logger.warn("Error while reading stored sessions!", e);
+            return null;
+        } finally {
+            response.close();
         }
 
-        return data;
+        // The next incremental listing starts over
+        cursor = -1;
+        return apply(true, listed);
+    }
+
+    /**
+     * Applies a listing to the mirror.
+     *
+     * @param complete true if the listing holds every stored session, else false.
+     * @param listed   Map from session id to size, or -1 for removed sessions.
+     * @return The changes made to the mirror.
+     */
+    private StoredSessionChanges apply(boolean complete, Map<String, Long> listed) {
+        List<StoredSession> stored = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+
+        if (complete) {
+            for (String id : mirror.keySet()) {
+                if (!listed.containsKey(id))
+                    removed.add(id);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : listed.entrySet()) {
+            if (entry.getValue() < 0) {
+                removed.add(entry.getKey());
+            } else {
+                stored.add(new StoredSession(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        for (String id : removed) {
+            mirror.remove(id);
+        }
+        for (StoredSession session : stored) {
+            mirror.put(session.getSessionId(), session.getRemoteSize());
+        }
+
+        return new StoredSessionChanges(complete, stored, removed);
     }
 
+    /**
+     * Asks the service for its capacity.
+     *
+     * @return The capacity in bytes, or 0 if the service can not be reached, so that nothing is placed in it.
+     */
     @Override
     public long capacity() {
         WebTarget target = resource.path("sessions").path("capacity");
-        Response response = target.request(MediaType.TEXT_PLAIN).get();
-        return response.readEntity(Long.class);
+        try {
+            Response response = target.request(MediaType.TEXT_PLAIN).get();
+            try {
+                if (response.getStatus() == 200)
+                    return response.readEntity(Long.class);
+                logger.warn("Error while reading the capacity: {}.", response.getStatus());
+            } finally {
+                response.close();
+            }
+        } catch (ProcessingException e) {
+            logger.warn("Error while reading the capacity!", e);
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return The connection pool, or null if connections are not pooled.
+     */
+    PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    private static int readConfig(String key, int defaultValue) {
+        String value = readConfig(key);
+        if (value != null) {
+            try {
+                return (int) Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                logger.warn("Unable to parse {}: {}. Defaulting to {}.", key, value, defaultValue);
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private static String readConfig(String key, String defaultValue) {
+        String value = readConfig(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private static boolean readConfig(String key, boolean defaultValue) {
+        String value = readConfig(key);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+
+    private static String readConfig(String key) {
+        try (
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", restConfig))
+        ) {
+            Map<String, String> config = parser.parse();
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(key))
+                    return entry.getValue();
+            }
+        } catch (FileNotFoundException e) {
+            logger.debug("No {} found.", restConfig);
+        } catch (IOException e) {
+            logger.warn("Failed to read {} from {}!", key, restConfig);
+        }
+
+        return null;
     }
 }
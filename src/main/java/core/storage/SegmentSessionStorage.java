@@ -0,0 +1,231 @@
+package core.storage;
+
+import core.util.PropertyParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SessionStorage saving sessions to the local filesystem in large, memory-mapped segment files,
+ * rather than in one file per session as the FileSessionStorage does.
+ * Sessions are appended to the segments as records, and listing the stored sessions is served
+ * from an in-memory index without touching the filesystem.
+ * <p>
+ * A background thread periodically empties the segment with the largest share of dead records
+ * by moving its live records to other segments, so that segments are reused before the storage fills up.
+ * A full storage empties segments the same way, as records are never moved within a segment.
+ * Segments are synced to disk after each batch of stores, and before the old record of a stored session
+ * is marked dead, and the index is rebuilt from the segments on startup. The capacity, segment size and compaction settings are read from segment.conf.
+ */
+public class SegmentSessionStorage extends ArenaSessionStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentSessionStorage.class);
+
+    private static final String segmentConfig = "segment.conf";
+    private static final String capacityParam = "capacity";
+    private static final String segmentSizeParam = "segmentSize";
+    private static final String compactionPeriodParam = "compactionPeriod";
+    private static final String compactionThresholdParam = "compactionThreshold";
+    private static final double DEFAULT_CAPACITY = 1024;
+    private static final double DEFAULT_SEGMENT_SIZE = 64;
+    private static final double DEFAULT_COMPACTION_PERIOD = 10;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+    private static final long MEGABYTE = 1048576;
+
+    private static final String suffix = ".segment";
+    private static final String directoryName = "segments";
+
+    private final Path directory;
+    private final double compactionThreshold;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService compactor;
+
+    public SegmentSessionStorage() throws IOException {
+        this(Paths.get(directoryName),
+                (long) (readConfig(capacityParam, DEFAULT_CAPACITY) * MEGABYTE),
+                (int) (readConfig(segmentSizeParam, DEFAULT_SEGMENT_SIZE) * MEGABYTE),
+                (long) (readConfig(compactionPeriodParam, DEFAULT_COMPACTION_PERIOD) * 1000),
+                readConfig(compactionThresholdParam, DEFAULT_COMPACTION_THRESHOLD));
+    }
+
+    /**
+     * Opens the segments in a directory, recovering the sessions stored in them.
+     *
+     * @param directory           Directory of the segment files.
+     * @param capacity            Maximum number of bytes in all segments.
+     * @param segmentSize         Size of a segment in bytes, which bounds the size of a session.
+     * @param compactionPeriod    Milliseconds between background compactions, or 0 to only compact when full.
+     * @param compactionThreshold Minimum share of dead bytes in a segment before it is compacted in the background.
+     * @throws IOException If the directory can not be created.
+     */
+    public SegmentSessionStorage(Path directory, long capacity, int segmentSize, long compactionPeriod, double compactionThreshold) throws IOException {
+        super(capacity, segmentSize);
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+
+        Files.createDirectories(directory);
+        recover();
+
+        if (compactionPeriod > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "segment-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionPeriod, compactionPeriod, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Segment session storage in {}: {} bytes in segments of {} bytes, {} sessions recovered.",
+                directory, capacity(), segmentSize, stored().size());
+    }
+
+    @Override
+    protected ByteBuffer allocateSlab(int index, int size) throws IOException {
+        // Truncating first makes the reused or new file read as zeros
+        try (FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            segments.add(segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Segments are never compacted in place, so that a crash can not break the chain of records.
+     */
+    @Override
+    protected boolean compactsInPlace() {
+        return false;
+    }
+
+    /**
+     * Syncs a segment to disk, so that a power loss can not keep the dead mark of an old record
+     * while losing its replacement.
+     */
+    @Override
+    protected void forceSlab(ByteBuffer slab) {
+        ((MappedByteBuffer) slab).force();
+    }
+
+    /**
+     * Syncs all segments to disk at the end of each persist cycle.
+     */
+    @Override
+    public void sync() {
+        force();
+    }
+
+    /**
+     * Syncs all segments to disk after the batch is stored.
+     */
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        Set<String> stored = super.storeAll(sessions);
+        force();
+        return stored;
+    }
+
+    /**
+     * Syncs the modified parts of all segments to disk.
+     */
+    public void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Stops the background compaction and syncs all segments to disk.
+     */
+    public void shutdown() {
+        if (compactor != null)
+            compactor.shutdownNow();
+        force();
+    }
+
+    /**
+     * Runs one round of background compaction.
+     */
+    private void compact() {
+        try {
+            int reclaimed = compactSparsest(compactionThreshold);
+            if (reclaimed > 0)
+                logger.debug("Reclaimed {} bytes of segments.", reclaimed);
+        } catch (RuntimeException e) {
+            logger.warn("Error compacting segments.", e);
+        }
+    }
+
+    /**
+     * Maps the existing segment files, in order of number, and indexes the records in them.
+     * Recovery stops at the first missing segment or segment of the wrong size,
+     * and the remaining files are overwritten as new segments are needed.
+     */
+    private void recover() throws IOException {
+        SortedMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Integer.parseInt(name.substring(0, name.length() - suffix.length())), path);
+                } catch (NumberFormatException e) {
+                    logger.debug("Ignoring {}.", path);
+                }
+            }
+        }
+
+        int number = 0;
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            if (file.getKey() != number || Files.size(file.getValue()) != getSlabSize()) {
+                logger.warn("Segment {} is missing or has the wrong size, not recovering {} of {} segments.",
+                        number, files.size() - number, files.size());
+                break;
+            }
+
+            try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, getSlabSize());
+                segments.add(segment);
+                recoverSlab(segment);
+            }
+            number++;
+        }
+    }
+
+    private Path segmentPath(int index) {
+        return directory.resolve(index + suffix);
+    }
+
+    private static double readConfig(String key, double defaultValue) {
+        try (
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", segmentConfig))
+        ) {
+            Map<String, String> config = parser.parse();
+            for (Map.Entry<String, String> entry : config.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(key))
+                    return Double.parseDouble(entry.getValue());
+            }
+        } catch (FileNotFoundException e) {
+            logger.warn("No {} found!", segmentConfig);
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Failed to read {} from {}!", key, segmentConfig);
+        }
+
+        return defaultValue;
+    }
+
+}
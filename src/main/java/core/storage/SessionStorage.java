@@ -3,7 +3,10 @@ package core.storage;
 import core.storage.compressor.StreamCompressor;
 import core.storage.serializer.SessionSerializer;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Generic interface to a session storage,
@@ -23,6 +26,17 @@ public interface SessionStorage {
      */
     public boolean store(SessionData session);
 
+    /**
+     * Stores a session that has already been serialized and compressed
+     * with the serializer and compressor of this storage.
+     *
+     * @param id   The id of the session.
+     * @param data The serialized session.
+     * @return true if the session was successfully saved,
+     * else false.
+     */
+    public boolean storeSerialized(String id, byte[] data);
+
     /**
      * Removes a session from this medium.
      *
@@ -38,6 +52,29 @@ public interface SessionStorage {
      */
     public SessionData load(String id);
 
+    /**
+     * Stores several sessions, in as few round trips as the medium allows.
+     *
+     * @param sessions The sessions to be stored.
+     * @return The ids of the sessions that were successfully saved.
+     */
+    public Set<String> storeAll(Collection<SessionData> sessions);
+
+    /**
+     * Removes several sessions from this medium.
+     *
+     * @param ids The ids of the sessions to be removed.
+     */
+    public void removeAll(Collection<String> ids);
+
+    /**
+     * Returns the SessionData objects identified by the given ids.
+     *
+     * @param ids Strings identifying sessions.
+     * @return A Map from id to SessionData, containing only the sessions that exist.
+     */
+    public Map<String, SessionData> loadAll(Collection<String> ids);
+
     /**
      * Returns A List of the sessions stored in this medium.
      *
@@ -45,6 +82,13 @@ public interface SessionStorage {
      */
     public List<StoredSession> stored();
 
+    /**
+     * Makes the sessions stored since the last call durable, for storages that defer it.
+     * Called at the end of each persist cycle.
+     */
+    public default void sync() {
+    }
+
     /**
      * The amount of usable space on this medium.
      *
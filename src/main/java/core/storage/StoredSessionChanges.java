@@ -0,0 +1,48 @@
+package core.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Changes to the contents of a storage between two listings.
+ */
+public class StoredSessionChanges {
+
+    private final boolean complete;
+    private final List<StoredSession> stored;
+    private final Set<String> removed;
+
+    public StoredSessionChanges() {
+        this(false, new ArrayList<>(), new HashSet<>());
+    }
+
+    /**
+     * @param complete true if the changes were computed from a listing of the whole storage.
+     * @param stored   Sessions stored or resized, with their current sizes.
+     * @param removed  Ids of the sessions removed.
+     */
+    public StoredSessionChanges(boolean complete, List<StoredSession> stored, Set<String> removed) {
+        this.complete = complete;
+        this.stored = stored;
+        this.removed = removed;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public List<StoredSession> getStored() {
+        return stored;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return stored.isEmpty() && removed.isEmpty();
+    }
+
+}
@@ -23,6 +23,22 @@ public class ByteCountingOutputStream extends OutputStream {
         stream.write(b);
     }
 
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        byteCount += len;
+        stream.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
     public long getByteCount() {
         return byteCount;
     }
@@ -0,0 +1,333 @@
+package core.util;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.vaadin.server.VaadinService;
+import org.eclipse.jetty.server.SessionManager;
+import org.eclipse.jetty.server.session.AbstractSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Estimates the heap retained by an object graph, by walking the graph from a root object
+ * and summing the shallow sizes of all reachable objects. Every object is counted once,
+ * so shared references and cycles are handled.
+ * <p>
+ * Shallow sizes are computed from the field layout of each class, which is cached per class,
+ * assuming a HotSpot-like layout: a fixed object header, references of 4 or 8 bytes
+ * and objects aligned to 8 bytes. Field packing is not modelled, so sizes are approximate.
+ * <p>
+ * Classes whose fields can not be accessed by reflection, e.g. JDK classes in modules that are not open,
+ * are counted by their shallow size, and the contents of strings, collections and maps
+ * of such classes are estimated through their public interfaces.
+ * Classes, class loaders, threads and enum constants are shared rather than retained, and are never counted.
+ * Neither are instances of the stop types, by default the sessions, session managers, servlet contexts
+ * and Vaadin services, which attributes may reference but which do not belong to a single session.
+ * Otherwise an attribute reaching the HttpSession would be measured along with every other session of the manager.
+ */
+public class HeapSizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapSizer.class);
+
+    public static final int DEFAULT_MAX_OBJECTS = 100000;
+    public static final List<Class<?>> DEFAULT_STOP_TYPES = Collections.unmodifiableList(Arrays.asList(
+            HttpSession.class, AbstractSession.class, SessionManager.class, ServletContext.class, VaadinService.class));
+
+    private static final int ALIGNMENT = 8;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "").startsWith("1.");
+
+    private final int headerSize;
+    private final int arrayHeaderSize;
+    private final int referenceSize;
+    private final int maxObjects;
+    private final List<Class<?>> stopTypes;
+
+    private final ClassValue<Boolean> stopped = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            for (Class<?> stopType : stopTypes) {
+                if (stopType.isAssignableFrom(type))
+                    return true;
+            }
+            return false;
+        }
+    };
+
+    private final ClassValue<ClassLayout> layouts = new ClassValue<ClassLayout>() {
+        @Override
+        protected ClassLayout computeValue(Class<?> type) {
+            return layout(type);
+        }
+    };
+
+    public HeapSizer() {
+        this(DEFAULT_MAX_OBJECTS);
+    }
+
+    /**
+     * Creates a HeapSizer for the layout of the running JVM.
+     *
+     * @param maxObjects Maximum number of objects visited per graph, beyond which the rest of the graph is ignored.
+     */
+    public HeapSizer(int maxObjects) {
+        this(is64Bit(), useCompressedOops(), maxObjects);
+    }
+
+    /**
+     * @param is64Bit        true for a 64-bit JVM.
+     * @param compressedOops true if references are compressed to 4 bytes on a 64-bit JVM.
+     * @param maxObjects     Maximum number of objects visited per graph, beyond which the rest of the graph is ignored.
+     */
+    public HeapSizer(boolean is64Bit, boolean compressedOops, int maxObjects) {
+        this(is64Bit, compressedOops, maxObjects, DEFAULT_STOP_TYPES);
+    }
+
+    /**
+     * @param is64Bit        true for a 64-bit JVM.
+     * @param compressedOops true if references are compressed to 4 bytes on a 64-bit JVM.
+     * @param maxObjects     Maximum number of objects visited per graph, beyond which the rest of the graph is ignored.
+     * @param stopTypes      Types whose instances, and everything reachable only through them, are not counted.
+     */
+    public HeapSizer(boolean is64Bit, boolean compressedOops, int maxObjects, Collection<Class<?>> stopTypes) {
+        if (!is64Bit) {
+            headerSize = 8;
+            arrayHeaderSize = 12;
+            referenceSize = 4;
+        } else if (compressedOops) {
+            headerSize = 12;
+            arrayHeaderSize = 16;
+            referenceSize = 4;
+        } else {
+            headerSize = 16;
+            arrayHeaderSize = 24;
+            referenceSize = 8;
+        }
+        this.maxObjects = maxObjects;
+        this.stopTypes = new ArrayList<>(stopTypes);
+    }
+
+    /**
+     * Estimates the heap retained by an object and everything reachable from it.
+     *
+     * @param root The object to measure.
+     * @return The estimated size in bytes, 0 for null.
+     */
+    public long sizeOf(Object root) {
+        if (root == null)
+            return 0;
+
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        Deque<Object> stack = new ArrayDeque<>();
+        push(root, stack, visited);
+
+        long size = 0;
+        int count = 0;
+
+        while (!stack.isEmpty()) {
+            if (++count > maxObjects) {
+                logger.debug("Stopped measuring a graph of {} at {} objects.", root.getClass().getName(), maxObjects);
+                break;
+            }
+
+            Object object = stack.pop();
+            Class<?> type = object.getClass();
+
+            if (type.isArray()) {
+                size += sizeOfArray(object, type.getComponentType(), stack, visited);
+                continue;
+            }
+
+            ClassLayout layout = layouts.get(type);
+            size += layout.shallowSize;
+
+            for (Field field : layout.references) {
+                try {
+                    push(field.get(object), stack, visited);
+                } catch (IllegalAccessException e) {
+                    logger.debug("Could not read field {}.", field, e);
+                }
+            }
+
+            if (layout.opaque)
+                size += sizeOfOpaque(object, stack, visited);
+        }
+
+        return size;
+    }
+
+    /**
+     * Computes the shallow size of an instance of a class, not including anything it references.
+     *
+     * @param type The class, not an array class.
+     * @return The shallow size in bytes.
+     */
+    public long shallowSizeOf(Class<?> type) {
+        return layouts.get(type).shallowSize;
+    }
+
+    private long sizeOfArray(Object array, Class<?> componentType, Deque<Object> stack, Map<Object, Boolean> visited) {
+        int length = Array.getLength(array);
+
+        if (componentType.isPrimitive())
+            return align(arrayHeaderSize + (long) length * primitiveSize(componentType));
+
+        for (Object element : (Object[]) array) {
+            push(element, stack, visited);
+        }
+
+        return align(arrayHeaderSize + (long) length * referenceSize);
+    }
+
+    /**
+     * Estimates what an object of an inaccessible class holds beyond its shallow size,
+     * for the classes commonly found in session attributes.
+     */
+    private long sizeOfOpaque(Object object, Deque<Object> stack, Map<Object, Boolean> visited) {
+        try {
+            if (object instanceof String) {
+                return sizeOfChars((String) object);
+            } else if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) object;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    push(entry.getKey(), stack, visited);
+                    push(entry.getValue(), stack, visited);
+                }
+                return sizeOfHashTable(map.size());
+            } else if (object instanceof Collection) {
+                Collection<?> collection = (Collection<?>) object;
+                for (Object element : collection) {
+                    push(element, stack, visited);
+                }
+                if (object instanceof Set)
+                    return headerSize + sizeOfHashTable(collection.size());
+                return align(arrayHeaderSize + (long) collection.size() * referenceSize);
+            }
+        } catch (RuntimeException e) {
+            // Concurrently modified, count what has been seen so far.
+            logger.debug("Could not measure the contents of a {}.", object.getClass().getName(), e);
+        }
+
+        return 0;
+    }
+
+    private long sizeOfChars(String string) {
+        int bytesPerChar = 2;
+        if (COMPACT_STRINGS) {
+            bytesPerChar = 1;
+            for (int i = 0; i < string.length(); i++) {
+                if (string.charAt(i) > 0xff) {
+                    bytesPerChar = 2;
+                    break;
+                }
+            }
+        }
+
+        return align(arrayHeaderSize + (long) string.length() * bytesPerChar);
+    }
+
+    /**
+     * Estimates the table and entry nodes of a hash table, with a hash, a key, a value and a next reference per node.
+     */
+    private long sizeOfHashTable(int entries) {
+        int buckets = Integer.highestOneBit(Math.max((int) (entries / LOAD_FACTOR), 1) * 2 - 1);
+        long node = align(headerSize + 4 + 3L * referenceSize);
+
+        return align(arrayHeaderSize + (long) buckets * referenceSize) + entries * node;
+    }
+
+    private ClassLayout layout(Class<?> type) {
+        long size = headerSize;
+        List<Field> references = new ArrayList<>();
+        boolean opaque = false;
+
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()))
+                    continue;
+
+                Class<?> fieldType = field.getType();
+                if (fieldType.isPrimitive()) {
+                    size += primitiveSize(fieldType);
+                } else {
+                    size += referenceSize;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException e) {
+                        opaque = true;
+                    }
+                }
+            }
+        }
+
+        return new ClassLayout(align(size), references.toArray(new Field[references.size()]), opaque);
+    }
+
+    private void push(Object object, Deque<Object> stack, Map<Object, Boolean> visited) {
+        if (object == null || isShared(object) || stopped.get(object.getClass()))
+            return;
+
+        if (visited.put(object, Boolean.TRUE) == null)
+            stack.push(object);
+    }
+
+    private static boolean isShared(Object object) {
+        return object instanceof Class
+                || object instanceof ClassLoader
+                || object instanceof Thread
+                || object instanceof Enum;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class)
+            return 8;
+        if (type == int.class || type == float.class)
+            return 4;
+        if (type == short.class || type == char.class)
+            return 2;
+        return 1;
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static boolean is64Bit() {
+        String model = System.getProperty("sun.arch.data.model");
+        if (model != null)
+            return model.equals("64");
+        return System.getProperty("os.arch", "").contains("64");
+    }
+
+    private static boolean useCompressedOops() {
+        try {
+            HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption("UseCompressedOops").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            // Not HotSpot, compressed references are the default for heaps below 32 GB.
+            return Runtime.getRuntime().maxMemory() < (32L << 30);
+        }
+    }
+
+    private static class ClassLayout {
+
+        final long shallowSize;
+        final Field[] references;
+        final boolean opaque;
+
+        ClassLayout(long shallowSize, Field[] references, boolean opaque) {
+            this.shallowSize = shallowSize;
+            this.references = references;
+            this.opaque = opaque;
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package core.util;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Maps session ids to the locks that guard them.
+ */
+public interface LockTable {
+
+    /**
+     * Returns the lock of a session, creating it if necessary.
+     *
+     * @param id Id of the session.
+     * @return The lock of the session.
+     */
+    public Lock getLock(String id);
+
+    /**
+     * Returns the lock of a session, without creating it.
+     *
+     * @param id Id of the session.
+     * @return The lock of the session, or null if the session has no lock.
+     */
+    public Lock findLock(String id);
+
+    /**
+     * Releases any resources held for a session.
+     *
+     * @param id Id of the session.
+     */
+    public void removeLock(String id);
+
+}
@@ -0,0 +1,15 @@
+package core.util;
+
+/**
+ * Can listen for memory pressure events from a MemoryPressureMonitor.
+ */
+public interface MemoryPressureListener {
+
+    /**
+     * Called when heap usage has crossed the threshold of the monitor.
+     *
+     * @param bytesToFree Number of bytes above the target usage.
+     */
+    public void memoryPressure(long bytesToFree);
+
+}
@@ -0,0 +1,159 @@
+package core.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the heap through memory pool usage threshold notifications,
+ * and notifies a MemoryPressureListener as soon as usage crosses the threshold,
+ * rather than waiting for the next persist cycle.
+ * <p>
+ * Thresholds are set on every heap pool that supports them, which in practice is the old generation.
+ * Notifications arriving while the listener is busy are coalesced, and the listener
+ * is called at most once per cooldown period, on a thread of the monitor.
+ * The listener is asked to free the bytes by which the pools exceed the target usage.
+ * This includes garbage that has not been collected yet, so it errs on the side of freeing too much.
+ */
+public class MemoryPressureMonitor implements NotificationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(MemoryPressureMonitor.class);
+
+    private final MemoryPressureListener listener;
+    private final double threshold;
+    private final double target;
+    private final long cooldown;
+    private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final ExecutorService executor;
+    private volatile long lastRun = 0;
+
+    /**
+     * @param listener  The MemoryPressureListener to receive events from this monitor.
+     * @param threshold Fraction of a pool's maximum size above which the listener is notified.
+     * @param target    Fraction of a pool's maximum size that the listener is asked to bring usage down to.
+     * @param cooldown  Minimum time between notifications, in milliseconds.
+     */
+    public MemoryPressureMonitor(MemoryPressureListener listener, double threshold, double target, long cooldown) {
+        this.listener = listener;
+        this.threshold = threshold;
+        this.target = Math.min(target, threshold);
+        this.cooldown = cooldown;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-pressure");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets the thresholds and starts listening for notifications.
+     *
+     * @return true if at least one pool is monitored, else false.
+     */
+    public boolean start() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            long max = pool.getUsage().getMax();
+            if (pool.getType() != MemoryType.HEAP || !pool.isUsageThresholdSupported() || max <= 0)
+                continue;
+
+            pool.setUsageThreshold((long) (threshold * max));
+            if (pool.isCollectionUsageThresholdSupported())
+                pool.setCollectionUsageThreshold((long) (threshold * max));
+            pools.add(pool);
+            logger.info("Monitoring memory pool {} at {} bytes.", pool.getName(), (long) (threshold * max));
+        }
+
+        if (pools.isEmpty()) {
+            logger.warn("No heap memory pool supports usage thresholds, memory pressure is not monitored.");
+            return false;
+        }
+
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this, null, null);
+
+        return true;
+    }
+
+    /**
+     * Stops listening for notifications and clears the thresholds.
+     */
+    public void shutdown() {
+        try {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this);
+        } catch (ListenerNotFoundException e) {
+            logger.debug("Memory pressure monitor was not listening.");
+        }
+
+        for (MemoryPoolMXBean pool : pools) {
+            pool.setUsageThreshold(0);
+            if (pool.isCollectionUsageThresholdSupported())
+                pool.setCollectionUsageThreshold(0);
+        }
+        pools.clear();
+
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (!MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                && !MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type))
+            return;
+
+        if (scheduled.compareAndSet(false, true))
+            executor.execute(this::relieve);
+    }
+
+    /**
+     * Computes the number of bytes by which the monitored pools exceed the target usage.
+     *
+     * @return The number of bytes, 0 if usage is below the target.
+     */
+    public long getExcess() {
+        long excess = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getUsage();
+            excess += Math.max(0, usage.getUsed() - (long) (target * usage.getMax()));
+        }
+
+        return excess;
+    }
+
+    private void relieve() {
+        scheduled.set(false);
+
+        long now = System.currentTimeMillis();
+        if (now - lastRun < cooldown) {
+            logger.debug("Memory pressure within the cooldown period, ignoring.");
+            return;
+        }
+
+        long excess = getExcess();
+        if (excess <= 0)
+            return;
+
+        lastRun = now;
+        logger.info("Heap usage above the threshold, freeing {} bytes.", excess);
+        try {
+            listener.memoryPressure(excess);
+        } catch (RuntimeException e) {
+            logger.warn("Relieving memory pressure failed.", e);
+        }
+    }
+
+}
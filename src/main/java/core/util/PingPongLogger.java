@@ -8,7 +8,10 @@ import core.storage.serializer.SessionSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class PingPongLogger implements SessionStorage {
 
@@ -26,6 +29,12 @@ public class PingPongLogger implements SessionStorage {
         return storage.store(session);
     }
 
+    @Override
+    public boolean storeSerialized(String id, byte[] data) {
+        logger.info(", {}, STORE", id);
+        return storage.storeSerialized(id, data);
+    }
+
     @Override
     public void remove(String id) {
         storage.remove(id);
@@ -41,6 +50,30 @@ public class PingPongLogger implements SessionStorage {
         return data;
     }
 
+    @Override
+    public Set<String> storeAll(Collection<SessionData> sessions) {
+        for (SessionData session : sessions) {
+            logger.info(", {}, STORE", session.getClusterId());
+        }
+        return storage.storeAll(sessions);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        storage.removeAll(ids);
+    }
+
+    @Override
+    public Map<String, SessionData> loadAll(Collection<String> ids) {
+        Map<String, SessionData> data = storage.loadAll(ids);
+
+        for (String id : data.keySet()) {
+            logger.info(", {}, LOAD", id);
+        }
+
+        return data;
+    }
+
     @Override
     public List<StoredSession> stored() {
         return storage.stored();
@@ -30,6 +30,7 @@ public class PropertyParser implements Closeable {
 
     /**
      * Parses the configuration file, returning the key-value pairs found.
+     * Values holding other characters than letters and digits, such as addresses, are quoted.
      *
      * @return A map of key-value pairs.
      * @throws IOException
@@ -63,7 +64,7 @@ public class PropertyParser implements Closeable {
                 }
 
                 case VALUE: {
-                    if (token == StreamTokenizer.TT_WORD) {
+                    if (token == StreamTokenizer.TT_WORD || token == '"' || token == '\'') {
                         properties.put(key, reader.sval);
                         property = Property.EOL;
                     } else if (token == StreamTokenizer.TT_NUMBER) {
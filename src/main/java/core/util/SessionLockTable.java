@@ -0,0 +1,37 @@
+package core.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LockTable that keeps one fair lock per session.
+ * Locks are created on demand and must be removed explicitly.
+ */
+public class SessionLockTable implements LockTable {
+
+    private final ConcurrentMap<String, Lock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public Lock getLock(String id) {
+        Lock lock = locks.get(id);
+        if (lock == null) {
+            locks.putIfAbsent(id, new ReentrantLock(true));
+            lock = locks.get(id);
+        }
+
+        return lock;
+    }
+
+    @Override
+    public Lock findLock(String id) {
+        return locks.get(id);
+    }
+
+    @Override
+    public void removeLock(String id) {
+        locks.remove(id);
+    }
+
+}
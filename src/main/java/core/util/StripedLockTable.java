@@ -0,0 +1,56 @@
+package core.util;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LockTable that hashes session ids onto a fixed, power-of-two sized array of non-fair locks.
+ * Memory use does not depend on the number of sessions, and no locks have to be removed,
+ * at the cost of unrelated sessions occasionally sharing a lock.
+ * <p>
+ * Since two sessions may share a lock, a thread must never hold the lock of
+ * one session while acquiring the lock of another.
+ */
+public class StripedLockTable implements LockTable {
+
+    private final Lock[] locks;
+    private final int mask;
+
+    /**
+     * @param stripes Minimum number of locks, rounded up to a power of two.
+     */
+    public StripedLockTable(int stripes) {
+        int size = 1;
+        while (size < stripes && size < (1 << 30)) {
+            size <<= 1;
+        }
+
+        locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    @Override
+    public Lock getLock(String id) {
+        int hash = id.hashCode();
+        hash ^= (hash >>> 16);
+        return locks[hash & mask];
+    }
+
+    @Override
+    public Lock findLock(String id) {
+        return getLock(id);
+    }
+
+    @Override
+    public void removeLock(String id) {
+        // Stripes are shared between sessions, and are never removed.
+    }
+
+    public int getStripes() {
+        return locks.length;
+    }
+
+}
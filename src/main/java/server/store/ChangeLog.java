@@ -0,0 +1,66 @@
+package server.store;
+
+import java.util.*;
+
+/**
+ * Log of the sessions stored or removed, answering the incremental listings of the RestSessionStorage.
+ * Only the latest change of each session is kept, and the oldest changes are discarded
+ * once there are too many, after which older cursors must be answered with complete listings.
+ */
+public class ChangeLog {
+
+    private final long epoch = System.currentTimeMillis();
+    private final int maxChanges;
+    private final TreeMap<Long, String> changes = new TreeMap<>();
+    private final Map<String, Long> latest = new HashMap<>();
+    private long sequence = 0;
+    private long horizon = 0;
+
+    /**
+     * @param maxChanges Number of changed sessions to remember.
+     */
+    public ChangeLog(int maxChanges) {
+        this.maxChanges = Math.max(1, maxChanges);
+    }
+
+    /**
+     * Records that a session was stored or removed.
+     *
+     * @param id The id of the session.
+     */
+    public synchronized void record(String id) {
+        Long old = latest.put(id, ++sequence);
+        if (old != null)
+            changes.remove(old);
+        changes.put(sequence, id);
+
+        if (changes.size() > maxChanges) {
+            Map.Entry<Long, String> eldest = changes.pollFirstEntry();
+            latest.remove(eldest.getValue());
+            horizon = eldest.getKey();
+        }
+    }
+
+    /**
+     * Finds the sessions changed after a cursor.
+     *
+     * @param epoch The epoch of the cursor.
+     * @param since The cursor, i.e. the sequence number of the last change seen.
+     * @return The ids of the changed sessions, or null if the changes are not known and all sessions must be listed.
+     */
+    public synchronized Set<String> since(long epoch, long since) {
+        if (epoch != this.epoch || since < horizon || since > sequence)
+            return null;
+
+        return new HashSet<>(changes.tailMap(since, false).values());
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+}
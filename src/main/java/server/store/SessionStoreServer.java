@@ -0,0 +1,152 @@
+package server.store;
+
+import core.storage.ArenaSessionStorage;
+import core.storage.OffHeapSessionStorage;
+import core.storage.SegmentSessionStorage;
+import core.storage.compressor.StreamCompressor;
+import core.storage.serializer.SessionSerializer;
+import core.util.ClassLoadingFactory;
+import core.util.PropertyParser;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embedded Jetty Launcher for a reference implementation of the REST session service
+ * used by the RestSessionStorage, so that the remote path can be tested and benchmarked on one machine.
+ * <p>
+ * Sessions are kept in memory by an OffHeapSessionStorage, or on disk by a SegmentSessionStorage,
+ * sized by offheap.conf and segment.conf respectively.
+ * The port, backend and injected latency and bandwidth are read from store.conf.
+ */
+public class SessionStoreServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionStoreServer.class);
+
+    private static final String storeConfig = "store.conf";
+    private static final String portParam = "port";
+    private static final String backendParam = "backend";
+    private static final String latencyParam = "latency";
+    private static final String bandwidthParam = "bandwidth";
+    private static final String maxChangesParam = "maxChanges";
+    private static final String serializerParam = "serializer";
+    private static final String compressorParam = "compressor";
+    private static final int DEFAULT_PORT = 8080;
+    private static final String DEFAULT_BACKEND = "memory";
+    private static final int DEFAULT_MAX_CHANGES = 100000;
+    private static final String DEFAULT_SERIALIZER = "core.storage.serializer.JavaSerializer";
+    private static final String DEFAULT_COMPRESSOR = "core.storage.compressor.NoCompressor";
+
+    private final Server server;
+
+    /**
+     * @param port    Port to listen on, or 0 for any free port.
+     * @param servlet The servlet serving sessions/*.
+     */
+    public SessionStoreServer(int port, SessionStoreServlet servlet) {
+        server = new Server(port);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(servlet), "/sessions/*");
+        server.setHandler(context);
+    }
+
+    public void start() throws Exception {
+        server.start();
+        logger.info("Session store listening on port {}.", getPort());
+    }
+
+    public void stop() throws Exception {
+        server.stop();
+    }
+
+    public void join() throws InterruptedException {
+        server.join();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort() {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = readConfig();
+
+        String backendName = config.getOrDefault(backendParam, DEFAULT_BACKEND);
+        ArenaSessionStorage backend;
+        if (backendName.equalsIgnoreCase("segment")) {
+            backend = new SegmentSessionStorage();
+        } else {
+            if (!backendName.equalsIgnoreCase(DEFAULT_BACKEND))
+                logger.warn("Unknown {}: {}. Defaulting to {}.", backendParam, backendName, DEFAULT_BACKEND);
+            backend = new OffHeapSessionStorage();
+        }
+
+        // Named by their simple names, since the configuration can not hold qualified names
+        String serializerName = config.get(serializerParam);
+        String compressorName = config.get(compressorParam);
+        SessionSerializer serializer = ClassLoadingFactory.tryLoadClass(
+                serializerName != null ? "core.storage.serializer." + serializerName : null, DEFAULT_SERIALIZER, SessionSerializer.class);
+        StreamCompressor compressor = ClassLoadingFactory.tryLoadClass(
+                compressorName != null ? "core.storage.compressor." + compressorName : null, DEFAULT_COMPRESSOR, StreamCompressor.class);
+
+        Throttle throttle = new Throttle(parse(config, latencyParam, 0), parse(config, bandwidthParam, 0));
+        ChangeLog changeLog = new ChangeLog((int) parse(config, maxChangesParam, DEFAULT_MAX_CHANGES));
+        logger.info("Injecting {} ms of latency and {} MB/s of bandwidth.",
+                parse(config, latencyParam, 0), parse(config, bandwidthParam, 0));
+
+        SessionStoreServer server = new SessionStoreServer((int) parse(config, portParam, DEFAULT_PORT),
+                new SessionStoreServlet(backend, serializer, compressor, throttle, changeLog));
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop();
+                if (backend instanceof SegmentSessionStorage)
+                    ((SegmentSessionStorage) backend).shutdown();
+            } catch (Exception e) {
+                logger.warn("Error while shutting down session store.", e);
+            }
+        }, "shutdown"));
+
+        server.start();
+        server.join();
+    }
+
+    private static double parse(Map<String, String> config, String key, double defaultValue) {
+        String value = config.get(key);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                logger.warn("Unable to parse {}: {}. Defaulting to {}.", key, value, defaultValue);
+            }
+        }
+
+        return defaultValue;
+    }
+
+    private static Map<String, String> readConfig() {
+        try (
+                PropertyParser parser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", storeConfig))
+        ) {
+            return parser.parse();
+        } catch (FileNotFoundException e) {
+            logger.warn("No {} found!", storeConfig);
+        } catch (IOException e) {
+            logger.warn("Failed to read {}!", storeConfig);
+        }
+
+        return new HashMap<>();
+    }
+
+}
@@ -0,0 +1,200 @@
+package server.store;
+
+import core.storage.ArenaSessionStorage;
+import core.storage.StoredSession;
+import core.storage.compressor.StreamCompressor;
+import core.storage.serializer.SessionSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Servlet implementing the REST session service used by the RestSessionStorage, mapped to /sessions/*:
+ * <ul>
+ * <li>PUT, GET and DELETE sessions/{id} store, load and remove a serialized session.</li>
+ * <li>GET sessions/stored lists all sessions, serialized with the configured serializer and compressor.</li>
+ * <li>GET sessions/changes lists the sessions changed since a cursor, as described in the RestSessionStorage.</li>
+ * <li>GET sessions/capacity returns the capacity of the backend in bytes.</li>
+ * </ul>
+ * Every request is delayed by the throttle, according to the number of bytes transferred.
+ */
+public class SessionStoreServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(SessionStoreServlet.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int INSUFFICIENT_STORAGE = 507;
+
+    private final ArenaSessionStorage backend;
+    private final SessionSerializer serializer;
+    private final StreamCompressor compressor;
+    private final Throttle throttle;
+    private final ChangeLog changes;
+
+    /**
+     * @param backend    Storage holding the serialized sessions.
+     * @param serializer Serializer of the listing served from sessions/stored.
+     * @param compressor Compressor of the listings.
+     * @param throttle   Latency and bandwidth injected into every request.
+     * @param changeLog  Log of the changes served from sessions/changes.
+     */
+    public SessionStoreServlet(ArenaSessionStorage backend, SessionSerializer serializer, StreamCompressor compressor,
+                               Throttle throttle, ChangeLog changeLog) {
+        this.backend = backend;
+        this.serializer = serializer;
+        this.compressor = compressor;
+        this.throttle = throttle;
+        this.changes = changeLog;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String id = sessionId(request);
+        if (id == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        switch (id) {
+
+            case "stored":
+                writeStored(response);
+                break;
+
+            case "changes":
+                writeChanges(request, response);
+                break;
+
+            case "capacity":
+                throttle.transfer(0);
+                response.setContentType("text/plain");
+                response.getWriter().print(backend.capacity());
+                break;
+
+            default:
+                byte[] data = backend.loadSerialized(id);
+                throttle.transfer(data != null ? data.length : 0);
+                if (data == null) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                } else {
+                    response.setContentType("application/octet-stream");
+                    response.setContentLength(data.length);
+                    response.getOutputStream().write(data);
+                }
+                break;
+
+        }
+    }
+
+    @Override
+    protected void doPut(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String id = sessionId(request);
+        if (id == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(Math.max(request.getContentLength(), BUFFER_SIZE));
+        InputStream in = request.getInputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            data.write(buffer, 0, read);
+        }
+
+        throttle.transfer(data.size());
+        if (backend.storeSerialized(id, data.toByteArray())) {
+            changes.record(id);
+            response.setContentType("text/plain");
+        } else {
+            response.sendError(INSUFFICIENT_STORAGE);
+        }
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String id = sessionId(request);
+        if (id == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        throttle.transfer(0);
+        backend.remove(id);
+        changes.record(id);
+    }
+
+    private void writeStored(HttpServletResponse response) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (OutputStream out = compressor.compress(data)) {
+            serializer.writeStoredSessions(backend.stored(), out);
+        }
+
+        send(response, data);
+    }
+
+    /**
+     * Writes the changes since the cursor in the request, or all sessions if the changes are not known.
+     */
+    private void writeChanges(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Changes recorded while listing are listed again next time
+        long sequence = changes.getSequence();
+        Set<String> changed = null;
+        try {
+            String epoch = request.getParameter("epoch");
+            String since = request.getParameter("since");
+            if (epoch != null && since != null)
+                changed = changes.since(Long.parseLong(epoch), Long.parseLong(since));
+        } catch (NumberFormatException e) {
+            logger.debug("Invalid cursor, listing all sessions.", e);
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+        try (DataOutputStream out = new DataOutputStream(compressor.compress(data))) {
+            out.writeLong(changes.getEpoch());
+            out.writeLong(sequence);
+            out.writeBoolean(changed == null);
+
+            if (changed == null) {
+                List<StoredSession> stored = backend.stored();
+                out.writeInt(stored.size());
+                for (StoredSession session : stored) {
+                    out.writeUTF(session.getSessionId());
+                    out.writeLong(session.getRemoteSize());
+                }
+            } else {
+                out.writeInt(changed.size());
+                for (String id : changed) {
+                    out.writeUTF(id);
+                    out.writeLong(backend.sizeOf(id));
+                }
+            }
+        }
+
+        send(response, data);
+    }
+
+    private void send(HttpServletResponse response, ByteArrayOutputStream data) throws IOException {
+        throttle.transfer(data.size());
+        response.setContentType("application/octet-stream");
+        response.setContentLength(data.size());
+        data.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * @return The path following sessions/, or null if there is none.
+     */
+    private static String sessionId(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        if (path == null || path.length() < 2)
+            return null;
+        return path.substring(1);
+    }
+
+}
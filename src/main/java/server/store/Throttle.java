@@ -0,0 +1,51 @@
+package server.store;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays transfers as if they went over a network link with a given latency and bandwidth.
+ * Concurrent transfers share the bandwidth, queuing behind each other on the link.
+ */
+public class Throttle {
+
+    private final long latencyNanos;
+    private final double nanosPerByte;
+    private long linkFree = System.nanoTime();
+
+    /**
+     * @param latency   Delay added to every transfer, in milliseconds.
+     * @param bandwidth Bandwidth of the link in megabytes per second, or 0 for unlimited bandwidth.
+     */
+    public Throttle(double latency, double bandwidth) {
+        this.latencyNanos = (long) (latency * 1000000);
+        this.nanosPerByte = bandwidth > 0 ? 1000000000 / (bandwidth * 1048576) : 0;
+    }
+
+    /**
+     * Blocks until a transfer of a number of bytes would have been completed.
+     *
+     * @param bytes Size of the transfer.
+     */
+    public void transfer(long bytes) {
+        long finish;
+        synchronized (this) {
+            long start = Math.max(System.nanoTime(), linkFree);
+            linkFree = start + (long) (bytes * nanosPerByte);
+            finish = linkFree + latencyNanos;
+        }
+
+        long delay = finish - System.nanoTime();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return latencyNanos > 0 || nanosPerByte > 0;
+    }
+
+}
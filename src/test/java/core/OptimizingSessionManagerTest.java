@@ -0,0 +1,344 @@
+package core;
+
+import core.optimizer.OptimizationData;
+import core.optimizer.SessionOptimizer;
+import core.optimizer.SessionOptimizerSolution;
+import core.optimizer.SessionPlacement;
+import core.storage.AbstractSessionStorage;
+import core.storage.JournalingSessionStorage;
+import core.storage.SessionData;
+import core.storage.StoredSession;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.session.SessionHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OptimizingSessionManagerTest {
+
+    private Server server;
+    private OptimizingSessionManager manager;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testOffloadStoresChangesMadeInPlace() throws Exception {
+        start(Collections.<String, String>emptyMap());
+        BasicSession session = session("a", new ArrayList<>(Collections.singletonList("first")));
+
+        // Stored while kept locally, and seen as placed in both by the next cycle
+        FixedOptimizer.mask = SessionPlacement.BOTH.getMask();
+        manager.persist();
+        manager.persist();
+        assertTrue(manager.stored("a"));
+        assertNotNull(storage(0).load("a"));
+
+        // A request changes an attribute without setting it again
+        session.access(System.currentTimeMillis());
+        list(session).add("second");
+
+        manager.memoryPressure(Long.MAX_VALUE);
+        assertFalse(manager.stored("a"));
+        assertEquals(Arrays.asList("first", "second"), list(manager.getSession("a")));
+    }
+
+    @Test
+    public void testSessionModifiedDuringAsyncStoreStaysLocal() throws Exception {
+        start(Collections.singletonMap("session-relocation-mode", "async"));
+        BasicSession session = session("a", "first");
+        MemorySessionStorage storage = storage(0);
+        storage.release = new CountDownLatch(1);
+
+        FixedOptimizer.mask = SessionPlacement.REMOTE.getMask();
+        Thread persist = new Thread(manager::persist);
+        persist.start();
+
+        // Modified while the snapshot is being stored, without holding any lock
+        assertTrue(storage.started.await(5, TimeUnit.SECONDS));
+        session.setAttribute("value", "second");
+        storage.release.countDown();
+        persist.join(5000);
+        assertFalse(persist.isAlive());
+
+        assertTrue(manager.stored("a"));
+        assertEquals("first", storage.load("a").getAttributes().get("value"));
+        assertEquals("second", manager.getSession("a").getAttribute("value"));
+    }
+
+    @Test
+    public void testFailedStoreKeepsLocalCopy() throws Exception {
+        start(Collections.singletonMap("session-relocation-batch-size", "4"));
+        session("a", "first");
+        session("b", "second");
+        MemorySessionStorage storage = storage(0);
+        storage.failing = true;
+
+        FixedOptimizer.mask = SessionPlacement.REMOTE.getMask();
+        manager.persist();
+        assertTrue(manager.stored("a"));
+        assertTrue(manager.stored("b"));
+        assertTrue(storage.stored().isEmpty());
+
+        // Moved by the next cycle once the storage recovers
+        storage.failing = false;
+        manager.persist();
+        assertFalse(manager.stored("a"));
+        assertFalse(manager.stored("b"));
+        assertEquals(2, storage.stored().size());
+        assertEquals("second", manager.getSession("b").getAttribute("value"));
+    }
+
+    @Test
+    public void testDropRemovesEveryTier() throws Exception {
+        String storages = MemorySessionStorage.class.getName() + "," + MemorySessionStorage.class.getName();
+        start(Collections.singletonMap("session-storage", storages));
+        session("a", "first");
+
+        FixedOptimizer.mask = SessionPlacement.LOCAL_BIT | SessionPlacement.storageBit(0) | SessionPlacement.storageBit(1);
+        manager.persist();
+        assertTrue(manager.stored("a"));
+        assertNotNull(storage(0).load("a"));
+        assertNotNull(storage(1).load("a"));
+
+        FixedOptimizer.mask = 0;
+        manager.persist();
+        assertFalse(manager.stored("a"));
+        assertNull(storage(0).load("a"));
+        assertNull(storage(1).load("a"));
+        assertNull(manager.getSession("a"));
+    }
+
+    @Test
+    public void testTieredStoreSerializesOnce() throws Exception {
+        String storages = MemorySessionStorage.class.getName() + "," + MemorySessionStorage.class.getName();
+        start(Collections.singletonMap("session-storage", storages));
+        session("a", "first");
+
+        // Serialized once for the first storage, and stored in both with the same bytes
+        FixedOptimizer.mask = SessionPlacement.storageBit(0) | SessionPlacement.storageBit(1);
+        manager.persist();
+        assertFalse(manager.stored("a"));
+        for (int tier = 0; tier < 2; tier++) {
+            assertEquals(1, storage(tier).serializedStores);
+            assertEquals("first", storage(tier).load("a").getAttributes().get("value"));
+        }
+    }
+
+    @Test
+    public void testSingleStoreIsNotBuffered() throws Exception {
+        start(Collections.<String, String>emptyMap());
+        session("a", "first");
+        MemorySessionStorage storage = storage(0);
+
+        // Measured and stored by streaming the session, without keeping its bytes in between
+        FixedOptimizer.mask = SessionPlacement.REMOTE.getMask();
+        manager.persist();
+        assertFalse(manager.stored("a"));
+        assertEquals(0, storage.serializedStores);
+        assertEquals("first", storage.load("a").getAttributes().get("value"));
+    }
+
+    @Test
+    public void testRemoteLoadDoesNotBlockStripe() throws Exception {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("session-lock-mode", "striped");
+        parameters.put("session-lock-stripes", "1");
+        start(parameters);
+        session("b", "second");
+        MemorySessionStorage storage = storage(0);
+        assertTrue(storage.store(data("a", "first")));
+
+        storage.loadRelease = new CountDownLatch(1);
+        Thread load = new Thread(() -> manager.getSession("a"));
+        load.start();
+
+        // The only stripe is shared by both sessions, and is not held during the load
+        assertTrue(storage.loading.await(5, TimeUnit.SECONDS));
+        Thread get = new Thread(() -> manager.getSession("b"));
+        get.start();
+        get.join(5000);
+        assertFalse(get.isAlive());
+
+        storage.loadRelease.countDown();
+        load.join(5000);
+        assertFalse(load.isAlive());
+        assertEquals("first", manager.getSession("a").getAttribute("value"));
+    }
+
+    /**
+     * Starts a manager with a single MemorySessionStorage, and the given init parameters.
+     */
+    private void start(Map<String, String> parameters) throws Exception {
+        FixedOptimizer.mask = SessionPlacement.LOCAL.getMask();
+
+        manager = new OptimizingSessionManager();
+        ServletContextHandler context = new ServletContextHandler();
+        context.setSessionHandler(new SessionHandler(manager));
+        context.setInitParameter("session-storage", MemorySessionStorage.class.getName());
+        context.setInitParameter("session-optimizer", FixedOptimizer.class.getName());
+        context.setInitParameter("session-persist-period", "0");
+        context.setInitParameter("session-scavenge-period", "0");
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            context.setInitParameter(parameter.getKey(), parameter.getValue());
+        }
+
+        server = new Server();
+        server.setHandler(context);
+        server.start();
+    }
+
+    private BasicSession session(String id, Object value) {
+        return manager.loadSession(data(id, value));
+    }
+
+    private static SessionData data(String id, Object value) {
+        SessionData data = new SessionData();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("value", value);
+        data.setClusterId(id);
+        data.setCreated(System.currentTimeMillis());
+        data.setMaxIdle(3600);
+        data.setAttributes(attributes);
+        return data;
+    }
+
+    private MemorySessionStorage storage(int tier) {
+        return (MemorySessionStorage) ((JournalingSessionStorage) manager.getSessionStorages().get(tier)).getDelegate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> list(BasicSession session) {
+        return (List<String>) session.getAttribute("value");
+    }
+
+    /**
+     * SessionOptimizer placing every session according to the same placement mask.
+     */
+    public static class FixedOptimizer implements SessionOptimizer {
+
+        static volatile int mask;
+
+        @Override
+        public SessionOptimizerSolution optimize(OptimizationData data) {
+            SessionOptimizerSolution solution = new SessionOptimizerSolution();
+            for (String sessionId : data.getSessions()) {
+                solution.putNewPlacementMask(sessionId, mask);
+            }
+            return solution;
+        }
+
+    }
+
+    /**
+     * SessionStorage keeping serialized sessions in a map, so that a stored session
+     * does not share any attributes with its local copy.
+     * Stores and loads can be made to wait until they are released, stores can be made to fail,
+     * and stores of serialized sessions are counted.
+     */
+    public static class MemorySessionStorage extends AbstractSessionStorage {
+
+        private final ConcurrentMap<String, byte[]> sessions = new ConcurrentHashMap<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch release;
+        final CountDownLatch loading = new CountDownLatch(1);
+        volatile CountDownLatch loadRelease;
+        volatile boolean failing = false;
+        volatile int serializedStores = 0;
+
+        @Override
+        public boolean store(SessionData session) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (OutputStream compressed = getCompressor().compress(out)) {
+                getSerializer().writeSessionData(session, compressed);
+            } catch (IOException e) {
+                return false;
+            }
+            return put(session.getClusterId(), out.toByteArray());
+        }
+
+        @Override
+        public boolean storeSerialized(String id, byte[] data) {
+            serializedStores++;
+            return put(id, data);
+        }
+
+        private boolean put(String id, byte[] data) {
+            CountDownLatch waitFor = release;
+            if (waitFor != null) {
+                started.countDown();
+                try {
+                    waitFor.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (failing)
+                return false;
+            sessions.put(id, data);
+            return true;
+        }
+
+        @Override
+        public void remove(String id) {
+            sessions.remove(id);
+        }
+
+        @Override
+        public SessionData load(String id) {
+            CountDownLatch waitFor = loadRelease;
+            if (waitFor != null) {
+                loading.countDown();
+                try {
+                    waitFor.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            byte[] data = sessions.get(id);
+            if (data == null)
+                return null;
+
+            try (InputStream in = getCompressor().decompress(new ByteArrayInputStream(data))) {
+                return getSerializer().readSessionData(in);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public List<StoredSession> stored() {
+            List<StoredSession> stored = new ArrayList<>();
+            for (Map.Entry<String, byte[]> entry : sessions.entrySet()) {
+                stored.add(new StoredSession(entry.getKey(), entry.getValue().length));
+            }
+            return stored;
+        }
+
+        @Override
+        public long capacity() {
+            return 1L << 30;
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+package core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RelocationExecutorTest {
+
+    private RelocationExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new RelocationExecutor(2, 4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testCycle() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger(0);
+        long deadline = System.currentTimeMillis() + 5000;
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(executor.awaitCapacity(deadline));
+            executor.submit("session" + i, count::incrementAndGet);
+        }
+
+        assertEquals(0, executor.awaitCycle(deadline));
+        assertEquals(100, count.get());
+        assertFalse(executor.isPending("session0"));
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger(0);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            count.incrementAndGet();
+        };
+
+        long deadline = System.currentTimeMillis() + 200;
+        int submitted = 0;
+        while (executor.awaitCapacity(deadline)) {
+            executor.submit("session" + submitted, blocked);
+            submitted++;
+        }
+
+        // Two relocations are running, the other two are waiting and get cancelled
+        assertEquals(4, submitted);
+        assertEquals(4, executor.awaitCycle(deadline));
+        assertTrue(executor.isPending("session0"));
+        assertFalse(executor.isPending("session3"));
+
+        release.countDown();
+        long timeout = System.currentTimeMillis() + 5000;
+        while ((executor.isPending("session0") || executor.isPending("session1")) && System.currentTimeMillis() < timeout)
+            Thread.sleep(10);
+        assertFalse(executor.isPending("session0"));
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    public void testUncancellable() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger count = new AtomicInteger(0);
+        Runnable blocked = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            count.incrementAndGet();
+        };
+
+        long deadline = System.currentTimeMillis() + 200;
+        executor.submit("session0", blocked);
+        executor.submit("session1", blocked);
+        executor.submit(Collections.singletonList("removal"), count::incrementAndGet, false);
+
+        // The removal is still waiting at the deadline, but is not cancelled
+        assertEquals(3, executor.awaitCycle(deadline));
+        assertTrue(executor.isPending("removal"));
+
+        release.countDown();
+        long timeout = System.currentTimeMillis() + 5000;
+        while (executor.isPending("removal") && System.currentTimeMillis() < timeout)
+            Thread.sleep(10);
+        assertFalse(executor.isPending("removal"));
+        assertEquals(3, count.get());
+    }
+
+}
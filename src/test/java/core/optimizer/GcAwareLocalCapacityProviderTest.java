@@ -0,0 +1,63 @@
+package core.optimizer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GcAwareLocalCapacityProviderTest {
+
+    private static final long HEAP = 1000000;
+
+    private GcAwareLocalCapacityProvider provider;
+
+    @Before
+    public void setUp() {
+        provider = new GcAwareLocalCapacityProvider();
+        provider.setRatio(0.5);
+        provider.setTargetOccupancy(0.7);
+        provider.setMaxGcRatio(0.05);
+    }
+
+    @Test
+    public void testBoundedByRatio() {
+        assertEquals(HEAP / 2, provider.adjust(HEAP, HEAP, 0, 0, 0));
+    }
+
+    @Test
+    public void testBoundedByHeadroom() {
+        // 700000 may be occupied after collection, 600000 is, of which the sessions hold 100000.
+        assertEquals(200000, provider.adjust(HEAP, HEAP, 600000, 0, 100000));
+        // Above the target occupancy, the sessions may not grow.
+        assertEquals(0, provider.adjust(HEAP, HEAP, 900000, 0, 100000));
+    }
+
+    @Test
+    public void testGcPressure() {
+        long previous = provider.adjust(HEAP, HEAP, 0, 0, 0);
+        for (int i = 0; i < 5; i++) {
+            long capacity = provider.adjust(HEAP, HEAP, 0, 0.2, 0);
+            assertTrue(capacity < previous);
+            previous = capacity;
+        }
+
+        // Stays put between half and all of the maximum GC ratio.
+        assertEquals(previous, provider.adjust(HEAP, HEAP, 0, 0.04, 0));
+
+        for (int i = 0; i < 100; i++) {
+            provider.adjust(HEAP, HEAP, 0, 0, 0);
+        }
+        assertEquals(1, provider.getScale(), 0);
+        assertEquals(HEAP / 2, provider.adjust(HEAP, HEAP, 0, 0, 0));
+    }
+
+    @Test
+    public void testTelemetry() {
+        long capacity = provider.getLocalCapacity(0);
+        System.out.println("Local capacity: " + capacity);
+
+        assertTrue(capacity >= 0);
+        assertTrue(capacity <= Runtime.getRuntime().maxMemory() / 2);
+    }
+
+}
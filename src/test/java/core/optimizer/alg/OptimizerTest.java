@@ -0,0 +1,219 @@
+package core.optimizer.alg;
+
+import core.optimizer.*;
+import core.storage.AbstractSessionStorage;
+import core.storage.SessionData;
+import core.storage.SessionStorage;
+import core.storage.StoredSession;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OptimizerTest {
+
+    private static final int SESSIONS = 200;
+
+    private OptimizationData data;
+    private SessionStorage storage;
+
+    @Before
+    public void setUp() {
+        Random rng = new Random(42);
+        data = new OptimizationData();
+        storage = newStorage();
+
+        long localTotal = 0;
+        long remoteTotal = 0;
+        for (int i = 0; i < SESSIONS; i++) {
+            SessionProperties properties = new SessionProperties();
+            properties.value = 0.5 + rng.nextDouble();
+            properties.localSize = 1024L + rng.nextInt(10240);
+            properties.remoteSize = properties.localSize / 2;
+            properties.oldPlacement = SessionPlacement.LOCAL;
+            data.putSessionProperties("session" + i, properties);
+            localTotal += properties.localSize;
+            remoteTotal += properties.remoteSize;
+        }
+
+        StorageProperties storageProperties = new StorageProperties();
+        storageProperties.capacity = remoteTotal / 2;
+        storageProperties.readCost = 4E-4;
+        storageProperties.writeCost = 5E-3;
+        storageProperties.storageCost = 3E-8;
+        data.putStorageProperties(storage, storageProperties);
+        data.localCapacity = localTotal / 3;
+        data.localMTTF = 600;
+        data.optimizerPeriod = 30;
+    }
+
+    private static SessionStorage newStorage() {
+        return new AbstractSessionStorage() {
+            public boolean store(SessionData session) {
+                return true;
+            }
+
+            public void remove(String id) {
+            }
+
+            public SessionData load(String id) {
+                return null;
+            }
+
+            public List<StoredSession> stored() {
+                return new ArrayList<>();
+            }
+
+            public long capacity() {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testSessionTable() {
+        SessionTable table = data.getSessionTable();
+        assertEquals(SESSIONS, table.size());
+
+        for (int i = 0; i < table.size(); i++) {
+            String id = table.getId(i);
+            SessionProperties properties = data.getSessionProperties(id);
+            assertEquals(i, data.indexOf(id));
+            assertEquals((long) properties.localSize, table.localSize[i]);
+            assertEquals((long) properties.remoteSize, table.remoteSize[i]);
+            assertEquals(properties.value, table.value[i], 0);
+            assertEquals(properties.oldPlacement, table.getOldPlacement(i));
+        }
+
+        assertEquals(-1, data.indexOf("unknown"));
+    }
+
+    @Test
+    public void testOptimizers() {
+        SessionOptimizer[] optimizers = {
+                new GreedyOptimizer(),
+                new PackedGreedyOptimizer(),
+                new GreedyAdjustedOptimizer(),
+                new GreedyToyodaOptimizer(),
+                new LPOptimizer(),
+                new CHPOptimizer(),
+                new LocalOptimizer(),
+                new RemoteOptimizer(),
+                new BothOptimizer(),
+                new RandomAllowDropOptimizer(),
+                new RandomNoDropOptimizer()
+        };
+
+        for (SessionOptimizer optimizer : optimizers) {
+            SessionOptimizerSolution solution = optimizer.optimize(data);
+            String name = optimizer.getClass().getSimpleName();
+            assertNotNull(name, solution);
+
+            long localUsed = 0;
+            long remoteUsed = 0;
+            for (String session : data.getSessions()) {
+                SessionPlacement placement = solution.getNewPlacement(session);
+                assertNotNull(name + " did not place " + session, placement);
+                SessionProperties properties = data.getSessionProperties(session);
+                if (placement == SessionPlacement.LOCAL || placement == SessionPlacement.BOTH)
+                    localUsed += properties.localSize;
+                if (placement == SessionPlacement.REMOTE || placement == SessionPlacement.BOTH)
+                    remoteUsed += properties.remoteSize;
+            }
+
+            assertTrue(name + " exceeded local capacity", localUsed <= data.localCapacity);
+            assertTrue(name + " exceeded remote capacity", remoteUsed <= data.getStorageProperties(storage).capacity);
+
+            System.out.println(name + ": " + solution.getValue());
+        }
+    }
+
+    @Test
+    public void testSingleStorageUtility() {
+        // A single storage is taken to be reliable, whatever its MTTF
+        StorageProperties properties = data.getStorageProperties(storage);
+        properties.MTTF = 60;
+        SessionTable table = data.getSessionTable();
+        GreedyOptimizer optimizer = new GreedyOptimizer();
+
+        double value = table.value[0];
+        double size = table.remoteSize[0] / 1048576.0D;
+        double localReliability = Math.exp(-(data.optimizerPeriod / data.localMTTF));
+        double remote = value - properties.writeCost - properties.readCost - properties.storageCost * data.optimizerPeriod * size;
+        double both = value - properties.writeCost - (1 - localReliability) * properties.readCost
+                - properties.storageCost * data.optimizerPeriod * size;
+
+        assertEquals(value * localReliability, optimizer.evaluateUtility(0, SessionPlacement.LOCAL, properties, table, data), 1E-12);
+        assertEquals(remote, optimizer.evaluateUtility(0, SessionPlacement.REMOTE, properties, table, data), 1E-12);
+        assertEquals(both, optimizer.evaluateUtility(0, SessionPlacement.BOTH, properties, table, data), 1E-12);
+        assertEquals(0, optimizer.evaluateUtility(0, SessionPlacement.DROP, properties, table, data), 0);
+        assertEquals(both, optimizer.evaluateUtility(0, SessionPlacement.BOTH.getMask(),
+                new StorageProperties[]{properties}, table, data), 1E-12);
+    }
+
+    @Test
+    public void testTieredOptimizers() {
+        // A second, larger and unreliable storage that is cheaper to keep sessions in
+        SessionStorage archive = newStorage();
+        long archiveTotal = 0;
+        for (String session : data.getSessions()) {
+            SessionProperties properties = data.getSessionProperties(session);
+            properties.storageSizes = new long[]{properties.remoteSize, properties.remoteSize / 2};
+            archiveTotal += properties.storageSizes[1];
+        }
+
+        StorageProperties archiveProperties = new StorageProperties();
+        archiveProperties.capacity = archiveTotal / 2;
+        archiveProperties.MTTF = 3600;
+        archiveProperties.readCost = 1E-3;
+        archiveProperties.writeCost = 1E-3;
+        archiveProperties.storageCost = 1E-8;
+        data.putStorageProperties(archive, archiveProperties);
+
+        SessionTable table = data.getSessionTable();
+        assertEquals(2, table.storages());
+        assertSame(table.remoteSize, table.storageSize[0]);
+
+        SessionOptimizer[] optimizers = {
+                new GreedyOptimizer(),
+                new PackedGreedyOptimizer(),
+                new LPOptimizer(),
+                new CHPOptimizer()
+        };
+
+        for (SessionOptimizer optimizer : optimizers) {
+            SessionOptimizerSolution solution = optimizer.optimize(data);
+            String name = optimizer.getClass().getSimpleName();
+            assertNotNull(name, solution);
+
+            long[] used = new long[3];
+            int archived = 0;
+            for (String session : data.getSessions()) {
+                int mask = solution.getNewPlacementMask(session);
+                assertTrue(name + " did not place " + session, mask >= 0);
+                assertTrue(name + " used an unknown storage", mask < 8);
+                SessionProperties properties = data.getSessionProperties(session);
+                if ((mask & SessionPlacement.LOCAL_BIT) != 0)
+                    used[0] += properties.localSize;
+                if ((mask & SessionPlacement.storageBit(0)) != 0)
+                    used[1] += properties.storageSizes[0];
+                if ((mask & SessionPlacement.storageBit(1)) != 0) {
+                    used[2] += properties.storageSizes[1];
+                    archived++;
+                }
+            }
+
+            assertTrue(name + " exceeded local capacity", used[0] <= data.localCapacity);
+            assertTrue(name + " exceeded remote capacity", used[1] <= data.getStorageProperties(storage).capacity);
+            assertTrue(name + " exceeded archive capacity", used[2] <= archiveProperties.capacity);
+            assertTrue(name + " did not use the archive", archived > 0);
+
+            System.out.println(name + " (tiered): " + solution.getValue());
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package core.storage;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.*;
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class AmazonS3SessionStorageTest {
+
+    @Test
+    public void testStoreFromMemory() throws Exception {
+        LocalS3Client client = new LocalS3Client();
+        AmazonS3SessionStorage storage = open(client, 1024 * 1024, 512 * 1024, 1);
+
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.storeSerialized("b", new byte[]{1, 2, 3}));
+
+        // Sessions are stored under their ids, with their exact length
+        assertEquals(new HashSet<>(Arrays.asList("a.session", "b.session")), client.objects.keySet());
+        assertArrayEquals(serialize(session("a", "first")), client.objects.get("a.session"));
+        assertArrayEquals(new byte[]{1, 2, 3}, client.objects.get("b.session"));
+        assertEquals(0, client.uploads);
+    }
+
+    @Test
+    public void testMultipartUpload() throws Exception {
+        LocalS3Client client = new LocalS3Client();
+        AmazonS3SessionStorage storage = open(client, 1000, 400, 1);
+        byte[] data = new byte[1100];
+        new Random(1).nextBytes(data);
+
+        assertTrue(storage.storeSerialized("a", data));
+        assertEquals(1, client.uploads);
+        assertEquals(Arrays.asList(400, 400, 300), client.partSizes);
+        assertArrayEquals(data, client.objects.get("a.session"));
+
+        // The buffer of a large session is reused for the next one
+        assertTrue(storage.store(session("b", new String(new char[2000]))));
+        assertTrue(storage.store(session("c", "small")));
+        assertArrayEquals(serialize(session("c", "small")), client.objects.get("c.session"));
+    }
+
+    @Test
+    public void testAbortedUpload() throws Exception {
+        LocalS3Client client = new LocalS3Client();
+        client.failPart = 2;
+        AmazonS3SessionStorage storage = open(client, 1000, 400, 1);
+
+        assertFalse(storage.storeSerialized("a", new byte[1100]));
+        assertEquals(1, client.aborted);
+        assertTrue(client.objects.isEmpty());
+    }
+
+    @Test
+    public void testShardedKeys() {
+        LocalS3Client client = new LocalS3Client();
+        AmazonS3SessionStorage storage = open(client, 1024 * 1024, 512 * 1024, 16);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(storage.store(session("session" + i, "value" + i)));
+        }
+
+        Set<String> prefixes = new HashSet<>();
+        for (String key : client.objects.keySet()) {
+            assertTrue(key.matches("[0-9a-f]{2}/session[0-9]+\\.session"));
+            prefixes.add(key.substring(0, 3));
+        }
+        assertTrue(prefixes.size() > 1);
+
+        assertEquals("value7", storage.load("session7").getAttributes().get("value"));
+        storage.removeAll(Arrays.asList("session1", "session2"));
+        storage.remove("session3");
+        assertEquals(97, client.objects.size());
+    }
+
+    @Test
+    public void testCachedListing() {
+        LocalS3Client client = new LocalS3Client();
+        AmazonS3SessionStorage storage = open(client, 1024 * 1024, 512 * 1024, 16, 2);
+        AmazonS3SessionStorage otherNode = open(client, 1024 * 1024, 512 * 1024, 16, 2);
+        for (int i = 0; i < 20; i++) {
+            otherNode.storeSerialized("session" + i, new byte[i]);
+        }
+
+        // Every shard is listed, page by page
+        StoredSessionChanges changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertEquals(20, changes.getStored().size());
+        assertEquals(5L, sizes(changes.getStored()).get("session5").longValue());
+        int listings = client.listings.get();
+        assertTrue(listings >= 16);
+
+        // Changes made through the storage are listed from the cache
+        storage.storeSerialized("session20", new byte[20]);
+        storage.remove("session0");
+        otherNode.storeSerialized("session21", new byte[21]);
+        changes = storage.changes();
+        assertFalse(changes.isComplete());
+        assertEquals(Collections.singletonMap("session20", 20L), sizes(changes.getStored()));
+        assertEquals(Collections.singleton("session0"), changes.getRemoved());
+        assertEquals(20, storage.stored().size());
+        assertEquals(listings, client.listings.get());
+
+        // Until the bucket is listed in full again
+        changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertTrue(sizes(changes.getStored()).containsKey("session21"));
+        assertEquals(21, storage.stored().size());
+        assertTrue(client.listings.get() > listings);
+    }
+
+    private static Map<String, Long> sizes(List<StoredSession> sessions) {
+        Map<String, Long> sizes = new HashMap<>();
+        for (StoredSession session : sessions) {
+            sizes.put(session.getSessionId(), session.getRemoteSize());
+        }
+        return sizes;
+    }
+
+    private static AmazonS3SessionStorage open(LocalS3Client client, int multipartThreshold, int partSize, int shards) {
+        return open(client, multipartThreshold, partSize, shards, 10);
+    }
+
+    private static AmazonS3SessionStorage open(LocalS3Client client, int multipartThreshold, int partSize,
+                                               int shards, int listingInterval) {
+        AmazonS3SessionStorage storage = new AmazonS3SessionStorage(client, "bucket", multipartThreshold, partSize,
+                shards, listingInterval);
+        storage.setSerializer(new JavaSerializer());
+        storage.setCompressor(new NoCompressor());
+        return storage;
+    }
+
+    private static byte[] serialize(SessionData session) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JavaSerializer().writeSessionData(session, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Client keeping the uploaded objects in memory instead of sending them to S3.
+     */
+    private static class LocalS3Client extends AmazonS3Client {
+
+        private static final int PAGE_SIZE = 2;
+
+        final ConcurrentNavigableMap<String, byte[]> objects = new ConcurrentSkipListMap<>();
+        final AtomicInteger listings = new AtomicInteger();
+        final Map<Integer, byte[]> parts = new TreeMap<>();
+        final List<Integer> partSizes = new ArrayList<>();
+        int uploads = 0;
+        int aborted = 0;
+        int failPart = 0;
+
+        LocalS3Client() {
+            super(new BasicAWSCredentials("access", "secret"));
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            assertNull(request.getFile());
+            objects.put(request.getKey(), read(request.getInputStream(), request.getMetadata().getContentLength()));
+            return new PutObjectResult();
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(objects.get(request.getKey())));
+            return object;
+        }
+
+        @Override
+        public void deleteObject(DeleteObjectRequest request) {
+            objects.remove(request.getKey());
+        }
+
+        @Override
+        public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+            for (DeleteObjectsRequest.KeyVersion key : request.getKeys()) {
+                objects.remove(key.getKey());
+            }
+            return new DeleteObjectsResult(new ArrayList<>());
+        }
+
+        @Override
+        public ObjectListing listObjects(ListObjectsRequest request) {
+            listings.incrementAndGet();
+            ObjectListing listing = new ObjectListing();
+            Map<String, byte[]> tail = request.getMarker() != null ? objects.tailMap(request.getMarker(), false) : objects;
+            for (Map.Entry<String, byte[]> entry : tail.entrySet()) {
+                if (!entry.getKey().startsWith(request.getPrefix()))
+                    continue;
+                if (listing.getObjectSummaries().size() == PAGE_SIZE) {
+                    listing.setTruncated(true);
+                    break;
+                }
+
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(entry.getKey());
+                summary.setSize(entry.getValue().length);
+                listing.getObjectSummaries().add(summary);
+            }
+            return listing;
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            uploads++;
+            parts.clear();
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload" + uploads);
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            if (request.getPartNumber() == failPart)
+                throw new AmazonClientException("Part failed");
+
+            partSizes.add((int) request.getPartSize());
+            parts.put(request.getPartNumber(), read(request.getInputStream(), request.getPartSize()));
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            for (PartETag part : request.getPartETags()) {
+                byte[] data = parts.get(part.getPartNumber());
+                object.write(data, 0, data.length);
+            }
+            objects.put(request.getKey(), object.toByteArray());
+            return new CompleteMultipartUploadResult();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted++;
+            parts.clear();
+        }
+
+        private static byte[] read(InputStream in, long length) {
+            try {
+                byte[] data = new byte[(int) length];
+                int offset = 0;
+                int read;
+                while (offset < length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                    offset += read;
+                }
+                assertEquals(length, offset);
+                assertEquals(-1, in.read());
+                return data;
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+    }
+
+}
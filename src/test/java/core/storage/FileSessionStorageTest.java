@@ -0,0 +1,127 @@
+package core.storage;
+
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class FileSessionStorageTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sessions");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : files()) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testSyncWrites() throws IOException {
+        FileSessionStorage storage = open(FileSessionStorage.Durability.SYNC, 10);
+
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("a", "updated")));
+        assertTrue(storage.storeSerialized("b", new byte[]{1, 2, 3}));
+
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(directory.resolve("b.session")));
+        assertEquals(2, storage.stored().size());
+        assertEquals(2, files().size());
+
+        storage.remove("b");
+        assertNull(storage.load("b"));
+        assertEquals(1, storage.stored().size());
+    }
+
+    @Test
+    public void testGroupCommit() throws IOException {
+        FileSessionStorage storage = open(FileSessionStorage.Durability.GROUP, 10);
+
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("a", "updated")));
+        assertTrue(storage.store(session("b", "second")));
+
+        // Sessions are synced and renamed into place before the stores return
+        assertTrue(Files.exists(directory.resolve("a.session")));
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertEquals(2, storage.stored().size());
+        assertEquals(2, files().size());
+
+        assertTrue(storage.store(session("a", "again")));
+        storage.remove("a");
+        assertNull(storage.load("a"));
+        assertEquals(1, storage.stored().size());
+        assertEquals(1, files().size());
+    }
+
+    @Test
+    public void testGroupSize() throws IOException {
+        FileSessionStorage storage = open(FileSessionStorage.Durability.GROUP, 3);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(storage.storeSerialized("session" + i, new byte[]{(byte) i}));
+        }
+        assertTrue(Files.exists(directory.resolve("session3.session")));
+
+        // Larger than a group, and with a session written twice
+        Set<String> stored = storage.storeAll(Arrays.asList(session("a", "first"), session("b", "second"),
+                session("a", "updated"), session("c", "third"), session("d", "fourth")));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c", "d")), stored);
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertEquals(8, storage.stored().size());
+        assertEquals(8, files().size());
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        FileSessionStorage storage = open(FileSessionStorage.Durability.GROUP, 10);
+        assertTrue(storage.store(session("a", "committed")));
+        assertTrue(storage.store(session("a", "stored")));
+        assertTrue(storage.store(session("b", "stored")));
+        // A write interrupted by a crash
+        Files.write(directory.resolve("c.session.1.tmp"), new byte[]{1, 2, 3});
+
+        // Sessions reported as stored survive a crash, and partial writes are removed on startup
+        storage = open(FileSessionStorage.Durability.GROUP, 10);
+        assertEquals("stored", storage.load("a").getAttributes().get("value"));
+        assertEquals("stored", storage.load("b").getAttributes().get("value"));
+        assertNull(storage.load("c"));
+        assertEquals(2, storage.stored().size());
+        assertEquals(2, files().size());
+    }
+
+    private FileSessionStorage open(FileSessionStorage.Durability durability, int groupSize) throws IOException {
+        FileSessionStorage opened = new FileSessionStorage(directory, durability, groupSize);
+        opened.setSerializer(new JavaSerializer());
+        opened.setCompressor(new NoCompressor());
+        return opened;
+    }
+
+    private List<Path> files() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+}
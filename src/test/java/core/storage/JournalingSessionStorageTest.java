@@ -0,0 +1,65 @@
+package core.storage;
+
+import core.SessionJournal;
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournalingSessionStorageTest {
+
+    @Test
+    public void testStoredResynchronizes() {
+        OffHeapSessionStorage delegate = new OffHeapSessionStorage(4096, 4096);
+        JournalingSessionStorage storage = open(delegate);
+
+        assertTrue(storage.storeSerialized("a", new byte[]{1}));
+        delegate.storeSerialized("b", new byte[]{2});
+        delegate.remove("a");
+        assertTrue(storage.isStored("a"));
+
+        assertEquals(1, storage.stored().size());
+        assertFalse(storage.isStored("a"));
+        assertTrue(storage.isStored("b"));
+    }
+
+    @Test
+    public void testChangesWhileListing() {
+        JournalingSessionStorage[] storage = new JournalingSessionStorage[1];
+        OffHeapSessionStorage delegate = new OffHeapSessionStorage(4096, 4096) {
+            @Override
+            public List<StoredSession> stored() {
+                // The listing is taken before the concurrent store and remove complete
+                List<StoredSession> sessions = super.stored();
+                storage[0].storeSerialized("new", new byte[]{1});
+                storage[0].remove("old");
+                return sessions;
+            }
+        };
+        storage[0] = open(delegate);
+        assertTrue(storage[0].storeSerialized("old", new byte[]{1}));
+
+        storage[0].stored();
+        assertTrue(storage[0].isStored("new"));
+        assertFalse(storage[0].isStored("old"));
+    }
+
+    @Test
+    public void testFullScanRequest() {
+        SessionJournal journal = new SessionJournal();
+        assertTrue(journal.takeFullScanRequest());
+        assertFalse(journal.takeFullScanRequest());
+        journal.requestFullScan();
+        assertTrue(journal.takeFullScanRequest());
+    }
+
+    private static JournalingSessionStorage open(SessionStorage delegate) {
+        delegate.setSerializer(new JavaSerializer());
+        delegate.setCompressor(new NoCompressor());
+        return new JournalingSessionStorage(delegate, new SessionJournal());
+    }
+
+}
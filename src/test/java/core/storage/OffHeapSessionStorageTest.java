@@ -0,0 +1,108 @@
+package core.storage;
+
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class OffHeapSessionStorageTest {
+
+    private static final int SLAB_SIZE = 4096;
+
+    private OffHeapSessionStorage storage;
+
+    @Before
+    public void setUp() {
+        storage = new OffHeapSessionStorage(4 * SLAB_SIZE, SLAB_SIZE);
+        storage.setSerializer(new JavaSerializer());
+        storage.setCompressor(new NoCompressor());
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("b", "second")));
+
+        assertEquals("first", storage.load("a").getAttributes().get("value"));
+        assertEquals("second", storage.load("b").getAttributes().get("value"));
+        assertNull(storage.load("c"));
+        assertEquals(2, storage.stored().size());
+
+        assertTrue(storage.store(session("a", "updated")));
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertEquals(2, storage.stored().size());
+
+        storage.remove("a");
+        assertNull(storage.load("a"));
+        assertEquals(1, storage.stored().size());
+    }
+
+    @Test
+    public void testTooLarge() {
+        assertFalse(storage.storeSerialized("large", new byte[SLAB_SIZE]));
+        assertNull(storage.loadSerialized("large"));
+    }
+
+    @Test
+    public void testCompaction() {
+        byte[] data = new byte[1000];
+
+        // Overwrite the same sessions many times over the capacity of the slabs
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 5; i++) {
+                Arrays.fill(data, (byte) (round + i));
+                assertTrue("Round " + round, storage.storeSerialized("session" + i, data));
+            }
+        }
+
+        assertTrue(storage.allocated() <= storage.capacity());
+        for (int i = 0; i < 5; i++) {
+            byte[] loaded = storage.loadSerialized("session" + i);
+            assertEquals(1000, loaded.length);
+            assertEquals((byte) (49 + i), loaded[0]);
+            assertEquals((byte) (49 + i), loaded[999]);
+        }
+    }
+
+    @Test
+    public void testCompactInPlace() {
+        OffHeapSessionStorage single = new OffHeapSessionStorage(SLAB_SIZE, SLAB_SIZE);
+        byte[] data = new byte[1000];
+
+        // Four records of 1023 bytes fill the slab
+        for (int i = 0; i < 4; i++) {
+            Arrays.fill(data, (byte) i);
+            assertTrue(single.storeSerialized("session" + i, data));
+        }
+        assertFalse(single.storeSerialized("session4", data));
+
+        single.remove("session1");
+        Arrays.fill(data, (byte) 4);
+        assertTrue(single.storeSerialized("session4", data));
+
+        assertNull(single.loadSerialized("session1"));
+        for (int i : new int[]{0, 2, 3, 4}) {
+            byte[] loaded = single.loadSerialized("session" + i);
+            assertEquals((byte) i, loaded[0]);
+            assertEquals((byte) i, loaded[999]);
+        }
+    }
+
+    @Test
+    public void testFull() {
+        byte[] data = new byte[1000];
+        int stored = 0;
+        while (storage.storeSerialized("session" + stored, data))
+            stored++;
+
+        assertEquals(4 * 4, stored);
+        storage.remove("session0");
+        assertTrue(storage.storeSerialized("another", data));
+    }
+
+}
@@ -0,0 +1,259 @@
+package core.storage;
+
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.After;
+import org.junit.Test;
+import server.store.ChangeLog;
+import server.store.SessionStoreServer;
+import server.store.SessionStoreServlet;
+import server.store.Throttle;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class RestSessionStorageTest {
+
+    private static final int SLAB_SIZE = 64 * 1024;
+
+    private final OffHeapSessionStorage backend = new OffHeapSessionStorage(4 * SLAB_SIZE, SLAB_SIZE);
+    private SessionStoreServer server;
+    private ListingServlet servlet;
+    private RestSessionStorage storage;
+    // Another client of the same service, standing in for the other nodes
+    private RestSessionStorage otherNode;
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null)
+            server.stop();
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        open(true);
+
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("a", "updated")));
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+
+        storage.remove("a");
+        assertNull(storage.load("a"));
+    }
+
+    @Test
+    public void testPooledConnections() throws Exception {
+        open(true);
+        List<SessionData> sessions = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            sessions.add(session("session" + i, "value" + i));
+        }
+
+        assertEquals(50, storage.storeAll(sessions).size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(storage.store(session("session" + i, "updated" + i)));
+        }
+        assertEquals("updated3", storage.load("session3").getAttributes().get("value"));
+        assertNull(storage.load("missing"));
+
+        // Connections are returned to the pool and kept alive, rather than opened per request
+        int available = storage.getConnectionManager().getTotalStats().getAvailable();
+        System.out.println("Pooled connections: " + available);
+        assertEquals(0, storage.getConnectionManager().getTotalStats().getLeased());
+        assertTrue(available > 0);
+        assertTrue(available <= storage.getConnectionManager().getMaxTotal());
+    }
+
+    @Test
+    public void testBufferedTransport() throws Exception {
+        start(true, 100);
+        storage = client(0, false);
+
+        assertNull(storage.getConnectionManager());
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.storeSerialized("b", new byte[]{1, 2, 3}));
+        assertEquals("first", storage.load("a").getAttributes().get("value"));
+        assertEquals(2, storage.stored().size());
+    }
+
+    @Test
+    public void testUnreachableService() throws Exception {
+        // Nothing listens on the port once the socket is closed
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        storage = new RestSessionStorage("http://localhost:" + port, 4, 500, 500, true);
+        storage.setSerializer(new JavaSerializer());
+        storage.setCompressor(new NoCompressor());
+
+        assertFalse(storage.store(session("a", "first")));
+        assertFalse(storage.storeSerialized("b", new byte[]{1, 2, 3}));
+        assertFalse(storage.storeAsync(session("c", "third")).get());
+        assertNull(storage.load("a"));
+        storage.remove("a");
+        assertEquals(0, storage.capacity());
+        assertTrue(storage.stored().isEmpty());
+    }
+
+    @Test
+    public void testIncrementalListing() throws Exception {
+        open(true);
+        put("a", 10);
+        put("b", 20);
+
+        StoredSessionChanges changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertEquals(2, changes.getStored().size());
+
+        // Only the changes since the previous listing are transferred
+        put("c", 30);
+        put("a", 15);
+        otherNode.remove("b");
+        changes = storage.changes();
+        assertFalse(changes.isComplete());
+        assertEquals(sizes("a", 15L, "c", 30L), sizes(changes.getStored()));
+        assertEquals(Collections.singleton("b"), changes.getRemoved());
+
+        assertTrue(storage.changes().isEmpty());
+        assertEquals(sizes("a", 15L, "c", 30L), sizes(storage.stored()));
+        assertEquals(1, servlet.completeListings.get());
+    }
+
+    @Test
+    public void testCompleteListings() throws Exception {
+        start(true, 2);
+        storage = client(0, true);
+        otherNode = client(0, true);
+        put("a", 10);
+        put("b", 20);
+        storage.changes();
+
+        // Removals are found by comparing complete listings to the mirror,
+        // once the service has discarded the changes since the cursor
+        otherNode.remove("a");
+        put("b", 20);
+        put("c", 30);
+        StoredSessionChanges changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertEquals(Collections.singleton("a"), changes.getRemoved());
+        assertEquals(2, servlet.completeListings.get());
+
+        // or has been restarted with a new epoch
+        otherNode.remove("c");
+        int port = server.getPort();
+        server.stop();
+        Thread.sleep(2);
+        start(port, true, 2);
+        changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertEquals(sizes("b", 20L), sizes(changes.getStored()));
+        assertEquals(Collections.singleton("c"), changes.getRemoved());
+        assertEquals(1, servlet.completeListings.get());
+    }
+
+    @Test
+    public void testFullListingFallback() throws Exception {
+        open(false);
+        put("a", 10);
+        put("b", 20);
+        assertEquals(sizes("a", 10L, "b", 20L), sizes(storage.stored()));
+
+        otherNode.remove("a");
+        StoredSessionChanges changes = storage.changes();
+        assertTrue(changes.isComplete());
+        assertEquals(Collections.singleton("a"), changes.getRemoved());
+        assertEquals(sizes("b", 20L), sizes(storage.stored()));
+    }
+
+    private void open(boolean incremental) throws Exception {
+        start(incremental, 100);
+        storage = client(8, true);
+        otherNode = client(8, true);
+    }
+
+    private void start(boolean incremental, int maxChanges) throws Exception {
+        start(0, incremental, maxChanges);
+    }
+
+    private void start(int port, boolean incremental, int maxChanges) throws Exception {
+        servlet = new ListingServlet(backend, new ChangeLog(maxChanges), incremental);
+        server = new SessionStoreServer(port, servlet);
+        server.start();
+    }
+
+    private RestSessionStorage client(int maxConnections, boolean streaming) {
+        RestSessionStorage client = new RestSessionStorage("http://localhost:" + server.getPort(),
+                maxConnections, 3000, 5000, streaming);
+        client.setSerializer(new JavaSerializer());
+        client.setCompressor(new NoCompressor());
+        return client;
+    }
+
+    private void put(String id, int size) {
+        assertTrue(otherNode.storeSerialized(id, new byte[size]));
+    }
+
+    private static Map<String, Long> sizes(Object... entries) {
+        Map<String, Long> sizes = new HashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            sizes.put((String) entries[i], (Long) entries[i + 1]);
+        }
+        return sizes;
+    }
+
+    private static Map<String, Long> sizes(List<StoredSession> sessions) {
+        Map<String, Long> sizes = new HashMap<>();
+        for (StoredSession session : sessions) {
+            sizes.put(session.getSessionId(), session.getRemoteSize());
+        }
+        return sizes;
+    }
+
+    /**
+     * The reference servlet, counting the complete listings it serves, from either endpoint,
+     * and answering sessions/changes with 404 unless incremental.
+     */
+    private static class ListingServlet extends SessionStoreServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        final AtomicInteger completeListings = new AtomicInteger();
+        private final ChangeLog changeLog;
+        private final boolean incremental;
+
+        ListingServlet(ArenaSessionStorage backend, ChangeLog changeLog, boolean incremental) {
+            super(backend, new JavaSerializer(), new NoCompressor(), new Throttle(0, 0), changeLog);
+            this.changeLog = changeLog;
+            this.incremental = incremental;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+            if ("/changes".equals(request.getPathInfo())) {
+                if (!incremental) {
+                    response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+
+                String epoch = request.getParameter("epoch");
+                String since = request.getParameter("since");
+                if (epoch == null || since == null || changeLog.since(Long.parseLong(epoch), Long.parseLong(since)) == null)
+                    completeListings.incrementAndGet();
+            } else if ("/stored".equals(request.getPathInfo())) {
+                completeListings.incrementAndGet();
+            }
+
+            super.doGet(request, response);
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package core.storage;
+
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class SegmentSessionStorageTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private Path directory;
+    private SegmentSessionStorage storage;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segments");
+        storage = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        storage.shutdown();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("b", "second")));
+        assertTrue(storage.store(session("a", "updated")));
+
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertEquals("second", storage.load("b").getAttributes().get("value"));
+        assertEquals(2, storage.stored().size());
+
+        storage.remove("b");
+        assertNull(storage.load("b"));
+        assertEquals(1, storage.stored().size());
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < 6; i++) {
+            Arrays.fill(data, (byte) i);
+            assertTrue(storage.storeSerialized("session" + i, data));
+        }
+        Arrays.fill(data, (byte) 10);
+        assertTrue(storage.storeSerialized("session0", data));
+        storage.remove("session1");
+        storage.shutdown();
+
+        storage = open();
+        Set<String> ids = new HashSet<>();
+        for (StoredSession session : storage.stored()) {
+            ids.add(session.getSessionId());
+            assertEquals(1000, session.getRemoteSize());
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("session0", "session2", "session3", "session4", "session5")), ids);
+        assertEquals((byte) 10, storage.loadSerialized("session0")[0]);
+        assertEquals((byte) 5, storage.loadSerialized("session5")[999]);
+
+        // New records go after the recovered ones
+        assertTrue(storage.storeSerialized("session6", data));
+        assertEquals((byte) 5, storage.loadSerialized("session5")[0]);
+    }
+
+    @Test
+    public void testCompactSparsest() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < 8; i++) {
+            Arrays.fill(data, (byte) i);
+            assertTrue(storage.storeSerialized("session" + i, data));
+        }
+
+        // Leave a single live record in the first segment
+        for (int i = 1; i < 4; i++) {
+            storage.remove("session" + i);
+        }
+        assertEquals(0, storage.compactSparsest(0.9));
+        assertTrue(storage.compactSparsest(0.5) > 0);
+
+        for (int i : new int[]{0, 4, 5, 6, 7}) {
+            byte[] loaded = storage.loadSerialized("session" + i);
+            assertEquals((byte) i, loaded[0]);
+            assertEquals((byte) i, loaded[999]);
+        }
+
+        // The moved record is found again after a restart, and not its original
+        storage.shutdown();
+        storage = open();
+        assertEquals(5, storage.stored().size());
+        assertEquals((byte) 0, storage.loadSerialized("session0")[999]);
+    }
+
+    @Test
+    public void testFullStorageMovesRecords() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < 14; i++) {
+            Arrays.fill(data, (byte) i);
+            assertTrue(storage.storeSerialized("s" + i, data));
+        }
+        assertTrue(storage.storeSerialized("s14", new byte[500]));
+
+        // No segment has room for a large session until the first one is emptied into the last one
+        for (int i = 1; i < 4; i++) {
+            storage.remove("s" + i);
+        }
+        assertTrue(storage.storeSerialized("large", new byte[2000]));
+        assertEquals((byte) 0, storage.loadSerialized("s0")[999]);
+        assertFalse(storage.storeSerialized("larger", new byte[3000]));
+
+        storage.shutdown();
+        storage = open();
+        assertEquals(13, storage.stored().size());
+        assertEquals((byte) 0, storage.loadSerialized("s0")[999]);
+        assertEquals(2000, storage.loadSerialized("large").length);
+    }
+
+    @Test
+    public void testEmptiedCurrentSegmentIsReused() throws IOException {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(storage.storeSerialized("s" + i, data));
+        }
+
+        // The first segment dies while it is still the current one
+        for (int i = 0; i < 4; i++) {
+            storage.remove("s" + i);
+        }
+        for (int i = 4; i < 16; i++) {
+            assertTrue(storage.storeSerialized("s" + i, data));
+        }
+
+        assertTrue(storage.storeSerialized("s16", data));
+        assertEquals(0, storage.compactSparsest(0.5));
+
+        storage.shutdown();
+        storage = open();
+        assertEquals(13, storage.stored().size());
+        assertNull(storage.loadSerialized("s0"));
+        assertEquals(1000, storage.loadSerialized("s16").length);
+    }
+
+    private SegmentSessionStorage open() throws IOException {
+        SegmentSessionStorage opened = new SegmentSessionStorage(directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE, 0, 0.5);
+        opened.setSerializer(new JavaSerializer());
+        opened.setCompressor(new NoCompressor());
+        return opened;
+    }
+
+}
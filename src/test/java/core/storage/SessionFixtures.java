@@ -0,0 +1,30 @@
+package core.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sessions shared by the storage tests.
+ */
+public final class SessionFixtures {
+
+    private SessionFixtures() {
+    }
+
+    /**
+     * Creates a session with a single attribute, named value.
+     *
+     * @param id    Id of the session.
+     * @param value Value of the attribute.
+     * @return The session.
+     */
+    public static SessionData session(String id, String value) {
+        SessionData session = new SessionData();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("value", value);
+        session.setClusterId(id);
+        session.setAttributes(attributes);
+        return session;
+    }
+
+}
@@ -0,0 +1,128 @@
+package core.util;
+
+import org.eclipse.jetty.server.session.HashSessionManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HeapSizerTest {
+
+    private HeapSizer sizer;
+
+    @Before
+    public void setUp() {
+        // 64-bit with compressed references: 12 byte headers, 16 byte array headers, 4 byte references.
+        sizer = new HeapSizer(true, true, HeapSizer.DEFAULT_MAX_OBJECTS);
+    }
+
+    @Test
+    public void testShallowSizes() {
+        assertEquals(0, sizer.sizeOf(null));
+        assertEquals(16, sizer.sizeOf(new Object()));
+        assertEquals(16, sizer.sizeOf(new Node()));
+        assertEquals(24, sizer.sizeOf(new Value()));
+        assertEquals(16, sizer.sizeOf(new int[0]));
+        assertEquals(32, sizer.sizeOf(new long[2]));
+        assertEquals(24, sizer.sizeOf(new Object[1]));
+    }
+
+    @Test
+    public void testCycles() {
+        Node first = new Node();
+        Node second = new Node();
+        first.next = second;
+        second.next = first;
+
+        assertEquals(32, sizer.sizeOf(first));
+
+        first.next = first;
+        assertEquals(16, sizer.sizeOf(first));
+    }
+
+    @Test
+    public void testSharedReferences() {
+        Value shared = new Value();
+        Object[] array = {shared, shared, shared};
+
+        assertEquals(32 + 24, sizer.sizeOf(array));
+    }
+
+    @Test
+    public void testSharedObjectsNotCounted() {
+        Object[] array = {String.class, Thread.currentThread(), Shape.SQUARE};
+
+        assertEquals(32, sizer.sizeOf(array));
+    }
+
+    @Test
+    public void testGrowsWithContents() {
+        Map<String, Object> small = new HashMap<>();
+        Map<String, Object> large = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            strings.add("value" + i);
+        }
+        small.put("key", "value");
+        large.put("key", strings);
+
+        long smallSize = sizer.sizeOf(small);
+        long largeSize = sizer.sizeOf(large);
+        System.out.println("Small map: " + smallSize + ", large map: " + largeSize);
+
+        assertTrue(smallSize > sizer.shallowSizeOf(HashMap.class));
+        // Each string is at least a header, a reference and a character array.
+        assertTrue(largeSize > smallSize + 100 * 32);
+    }
+
+    @Test
+    public void testMaxObjects() {
+        HeapSizer limited = new HeapSizer(true, true, 10);
+        Node head = new Node();
+        for (int i = 0; i < 100; i++) {
+            Node node = new Node();
+            node.next = head;
+            head = node;
+        }
+
+        assertEquals(10 * 16, limited.sizeOf(head));
+        assertEquals(101 * 16, sizer.sizeOf(head));
+    }
+
+    @Test
+    public void testStopsAtManager() {
+        // An attribute reaching the session manager, e.g. through a wrapped HttpSession
+        HashSessionManager manager = new HashSessionManager();
+        Value attribute = new Value();
+        attribute.reference = manager;
+
+        assertEquals(24, sizer.sizeOf(attribute));
+        assertEquals(0, sizer.sizeOf(manager));
+    }
+
+    @Test
+    public void testStopTypes() {
+        HeapSizer stopping = new HeapSizer(true, true, HeapSizer.DEFAULT_MAX_OBJECTS, Collections.singleton(Node.class));
+        Value value = new Value();
+        value.reference = new Node();
+
+        assertEquals(24, stopping.sizeOf(value));
+        assertEquals(24 + 16, sizer.sizeOf(value));
+    }
+
+    private static class Node {
+        Node next;
+    }
+
+    private static class Value {
+        long number;
+        Object reference;
+    }
+
+    private enum Shape {
+        SQUARE
+    }
+
+}
@@ -9,6 +9,7 @@ import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -48,4 +49,15 @@ public class PropertyParserTest {
         }
     }
 
+    @Test
+    public void testParseQuotedValue() {
+        try (PropertyParser restParser = new PropertyParser(Paths.get("WebContent", "UTIL-CONF", "rest.conf"))) {
+            properties = restParser.parse();
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+
+        assertEquals("http://localhost:8080", properties.get("address"));
+    }
+
 }
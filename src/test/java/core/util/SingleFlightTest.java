@@ -0,0 +1,81 @@
+package core.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private static final int THREADS = 8;
+
+    private SingleFlight<String, Object> flight;
+
+    @Before
+    public void setUp() {
+        flight = new SingleFlight<>();
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        AtomicInteger calls = new AtomicInteger(0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<Object>> results = new ArrayList<>();
+        results.add(executor.submit(() -> flight.execute("session", () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Object();
+        })));
+
+        started.await();
+        for (int i = 1; i < THREADS; i++) {
+            results.add(executor.submit(() -> flight.execute("session", () -> {
+                calls.incrementAndGet();
+                return new Object();
+            })));
+        }
+
+        // Give the waiting callers time to join the flight
+        while (!flight.isInFlight("session"))
+            Thread.sleep(1);
+        Thread.sleep(200);
+        release.countDown();
+
+        Object first = results.get(0).get();
+        for (Future<Object> result : results) {
+            assertSame(first, result.get());
+        }
+        assertEquals(1, calls.get());
+        assertFalse(flight.isInFlight("session"));
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSequentialCalls() {
+        Object first = flight.execute("session", Object::new);
+        Object second = flight.execute("session", Object::new);
+        assertNotSame(first, second);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testException() {
+        flight.execute("session", () -> {
+            throw new IllegalStateException();
+        });
+    }
+
+}
@@ -0,0 +1,104 @@
+package server.store;
+
+import core.storage.*;
+import core.storage.compressor.NoCompressor;
+import core.storage.serializer.JavaSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static core.storage.SessionFixtures.session;
+import static org.junit.Assert.*;
+
+public class SessionStoreServerTest {
+
+    private SessionStoreServer server;
+    private RestSessionStorage storage;
+
+    @Before
+    public void setUp() throws Exception {
+        storage = open(new Throttle(0, 0), new ChangeLog(100));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.store(session("a", "updated")));
+        assertEquals(2, storage.storeAll(Arrays.asList(session("b", "second"), session("c", "third"))).size());
+
+        assertEquals("updated", storage.load("a").getAttributes().get("value"));
+        assertEquals(2, storage.loadAll(Arrays.asList("b", "c", "d")).size());
+        assertEquals(3, storage.stored().size());
+
+        storage.remove("b");
+        assertNull(storage.load("b"));
+        assertEquals(2, storage.stored().size());
+        assertTrue(storage.capacity() > 0);
+    }
+
+    @Test
+    public void testIncrementalListing() {
+        assertTrue(storage.store(session("a", "first")));
+        assertTrue(storage.changes().isComplete());
+
+        assertTrue(storage.store(session("b", "second")));
+        storage.remove("a");
+        StoredSessionChanges changes = storage.changes();
+        assertFalse(changes.isComplete());
+        assertEquals(1, changes.getStored().size());
+        assertEquals("b", changes.getStored().get(0).getSessionId());
+        assertEquals(Collections.singleton("a"), changes.getRemoved());
+        assertTrue(storage.changes().isEmpty());
+    }
+
+    @Test
+    public void testChangeLogHorizon() {
+        ChangeLog log = new ChangeLog(2);
+        log.record("a");
+        log.record("b");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), log.since(log.getEpoch(), 0));
+
+        // Changing a session again does not lose the other changes
+        log.record("a");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), log.since(log.getEpoch(), 0));
+        assertEquals(Collections.singleton("a"), log.since(log.getEpoch(), 2));
+
+        log.record("c");
+        assertNull(log.since(log.getEpoch(), 0));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), log.since(log.getEpoch(), 2));
+        assertNull(log.since(log.getEpoch() + 1, 3));
+    }
+
+    @Test
+    public void testThrottle() throws Exception {
+        server.stop();
+        // 50 ms of latency, and 1 MB/s for 100 KB of data
+        storage = open(new Throttle(50, 1), new ChangeLog(100));
+
+        long start = System.nanoTime();
+        assertTrue(storage.storeSerialized("a", new byte[100 * 1024]));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        System.out.println("Throttled store: " + elapsed + " ms");
+
+        assertTrue(elapsed >= 50 + 97);
+    }
+
+    private RestSessionStorage open(Throttle throttle, ChangeLog changeLog) throws Exception {
+        OffHeapSessionStorage backend = new OffHeapSessionStorage(1024 * 1024, 256 * 1024);
+        server = new SessionStoreServer(0, new SessionStoreServlet(backend, new JavaSerializer(), new NoCompressor(), throttle, changeLog));
+        server.start();
+
+        RestSessionStorage opened = new RestSessionStorage("http://localhost:" + server.getPort());
+        opened.setSerializer(new JavaSerializer());
+        opened.setCompressor(new NoCompressor());
+        return opened;
+    }
+
+}